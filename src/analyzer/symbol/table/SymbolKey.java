@@ -70,6 +70,20 @@ public class SymbolKey extends HashMap.SimpleEntry<String, SymbolKey.KeyType>
     return type;
   }
 
+  /**
+   * Obtain the hash code of the key. The hash code only depends on the name
+   * and the ordinal of the key type (rather than the identity hash code of
+   * the enumeration constant), so that symbol tables iterate in the same
+   * order on every run.
+   *
+   * @return The hash code of the key
+   */
+  @Override
+  public int hashCode()
+  {
+    return name.hashCode() * 31 + type.ordinal();
+  }
+
   /**
    * Obtain the String representation of the record
    *
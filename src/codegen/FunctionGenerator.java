@@ -0,0 +1,131 @@
+package codegen;
+
+import analyzer.symbol.table.FunctionSymbolTable;
+import codegen.emitter.MIPSCodeEmitter;
+import codegen.ir.IRFunction;
+import codegen.ir.IRLowering;
+import codegen.ir.Inliner;
+import codegen.ir.InstructionSelector;
+import codegen.ir.RegisterAllocator;
+import codegen.table.LocalTable;
+import optimizer.PassManager;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Class that generates the MIPS code for a single function into its own
+ * instruction buffer. The function is lowered to the IR, optimized, given
+ * registers by graph coloring, and then translated to MIPS by instruction
+ * selection. A FunctionGenerator only reads the
+ * (shared) global LocalTable and the symbol tables, so several functions can
+ * be generated concurrently.
+ */
+final class FunctionGenerator implements Callable<MIPSCodeEmitter>
+{
+  /**
+   * The LocalTable containing the global identifiers
+   */
+  private final LocalTable globalTable;
+
+  /**
+   * The Inliner deciding which calls to inline (null if inlining is disabled)
+   */
+  private final Inliner inliner;
+
+  /**
+   * The PassManager running the optimization passes
+   */
+  private final PassManager passes;
+
+  /**
+   * Name of the current function
+   */
+  private final String currentFunctionName;
+
+  /**
+   * The symbol table of the function being generated
+   */
+  private final FunctionSymbolTable functionTable;
+
+  /**
+   * Does this function terminate the program?
+   */
+  private final boolean terminate;
+
+  /**
+   * The IR of the function (available once the function has been generated)
+   */
+  private IRFunction function;
+
+  /**
+   * The full constructor for the FunctionGenerator
+   *
+   * @param globalTable   The LocalTable containing the global identifiers
+   * @param inliner       The Inliner deciding which calls to inline (null if
+   *                      inlining is disabled)
+   * @param passes        The PassManager running the optimization passes
+   * @param functionName  The name of the function to generate
+   * @param functionTable The function symbol table associated with the function
+   * @param terminate     Does this function terminate the program?
+   */
+  FunctionGenerator(final LocalTable globalTable,
+                    final Inliner inliner,
+                    final PassManager passes,
+                    final String functionName,
+                    final FunctionSymbolTable functionTable,
+                    final boolean terminate)
+  {
+    this.globalTable = globalTable;
+    this.inliner = inliner;
+    this.passes = passes;
+    this.functionTable = functionTable;
+    this.terminate = terminate;
+
+    currentFunctionName = functionName;
+    function = null;
+  }
+
+  /**
+   * Generate the function's code
+   *
+   * @return The emitter containing the function's instructions
+   */
+  @Override
+  public MIPSCodeEmitter call()
+  {
+    MIPSCodeEmitter emitter = new MIPSCodeEmitter();
+
+    function = new IRLowering(globalTable).lower(currentFunctionName,
+                                                 functionTable,
+                                                 terminate);
+    // Optimize the IR with the passes enabled at the optimization level
+    passes.runFunctionPasses(function, inliner);
+
+    new RegisterAllocator(function).run();
+
+    new InstructionSelector(emitter).select(function);
+    emitter.emitSeparator();
+
+    return emitter;
+  }
+
+  /**
+   * Get the name of the function being generated
+   *
+   * @return The function name
+   */
+  String getFunctionName()
+  {
+    return currentFunctionName;
+  }
+
+  /**
+   * Get the IR of the function (used for tracing)
+   *
+   * @return The function's IR
+   */
+  IRFunction getFunction()
+  {
+    return function;
+  }
+}
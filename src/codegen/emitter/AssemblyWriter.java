@@ -0,0 +1,328 @@
+package codegen.emitter;
+
+import codegen.instruction.Address;
+import codegen.instruction.Immediate;
+import codegen.instruction.Instruction;
+import codegen.instruction.Label;
+import codegen.instruction.Opcode;
+import codegen.instruction.Operand;
+import codegen.instruction.Register;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that writes a list of instructions to an assembly file.
+ *
+ * Instructions are rendered straight into a reusable byte buffer (the
+ * assembly is plain ASCII) using pre-rendered opcode and register tokens,
+ * and the buffer is written to the file channel in large chunks. No format
+ * strings are parsed and no intermediate strings are created per line.
+ */
+final class AssemblyWriter
+{
+  /**
+   * Size of the output buffer (and of each write to the file)
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Space reserved at the end of the buffer so that a single token never
+   * needs to be split across a flush
+   */
+  private static final int TOKEN_RESERVE = 64;
+
+  /**
+   * Pre-rendered opcode tokens (mnemonic followed by a space), indexed by
+   * ordinal
+   */
+  private static final byte[][] OPCODE_TOKENS;
+
+  /**
+   * Pre-rendered register tokens, indexed by ordinal
+   */
+  private static final byte[][] REGISTER_TOKENS;
+
+  /**
+   * The platform line separator (matches PrintStream.println)
+   */
+  private static final byte[] LINE_SEPARATOR =
+      System.lineSeparator().getBytes();
+
+  static
+  {
+    final Opcode[] opcodes = Opcode.values();
+    OPCODE_TOKENS = new byte[opcodes.length][];
+    for (final Opcode opcode : opcodes)
+    {
+      OPCODE_TOKENS[opcode.ordinal()] = (opcode.getMnemonic() + " ").getBytes();
+    }
+
+    final Register[] registers = Register.values();
+    REGISTER_TOKENS = new byte[registers.length][];
+    for (final Register register : registers)
+    {
+      REGISTER_TOKENS[register.ordinal()] = register.getName().getBytes();
+    }
+  }
+
+  /**
+   * The channel of the assembly file
+   */
+  private final FileChannel channel;
+
+  /**
+   * The output buffer
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * Full constructor for the AssemblyWriter
+   *
+   * @param path The path of the assembly file to (re)create
+   * @throws IOException Thrown if the file cannot be opened
+   */
+  AssemblyWriter(final String path) throws IOException
+  {
+    channel = FileChannel.open(Paths.get(path),
+                               StandardOpenOption.CREATE,
+                               StandardOpenOption.TRUNCATE_EXISTING,
+                               StandardOpenOption.WRITE);
+    buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  }
+
+  /**
+   * Write a single instruction (followed by a line separator)
+   *
+   * @param instruction The instruction to write
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  void write(final Instruction instruction) throws IOException
+  {
+    final Opcode opcode = instruction.getOpcode();
+    switch (opcode)
+    {
+      case LABEL:
+      {
+        writeOperand(instruction.getOperand(0));
+        writeByte(':');
+        break;
+      }
+      case DIRECTIVE:
+      {
+        writeString(instruction.getText());
+        break;
+      }
+      case SEPARATOR:
+      {
+        break;
+      }
+      default:
+      {
+        final int count = instruction.getOperandCount();
+        if (count == 0)
+        {
+          // No operands, so leave off the trailing space of the token
+          writeString(opcode.getMnemonic());
+          break;
+        }
+        writeToken(OPCODE_TOKENS[opcode.ordinal()]);
+        for (int i = 0; i < count; ++i)
+        {
+          if (i != 0)
+          {
+            writeByte(',');
+            writeByte(' ');
+          }
+          writeOperand(instruction.getOperand(i));
+        }
+        break;
+      }
+    }
+
+    final String comment = instruction.getComment();
+    if (comment != null)
+    {
+      for (int i = instruction.getCommentPadding(); i > 0; --i)
+      {
+        writeByte(' ');
+      }
+      writeByte('#');
+      writeByte(' ');
+      writeString(comment);
+    }
+
+    writeToken(LINE_SEPARATOR);
+  }
+
+  /**
+   * Flush any buffered output and close the file
+   *
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  void close() throws IOException
+  {
+    try
+    {
+      flush();
+    }
+    finally
+    {
+      channel.close();
+    }
+  }
+
+  /**
+   * Write a single operand
+   *
+   * @param operand The operand to write
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  private void writeOperand(final Operand operand) throws IOException
+  {
+    if (operand instanceof Register)
+    {
+      writeToken(REGISTER_TOKENS[((Register) operand).ordinal()]);
+    }
+    else if (operand instanceof Immediate)
+    {
+      writeInt(((Immediate) operand).getValue());
+    }
+    else if (operand instanceof Label)
+    {
+      final Label label = (Label) operand;
+      writeString(label.getName());
+      if (label.isCode())
+      {
+        writeByte('_');
+        writeByte('_');
+      }
+    }
+    else if (operand instanceof Address)
+    {
+      final Address address = (Address) operand;
+      if (address.hasOffset())
+      {
+        writeInt(address.getOffset());
+      }
+      writeByte('(');
+      writeToken(REGISTER_TOKENS[address.getBase().ordinal()]);
+      writeByte(')');
+    }
+    else
+    {
+      writeString(String.valueOf(operand));
+    }
+  }
+
+  /**
+   * Write a pre-rendered token
+   *
+   * @param token The bytes of the token
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  private void writeToken(final byte[] token) throws IOException
+  {
+    ensureCapacity(token.length);
+    buffer.put(token);
+  }
+
+  /**
+   * Write a string (the assembly is plain ASCII, so each character is a
+   * single byte)
+   *
+   * @param text The string to write
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  private void writeString(final String text) throws IOException
+  {
+    final int length = text.length();
+    for (int i = 0; i < length; ++i)
+    {
+      writeByte(text.charAt(i));
+    }
+  }
+
+  /**
+   * Write the decimal representation of an integer
+   *
+   * @param value The integer to write
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  private void writeInt(final int value) throws IOException
+  {
+    ensureCapacity(11);
+
+    if (value == Integer.MIN_VALUE)
+    {
+      buffer.put("-2147483648".getBytes());
+      return;
+    }
+
+    int remaining = value;
+    if (remaining < 0)
+    {
+      buffer.put((byte) '-');
+      remaining = -remaining;
+    }
+
+    // Find the highest power of ten not exceeding the value
+    int divisor = 1;
+    while (remaining / divisor >= 10)
+    {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10)
+    {
+      buffer.put((byte) ('0' + (remaining / divisor) % 10));
+    }
+  }
+
+  /**
+   * Write a single character
+   *
+   * @param character The character to write
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  private void writeByte(final char character) throws IOException
+  {
+    if (!buffer.hasRemaining())
+    {
+      flush();
+    }
+    buffer.put((byte) character);
+  }
+
+  /**
+   * Make sure there is room in the buffer for a number of bytes, flushing the
+   * buffer to the file if necessary
+   *
+   * @param length The number of bytes that are about to be written
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  private void ensureCapacity(final int length) throws IOException
+  {
+    if (buffer.remaining() < Math.max(length, TOKEN_RESERVE))
+    {
+      flush();
+    }
+  }
+
+  /**
+   * Write the contents of the buffer to the file
+   *
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  private void flush() throws IOException
+  {
+    buffer.flip();
+    while (buffer.hasRemaining())
+    {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
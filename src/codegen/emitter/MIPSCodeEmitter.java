@@ -1,19 +1,71 @@
 package codegen.emitter;
 
+import codegen.instruction.Address;
+import codegen.instruction.Immediate;
+import codegen.instruction.Instruction;
+import codegen.instruction.Label;
+import codegen.instruction.Opcode;
+import codegen.instruction.Operand;
+import codegen.instruction.Register;
+import codegen.peephole.PeepholeOptimizer;
+import codegen.scheduler.InstructionScheduler;
 import globals.pair.IdentifierPair;
+import optimizer.PassManager;
 
-import java.io.*;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
- * Concrete class for emitting MIPS assembly code
+ * Concrete class for emitting MIPS assembly code.
+ *
+ * Emitted instructions are collected into a typed instruction list, which is
+ * only written to the assembly file when the emitter is closed. This allows
+ * later passes to inspect and rewrite the instructions before they are written
+ * (such as the peephole optimizer and the instruction scheduler, run just
+ * before writing).
  */
 public final class MIPSCodeEmitter
 {
   /**
-   * The print stream used to write to the file
+   * The writer used to write the instructions to the file
    */
-  private PrintStream writer;
+  private AssemblyWriter writer;
+
+  /**
+   * The instructions emitted so far
+   */
+  private ArrayList<Instruction> instructions;
+
+  /**
+   * The peephole optimizer run before the instructions are written (null if
+   * the instructions are written as emitted)
+   */
+  private PeepholeOptimizer peephole;
+
+  /**
+   * The PassManager timing the peephole optimizer
+   */
+  private PassManager passes;
+
+  /**
+   * The scheduler run after the peephole optimizer (null if the instructions
+   * are not scheduled)
+   */
+  private InstructionScheduler scheduler;
+
+  /**
+   * Constructor for a MIPSCodeEmitter that only buffers instructions (such as
+   * the code of a single function). The instructions of a buffering emitter
+   * are written by appending them to a file-backed emitter.
+   */
+  public MIPSCodeEmitter()
+  {
+    writer = null;
+    instructions = new ArrayList<>();
+    peephole = null;
+    passes = null;
+    scheduler = null;
+  }
 
   /**
    * The full constructor for the MIPSCodeEmitter
@@ -24,76 +76,153 @@ public final class MIPSCodeEmitter
   public MIPSCodeEmitter(final String filename) throws IOException
   {
     // Create and open the assembly file
-    writer = new PrintStream(new FileOutputStream(filename + ".asm"));
+    writer = new AssemblyWriter(filename + ".asm");
+    instructions = new ArrayList<>();
+    peephole = null;
+    passes = null;
+    scheduler = null;
   }
 
   /**
-   * Close the file managed by the code emitter
+   * Choose the peephole optimizer to run over the instructions before they
+   * are written
+   *
+   * @param peephole The optimizer, or null to write the instructions as they
+   *                 were emitted
+   * @param passes   The PassManager timing the optimizer
    */
-  public void close()
+  public void setPeepholeOptimizer(final PeepholeOptimizer peephole,
+                                   final PassManager passes)
   {
-    writer.close();
+    this.peephole = peephole;
+    this.passes = passes;
   }
 
   /**
-   * Emit the assembly code header, along with any global identifiers
-   * @param ids The list of global identifiers
+   * Choose the scheduler to run over the instructions before they are written
+   *
+   * @param scheduler The scheduler, or null to keep the instruction order
    */
-  public void emitHeader(final ArrayList<IdentifierPair> ids)
+  public void setScheduler(final InstructionScheduler scheduler)
   {
-    writer.println(".data");
-    if (ids != null)
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Write all of the emitted instructions and close the file managed by the
+   * code emitter
+   *
+   * @throws IOException Thrown if there is an issue writing to the file
+   */
+  public void close() throws IOException
+  {
+    if (writer == null)
     {
-      for (final IdentifierPair dataPair : ids)
+      return;
+    }
+    try
+    {
+      if (peephole != null)
       {
-        writer.println(
-            String.format("%s: .space %d", dataPair.name, 4 * dataPair.size));
+        passes.runPeephole(peephole, instructions);
       }
+      if (scheduler != null)
+      {
+        scheduler.schedule(instructions);
+      }
+      for (final Instruction instruction : instructions)
+      {
+        writer.write(instruction);
+      }
+      instructions.clear();
+    }
+    finally
+    {
+      writer.close();
     }
-    // Save some strings for the I/O functions
-    writer.println("inputStr_ : .asciiz \"Enter int: \"");
-    writer.println("outputStr_: .asciiz \"Result: \"");
-    writer.println("newlineStr_: .asciiz \"\\n\"");
-    writer.println(".text");
   }
 
   /**
-   * Emit the code necessary to perform an array allocation
+   * Append all of the instructions buffered by another emitter
    *
-   * @param size     The size of the array to allocate
-   * @param register The register to store the address of the allocated array
+   * @param other The emitter whose instructions should be appended
    */
-  public void emitArrayAlloc(final int size, final String register)
+  public void append(final MIPSCodeEmitter other)
   {
-    writer.printf("li $v0, 9  # Load System call\n");
-    writer.printf("addi $a0, %d # Load size of the array to allocate\n", size * 4);
-    writer.println("syscall # allocate an array");
-    writer.printf("mov %s, $a0 # Save address\n", register);
+    instructions.addAll(other.instructions);
   }
 
   /**
-   * Emit a system call, given an ID, a register and a flag indicating if it's
+   * Obtain the list of instructions emitted so far (and not yet written)
+   *
+   * @return The instruction list
+   */
+  public ArrayList<Instruction> getInstructions()
+  {
+    return instructions;
+  }
+
+  /**
+   * Append an instruction to the instruction list
+   *
+   * @param opcode   The operation to emit
+   * @param operands The operands of the operation
+   * @return The emitted instruction
+   */
+  private Instruction emit(final Opcode opcode, final Operand... operands)
+  {
+    Instruction instruction = new Instruction(opcode, operands);
+    instructions.add(instruction);
+    return instruction;
+  }
+
+  /**
+   * Emit the assembly code header, along with any global identifiers
+   * @param ids The list of global identifiers
+   */
+  public void emitHeader(final ArrayList<IdentifierPair> ids)
+  {
+    instructions.add(Instruction.directive(".data"));
+    if (ids != null)
+    {
+      for (final IdentifierPair dataPair : ids)
+      {
+        instructions.add(Instruction.directive(
+            String.format("%s: .space %d", dataPair.name, 4 * dataPair.size)));
+      }
+    }
+    // Save some strings for the I/O functions
+    instructions.add(Instruction.directive("inputStr_ : .asciiz \"Enter int: \""));
+    instructions.add(Instruction.directive("outputStr_: .asciiz \"Result: \""));
+    instructions.add(Instruction.directive("newlineStr_: .asciiz \"\\n\""));
+    instructions.add(Instruction.directive(".text"));
+  }
+
+  /**
+   * Emit a system call, given an ID, a label and a flag indicating if it's
    * an address.
    *
    * @param ID       The system call number
-   * @param register The register containing data to output (if necessary)
-   * @param isAddr   Is the register an address?
+   * @param operand  The register or label containing data to output
+   *                 (if necessary)
+   * @param isAddr   Is the operand an address?
    */
-  public void emitSyscall(final int ID, final String register, final boolean isAddr)
+  public void emitSyscall(final int ID, final Operand operand, final boolean isAddr)
   {
-    writer.printf("li $v0, %d  # Load System call\n", ID);
-    if (register != null)
+    emit(Opcode.LI, Register.V0, new Immediate(ID))
+        .withComment(2, "Load System call");
+    if (operand != null)
     {
       if (isAddr)
       {
-        writer.printf("la $a0, %s\n", register);
+        emit(Opcode.LA, Register.A0, operand);
       }
       else
       {
-        writer.printf("move $a0, %s\n", register);
+        emit(Opcode.MOVE, Register.A0, operand);
       }
     }
-    writer.println("syscall");
+    emit(Opcode.SYSCALL);
   }
 
   /**
@@ -101,7 +230,7 @@ public final class MIPSCodeEmitter
    */
   public void emitSeparator()
   {
-    writer.println("");
+    instructions.add(Instruction.separator());
   }
 
   /**
@@ -110,7 +239,8 @@ public final class MIPSCodeEmitter
    */
   public void emitLabel(final String labelName)
   {
-    writer.printf("%1$s__:            # Begin the %1$s__ block\n", labelName);
+    instructions.add(Instruction.label(labelName).withComment(
+        12, String.format("Begin the %s__ block", labelName)));
   }
 
   /**
@@ -119,7 +249,8 @@ public final class MIPSCodeEmitter
    */
   public void emitFunctionCall(final String name)
   {
-    writer.printf("jal %1$s__        # Jump and link to %1$s\n", name);
+    emit(Opcode.JAL, Label.code(name))
+        .withComment(8, "Jump and link to " + name);
   }
 
   /**
@@ -129,7 +260,8 @@ public final class MIPSCodeEmitter
    */
   public void emitJump(final String label)
   {
-    writer.printf("j %1$s__            # Unconditional Jump To %1$s__\n", label);
+    emit(Opcode.J, Label.code(label))
+        .withComment(12, String.format("Unconditional Jump To %s__", label));
   }
 
   /**
@@ -138,7 +270,8 @@ public final class MIPSCodeEmitter
    */
   public void emitStackPush(final int size)
   {
-    writer.printf("addi $sp, $sp, -%d     # Push a stack frame\n", size);
+    emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(-size))
+        .withComment(5, "Push a stack frame");
   }
 
   /**
@@ -146,9 +279,9 @@ public final class MIPSCodeEmitter
    * @param register The register to save on the stack
    * @param offset   The offset from the stack base to push onto
    */
-  public void emitStackSave(final String register, final int offset)
+  public void emitStackSave(final Register register, final int offset)
   {
-    writer.printf("sw %s, %d($sp)\n", register, offset);
+    emit(Opcode.SW, register, new Address(Register.SP, offset));
   }
 
   /**
@@ -156,9 +289,9 @@ public final class MIPSCodeEmitter
    * @param register The register to restore from the stack
    * @param offset   The offset from the stack base to restore from
    */
-  public void emitStackRetrieve(final String register, final int offset)
+  public void emitStackRetrieve(final Register register, final int offset)
   {
-    writer.printf("lw %s, %d($sp)\n", register, offset);
+    emit(Opcode.LW, register, new Address(Register.SP, offset));
   }
 
   /**
@@ -167,17 +300,8 @@ public final class MIPSCodeEmitter
    */
   public void emitStackPop(final int size)
   {
-    writer.printf("addi $sp, $sp, %d     # Pop a stack frame\n", size);
-  }
-
-  /**
-   * Multiply a register by 4 (left shift twice)
-   * @param offset      The offset register (where the number comes from)
-   * @param destination The register to save the new offset
-   */
-  public void emitShift(final String offset, final String destination)
-  {
-    writer.printf("sll %s, %s, 2\n", destination, offset);
+    emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(size))
+        .withComment(5, "Pop a stack frame");
   }
 
   /**
@@ -186,11 +310,11 @@ public final class MIPSCodeEmitter
    * @param offset  The register offset for storage
    * @param from    The originating register
    */
-  public void emitStoreWord(final String address,
+  public void emitStoreWord(final Register address,
                             final int offset,
-                            final String from)
+                            final Operand from)
   {
-    writer.printf("sw %s, %d(%s)\n", from, offset, address);
+    emit(Opcode.SW, from, new Address(address, offset));
   }
 
   /**
@@ -199,21 +323,19 @@ public final class MIPSCodeEmitter
    *
    * @param destination     Destination of the address being loaded
    * @param addressLocation Location of the address being loaded
-   * @param isRegister      Is the provided location a register?
    */
-  public void emitLoadAddress(final String destination,
-                              final String addressLocation,
-                              final boolean isRegister)
+  public void emitLoadAddress(final Register destination,
+                              final Operand addressLocation)
   {
     // Use special notation if the provided address location is a
     // register
-    if (isRegister)
+    if (addressLocation instanceof Register)
     {
-      writer.printf("la %s, (%s)\n", destination, addressLocation);
+      emit(Opcode.LA, destination, new Address((Register) addressLocation));
     }
     else
     {
-      writer.printf("la %s, %s\n", destination, addressLocation);
+      emit(Opcode.LA, destination, addressLocation);
     }
   }
 
@@ -224,23 +346,27 @@ public final class MIPSCodeEmitter
    * @param r2     RT (register target)
    * @param dest   RD (register destination)
    */
-  public void emitRType(final String opcode,
-                        final String r1,
-                        final String r2,
-                        final String dest)
+  public void emitRType(final Opcode opcode,
+                        final Operand r1,
+                        final Operand r2,
+                        final Register dest)
   {
-    writer.printf("%s %s, %s, %s\n", opcode, dest, r1, r2);
+    emit(opcode, dest, r1, r2);
   }
 
   /**
-   * Perform a data load (from a String offset)
-   * @param to     The register that will contain the loaded data
-   * @param from   The register that contains the address to perform the data load
-   * @param offset The register that contains the offset (bytes)
+   * Emit the high word of a signed 64-bit product
+   *
+   * @param dest The register receiving the high word
+   * @param lhs  The first factor
+   * @param rhs  The second factor
    */
-  public void emitLoadWord(final String to, final String from, final String offset)
+  public void emitMultiplyHigh(final Register dest,
+                               final Operand lhs,
+                               final Operand rhs)
   {
-    writer.printf("lw %s, %s(%s)\n", to, offset, from);
+    emit(Opcode.MULT, lhs, rhs);
+    emit(Opcode.MFHI, dest);
   }
 
   /**
@@ -250,9 +376,9 @@ public final class MIPSCodeEmitter
    * @param from   The register that contains the address to perform the data load
    * @param offset The address offset (bytes)
    */
-  private void emitLoadWord(final String to, final String from, int offset)
+  public void emitLoadWord(final Register to, final Register from, final int offset)
   {
-    writer.printf("lw %s, %d(%s)\n", to, offset, from);
+    emit(Opcode.LW, to, new Address(from, offset));
   }
 
   /**
@@ -260,44 +386,43 @@ public final class MIPSCodeEmitter
    * @param to   The register to which the data should be saved
    * @param from The register that contains the data to be saved
    */
-  public void emitDataSave(final String to, final String from)
+  public void emitDataSave(final Operand to, final Operand from)
   {
-    writer.printf(
-        "add %1$s, %2$s, $0 # Assign contents of %1$s to %2$s\n", to, from);
+    emit(Opcode.ADD, to, from, Register.ZERO).withComment(
+        1, String.format("Assign contents of %s to %s", to, from));
   }
 
   /**
    * Emit a branch statement, given a operation code (opcode), registers
-   * for comparison, and the true/false branches.
+   * for comparison, and the branch target.
    *
-   * @param opcode      The operation code (comparison type) to use
-   * @param r1          The lhs of the comparison
-   * @param r2          The rhs of the comparison
-   * @param trueBranch  The true branch (used if the comparison passes)
-   * @param falseBranch The false branch (used if the comparison fails)
-   */
-  public void emitBranch(final String opcode,
-                         final String r1,
-                         final String r2,
-                         final String trueBranch,
-                         final String falseBranch)
+   * @param opcode The operation code (comparison type) to use
+   * @param r1     The lhs of the comparison
+   * @param r2     The rhs of the comparison
+   * @param target The branch taken if the comparison passes (to be suffixed
+   *               with __)
+   */
+  public void emitBranch(final Opcode opcode,
+                         final Operand r1,
+                         final Operand r2,
+                         final String target)
   {
     // Emit the branch comparison statement
-    writer.printf("%s %s, %s, %s__\n", opcode, r1, r2, trueBranch);
+    emit(opcode, r1, r2, Label.code(target));
 
     // Insert a no-op into the branch-delay slot
-    writer.printf("nop\n");
-    writer.printf("j %s__\n", falseBranch);
-
-    emitLabel(trueBranch);
+    emit(Opcode.NOP);
   }
 
   /**
-   * Emit a No-Operation statement
+   * Load a constant into a register
+   *
+   * @param to    The register that will contain the constant
+   * @param value The constant
    */
-  public void emitNoop()
+  public void emitLoadImmediate(final Register to, final int value)
   {
-    writer.println("nop");
+    emit(Opcode.LI, to, new Immediate(value));
   }
 
   /**
@@ -306,7 +431,7 @@ public final class MIPSCodeEmitter
   public void emitInputFunction()
   {
     emitLabel("input");
-    emitSyscall(4, "inputStr_", true);
+    emitSyscall(4, Label.data("inputStr_"), true);
     emitSyscall(5, null, false);
     emitFunctionExit();
   }
@@ -317,10 +442,11 @@ public final class MIPSCodeEmitter
   public void emitOutputFunction()
   {
     emitLabel("output");
-    emitSyscall(4, "outputStr_", true);
-    emitLoadWord("$a0", "$sp", 0);
-    emitSyscall(1, null, false);
-    emitSyscall(4, "newlineStr_", true);
+    // Keep the value to print while the prefix string is printed
+    emitDataSave(Register.T0, Register.A0);
+    emitSyscall(4, Label.data("outputStr_"), true);
+    emitSyscall(1, Register.T0, false);
+    emitSyscall(4, Label.data("newlineStr_"), true);
     emitFunctionExit();
   }
 
@@ -329,6 +455,6 @@ public final class MIPSCodeEmitter
    */
   public void emitFunctionExit()
   {
-    writer.println("jr $ra");
+    emit(Opcode.JR, Register.RA);
   }
-}
\ No newline at end of file
+}
@@ -1,5 +1,9 @@
 package codegen.emitter;
 
+import codegen.instruction.Register;
+
+import java.util.ArrayList;
+
 /**
  * Class that maintains and emits MIPS code for handling the stack
  */
@@ -8,11 +12,20 @@ public final class MemoryStack
   /** A reference to the MIPSCodeEmitter to emit MIPS code */
   private MIPSCodeEmitter emitter;
 
-  /** The number of arguments in the stack */
-  private int argumentCount;
+  /** The registers saved in the stack frame */
+  private ArrayList<Register> registers;
+
+  /** The number of word-sized local slots in the stack frame */
+  private int slotCount;
+
+  /** The number of words of local arrays in the stack frame */
+  private int arrayWords;
+
+  /** The bytes reserved at the bottom of the stack frame for calls */
+  private int callAreaSize;
 
-  /** The number of local variables in the stack */
-  private int localCount;
+  /** Is the return address saved in the stack frame? */
+  private boolean saveReturnAddress;
 
   /**
    * Full constructor for the MemoryStack
@@ -23,35 +36,122 @@ public final class MemoryStack
   public MemoryStack(final MIPSCodeEmitter mipsEmitter)
   {
     emitter = mipsEmitter;
-    argumentCount = 0;
-    localCount = 0;
+    registers = new ArrayList<>();
+    slotCount = 0;
+    arrayWords = 0;
+    callAreaSize = 0;
+    saveReturnAddress = true;
   }
 
   /**
-   * Add an argument to the stack.
+   * Add a register to be saved in the stack frame.
+   *
+   * @param register The register to save
    */
-  public void addArgument()
+  public void addRegister(final Register register)
   {
-    ++argumentCount;
+    registers.add(register);
   }
 
   /**
-   * Add a local variable to the stack.
+   * Choose whether the return address is saved in the stack frame (a leaf
+   * function never changes $ra)
+   *
+   * @param saveReturnAddress Should $ra be saved?
    */
-  public void addLocal()
+  public void setSaveReturnAddress(final boolean saveReturnAddress)
   {
-    ++localCount;
+    this.saveReturnAddress = saveReturnAddress;
   }
 
   /**
-   * Emit the MIPS code to push all of the provided items onto the stack.
+   * Determine if the function needs a stack frame at all
+   *
+   * @return T/F if anything is kept in the stack frame
    */
-  public void emitStackPush()
+  public boolean isEmpty()
+  {
+    return registers.isEmpty() && slotCount == 0 && arrayWords == 0 &&
+           callAreaSize == 0 && !saveReturnAddress;
+  }
+
+  /**
+   * Reserve word-sized local slots in the stack frame (placed above the saved
+   * registers)
+   *
+   * @param count The number of slots to reserve
+   */
+  public void addSlots(final int count)
+  {
+    slotCount += count;
+  }
+
+  /**
+   * Reserve room for local arrays in the stack frame (placed above the local
+   * slots)
+   *
+   * @param words The number of words to reserve
+   */
+  public void addArrayWords(final int words)
+  {
+    arrayWords += words;
+  }
+
+  /**
+   * Get the offset of a word of the local array area from the stack pointer
+   *
+   * @param word The word of the array area
+   * @return The offset of the word (bytes)
+   */
+  public int getArrayOffset(final int word)
+  {
+    return callAreaSize + 4 * (registers.size() + slotCount + word);
+  }
+
+  /**
+   * Reserve space at the bottom of the stack frame for the outgoing arguments
+   * and the caller-saved registers of calls
+   *
+   * @param size The number of bytes to reserve (a multiple of 4)
+   */
+  public void setCallAreaSize(final int size)
+  {
+    callAreaSize = size;
+  }
+
+  /**
+   * Get the offset of a local slot from the stack pointer
+   *
+   * @param slot The number of the slot
+   * @return The offset of the slot (bytes)
+   */
+  public int getSlotOffset(final int slot)
+  {
+    return callAreaSize + 4 * (registers.size() + slot);
+  }
+
+  /**
+   * Get the number of bytes the stack frame occupies once pushed
+   *
+   * @return The size of the stack frame, or 0 if there is none (bytes)
+   */
+  public int getFrameSize()
+  {
+    return isEmpty() ? 0 : getStackSize();
+  }
+
+  /**
+   * Calculate the size of the stack frame
+   *
+   * @return The size of the stack frame (bytes)
+   */
+  private int getStackSize()
   {
     // Calculate the stack size:
-    // (# arguments + # locals + 1) * 4
-    //   (1 is used for the return address)
-    int stackSize = 4 * (argumentCount + localCount + 1);
+    // call area + (# saved registers + # local slots + # array words + 1) * 4
+    //   (1 is used for the return address, if it is saved)
+    int stackSize = callAreaSize + 4 * (registers.size() + slotCount +
+                                        arrayWords + (saveReturnAddress ? 1 : 0));
 
     // Check to see if we need a pad (by convention, MIPS stack frames are
     // to be on 8-byte boundaries
@@ -59,27 +159,34 @@ public final class MemoryStack
     {
       stackSize += 4;
     }
+    return stackSize;
+  }
 
-    // Create the stack frame
-    emitter.emitStackPush(stackSize);
-    String register;
-    // Push the arguments to the stack
-    for (int i = 0; i < argumentCount; i++)
+  /**
+   * Emit the MIPS code to push all of the provided items onto the stack.
+   */
+  public void emitStackPush()
+  {
+    if (isEmpty())
     {
-      register = String.format("$a%d", i);
-      emitter.emitStackSave(register, i * 4);
+      return;
     }
+    final int stackSize = getStackSize();
 
-    // Push the local variables to the stack
-    for (int i = 0; i < localCount; i++)
+    // Create the stack frame
+    emitter.emitStackPush(stackSize);
+
+    // Push the saved registers to the stack
+    for (int i = 0; i < registers.size(); i++)
     {
-      register = String.format("$s%d", i);
-      emitter.emitStackSave(register, (argumentCount * 4) + (i * 4));
+      emitter.emitStackSave(registers.get(i), callAreaSize + i * 4);
     }
 
     // Save the return address (stored in $ra) to the stack
-    emitter.emitStackSave("$ra", stackSize - 4);
-
+    if (saveReturnAddress)
+    {
+      emitter.emitStackSave(Register.RA, stackSize - 4);
+    }
   }
 
   /**
@@ -87,34 +194,22 @@ public final class MemoryStack
    */
   public void emitStackPop()
   {
-    // Calculate the stack size:
-    // (# arguments + # locals + 1) * 4
-    //   (1 is used for the return address)
-    int stackSize = 4 * (argumentCount + localCount + 1);
-
-    // Check to see if we need a pad (by convention, MIPS stack frames are
-    // to be on 8-byte boundaries
-    if (stackSize % 8 != 0)
+    if (isEmpty())
     {
-      stackSize += 4;
+      return;
     }
+    final int stackSize = getStackSize();
 
     // Retrieve the return address (stored in $ra) from the stack
-    emitter.emitStackRetrieve("$ra", stackSize - 4);
-
-    String register;
-    // Pop the local variables from the stack
-    for (int i = localCount-1; i >= 0; --i)
+    if (saveReturnAddress)
     {
-      register = String.format("$s%d", i);
-      emitter.emitStackRetrieve(register, (argumentCount * 4) + (i * 4));
+      emitter.emitStackRetrieve(Register.RA, stackSize - 4);
     }
 
-    // Pop the arguments from the stack
-    for (int i = argumentCount - 1; i >= 0; --i)
+    // Pop the saved registers from the stack
+    for (int i = registers.size() - 1; i >= 0; --i)
     {
-      register = String.format("$a%d", i);
-      emitter.emitStackRetrieve(register, i * 4);
+      emitter.emitStackRetrieve(registers.get(i), callAreaSize + i * 4);
     }
 
     // Pop the stack frame
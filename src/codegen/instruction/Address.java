@@ -0,0 +1,103 @@
+package codegen.instruction;
+
+/**
+ * A register-based memory address operand ( offset(base) ). The offset may
+ * be omitted, in which case the address is written as ( (base) ).
+ */
+public final class Address implements Operand
+{
+  /**
+   * The base register of the address
+   */
+  private final Register base;
+
+  /**
+   * The byte offset from the base register (null if omitted)
+   */
+  private final Integer offset;
+
+  /**
+   * Constructor for an address without an offset
+   *
+   * @param base The base register
+   */
+  public Address(final Register base)
+  {
+    this.base = base;
+    this.offset = null;
+  }
+
+  /**
+   * Full constructor for the Address
+   *
+   * @param base   The base register
+   * @param offset The byte offset from the base register
+   */
+  public Address(final Register base, final int offset)
+  {
+    this.base = base;
+    this.offset = offset;
+  }
+
+  /**
+   * Get the base register of the address
+   *
+   * @return The base register
+   */
+  public Register getBase()
+  {
+    return base;
+  }
+
+  /**
+   * Get the byte offset of the address
+   *
+   * @return The offset (0 if omitted)
+   */
+  public int getOffset()
+  {
+    return offset == null ? 0 : offset;
+  }
+
+  /**
+   * Determine if the address was written with an explicit offset
+   *
+   * @return T/F if there is an explicit offset
+   */
+  public boolean hasOffset()
+  {
+    return offset != null;
+  }
+
+  @Override
+  public boolean equals(final Object other)
+  {
+    if (!(other instanceof Address))
+    {
+      return false;
+    }
+    final Address address = (Address) other;
+    return address.base == base && address.getOffset() == getOffset();
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return base.hashCode() * 31 + getOffset();
+  }
+
+  /**
+   * Obtain the assembly representation of the address
+   *
+   * @return The address as offset(base)
+   */
+  @Override
+  public String toString()
+  {
+    if (offset == null)
+    {
+      return "(" + base + ")";
+    }
+    return offset + "(" + base + ")";
+  }
+}
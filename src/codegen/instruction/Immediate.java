@@ -0,0 +1,55 @@
+package codegen.instruction;
+
+/**
+ * An immediate (constant) instruction operand
+ */
+public final class Immediate implements Operand
+{
+  /**
+   * The constant value
+   */
+  private final int value;
+
+  /**
+   * Full constructor for the Immediate
+   *
+   * @param value The constant value
+   */
+  public Immediate(final int value)
+  {
+    this.value = value;
+  }
+
+  /**
+   * Get the constant value of the immediate
+   *
+   * @return The constant value
+   */
+  public int getValue()
+  {
+    return value;
+  }
+
+  @Override
+  public boolean equals(final Object other)
+  {
+    return other instanceof Immediate && ((Immediate) other).value == value;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return value;
+  }
+
+  /**
+   * Obtain the assembly representation of the immediate
+   *
+   * @return The decimal value of the immediate
+   */
+  @Override
+  public String toString()
+  {
+    return Integer.toString(value);
+  }
+}
@@ -0,0 +1,219 @@
+package codegen.instruction;
+
+/**
+ * A single line of MIPS assembly: an operation and its operands, an optional
+ * trailing comment, or one of the structural lines (labels, directives and
+ * blank separators) of the assembly file.
+ */
+public final class Instruction
+{
+  /**
+   * The operation performed by the instruction
+   */
+  private final Opcode opcode;
+
+  /**
+   * The operands of the instruction, in assembly order
+   */
+  private final Operand[] operands;
+
+  /**
+   * The trailing comment (null if there is none)
+   */
+  private String comment;
+
+  /**
+   * The number of spaces between the instruction and its comment
+   */
+  private int padding;
+
+  /**
+   * The raw text of a directive
+   */
+  private String text;
+
+  /**
+   * Full constructor for the Instruction
+   *
+   * @param opcode   The operation performed by the instruction
+   * @param operands The operands of the instruction, in assembly order
+   */
+  public Instruction(final Opcode opcode, final Operand... operands)
+  {
+    this.opcode = opcode;
+    this.operands = operands;
+    comment = null;
+    padding = 0;
+    text = "";
+  }
+
+  /**
+   * Create a label definition line
+   *
+   * @param name The name of the block (will be suffixed with __)
+   * @return The label instruction
+   */
+  public static Instruction label(final String name)
+  {
+    return new Instruction(Opcode.LABEL, Label.code(name));
+  }
+
+  /**
+   * Create an assembler directive line (such as a data declaration)
+   *
+   * @param text The raw text of the directive
+   * @return The directive instruction
+   */
+  public static Instruction directive(final String text)
+  {
+    Instruction directive = new Instruction(Opcode.DIRECTIVE);
+    directive.text = text;
+    return directive;
+  }
+
+  /**
+   * Create a blank separator line
+   *
+   * @return The separator instruction
+   */
+  public static Instruction separator()
+  {
+    return new Instruction(Opcode.SEPARATOR);
+  }
+
+  /**
+   * Attach a trailing comment to the instruction
+   *
+   * @param padding The number of spaces between the instruction and the comment
+   * @param comment The text of the comment
+   * @return This instruction
+   */
+  public Instruction withComment(final int padding, final String comment)
+  {
+    this.padding = padding;
+    this.comment = comment;
+    return this;
+  }
+
+  /**
+   * Get the operation performed by the instruction
+   *
+   * @return The opcode
+   */
+  public Opcode getOpcode()
+  {
+    return opcode;
+  }
+
+  /**
+   * Get the number of operands of the instruction
+   *
+   * @return The operand count
+   */
+  public int getOperandCount()
+  {
+    return operands.length;
+  }
+
+  /**
+   * Get an operand of the instruction
+   *
+   * @param index The operand index (in assembly order)
+   * @return The operand
+   */
+  public Operand getOperand(final int index)
+  {
+    return operands[index];
+  }
+
+  /**
+   * Replace an operand of the instruction
+   *
+   * @param index   The operand index (in assembly order)
+   * @param operand The new operand
+   */
+  public void setOperand(final int index, final Operand operand)
+  {
+    operands[index] = operand;
+  }
+
+  /**
+   * Get the trailing comment of the instruction
+   *
+   * @return The comment, or null if there is none
+   */
+  public String getComment()
+  {
+    return comment;
+  }
+
+  /**
+   * Get the number of spaces between the instruction and its comment
+   *
+   * @return The comment padding
+   */
+  public int getCommentPadding()
+  {
+    return padding;
+  }
+
+  /**
+   * Get the raw text of a directive
+   *
+   * @return The directive text ("" for other instructions)
+   */
+  public String getText()
+  {
+    return text;
+  }
+
+  /**
+   * Obtain the assembly representation of the instruction
+   *
+   * @return The line of assembly (without a line terminator)
+   */
+  @Override
+  public String toString()
+  {
+    StringBuilder builder = new StringBuilder();
+
+    switch (opcode)
+    {
+      case LABEL:
+      {
+        builder.append(operands[0]).append(':');
+        break;
+      }
+      case DIRECTIVE:
+      {
+        builder.append(text);
+        break;
+      }
+      case SEPARATOR:
+      {
+        break;
+      }
+      default:
+      {
+        builder.append(opcode.getMnemonic());
+        for (int i = 0; i < operands.length; ++i)
+        {
+          builder.append(i == 0 ? " " : ", ");
+          builder.append(operands[i]);
+        }
+        break;
+      }
+    }
+
+    if (comment != null)
+    {
+      for (int i = 0; i < padding; ++i)
+      {
+        builder.append(' ');
+      }
+      builder.append("# ").append(comment);
+    }
+
+    return builder.toString();
+  }
+}
@@ -0,0 +1,101 @@
+package codegen.instruction;
+
+/**
+ * A label instruction operand. Code labels (blocks and functions) are
+ * suffixed with "__" when written so that they never collide with data
+ * labels (global identifiers and strings), which are written verbatim.
+ */
+public final class Label implements Operand
+{
+  /**
+   * The name of the label (without the code suffix)
+   */
+  private final String name;
+
+  /**
+   * Flag indicating if the label refers to the text (code) segment
+   */
+  private final boolean isCode;
+
+  /**
+   * Full constructor for the Label
+   *
+   * @param name   The name of the label
+   * @param isCode Does the label refer to code?
+   */
+  private Label(final String name, final boolean isCode)
+  {
+    this.name = name;
+    this.isCode = isCode;
+  }
+
+  /**
+   * Create a label referring to a block of code
+   *
+   * @param name The name of the block (will be suffixed with __)
+   * @return The code label
+   */
+  public static Label code(final String name)
+  {
+    return new Label(name, true);
+  }
+
+  /**
+   * Create a label referring to the data segment
+   *
+   * @param name The name of the data item
+   * @return The data label
+   */
+  public static Label data(final String name)
+  {
+    return new Label(name, false);
+  }
+
+  /**
+   * Get the name of the label (without the code suffix)
+   *
+   * @return The label name
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Determine if the label refers to code
+   *
+   * @return T/F if this is a code label
+   */
+  public boolean isCode()
+  {
+    return isCode;
+  }
+
+  @Override
+  public boolean equals(final Object other)
+  {
+    if (!(other instanceof Label))
+    {
+      return false;
+    }
+    final Label label = (Label) other;
+    return label.isCode == isCode && label.name.equals(name);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return name.hashCode();
+  }
+
+  /**
+   * Obtain the assembly representation of the label
+   *
+   * @return The label as it should appear in the assembly file
+   */
+  @Override
+  public String toString()
+  {
+    return isCode ? name + "__" : name;
+  }
+}
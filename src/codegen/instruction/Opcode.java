@@ -0,0 +1,127 @@
+package codegen.instruction;
+
+/**
+ * Enumeration of the MIPS operations (and assembler pseudo-operations) that
+ * can be emitted by the code generator
+ */
+public enum Opcode
+{
+  // Arithmetic Operations
+  ADD    ("add",     Kind.OPERATION),
+  ADDI   ("addi",    Kind.OPERATION),
+  SUB    ("sub",     Kind.OPERATION),
+  MUL    ("mul",     Kind.OPERATION),
+  DIV    ("div",     Kind.OPERATION),
+  SLL    ("sll",     Kind.OPERATION),
+  SRA    ("sra",     Kind.OPERATION),
+  SRL    ("srl",     Kind.OPERATION),
+  MULT   ("mult",    Kind.OPERATION),
+  MFHI   ("mfhi",    Kind.OPERATION),
+  // Comparison Operations
+  SEQ    ("seq",     Kind.OPERATION),
+  SNE    ("sne",     Kind.OPERATION),
+  SLT    ("slt",     Kind.OPERATION),
+  SLE    ("sle",     Kind.OPERATION),
+  SGT    ("sgt",     Kind.OPERATION),
+  SGE    ("sge",     Kind.OPERATION),
+  // Data Movement Operations
+  LW     ("lw",      Kind.OPERATION),
+  SW     ("sw",      Kind.STORE),
+  LA     ("la",      Kind.OPERATION),
+  LI     ("li",      Kind.OPERATION),
+  MOVE   ("move",    Kind.OPERATION),
+  // Conditional Branches
+  BEQ    ("beq",     Kind.BRANCH),
+  BNE    ("bne",     Kind.BRANCH),
+  BLT    ("blt",     Kind.BRANCH),
+  BGT    ("bgt",     Kind.BRANCH),
+  BLE    ("ble",     Kind.BRANCH),
+  BGE    ("bge",     Kind.BRANCH),
+  // Unconditional Jumps
+  J      ("j",       Kind.JUMP),
+  JAL    ("jal",     Kind.CALL),
+  JR     ("jr",      Kind.JUMP),
+  // Miscellaneous Operations
+  NOP    ("nop",     Kind.OPERATION),
+  SYSCALL("syscall", Kind.CALL),
+  // Assembly File Structure (not executable)
+  LABEL    ("", Kind.STRUCTURE),
+  DIRECTIVE("", Kind.STRUCTURE),
+  SEPARATOR("", Kind.STRUCTURE);
+
+  /**
+   * Enumeration of the broad categories of operations
+   */
+  public enum Kind
+  {
+    OPERATION, // Plain operation, execution continues with the next instruction
+    STORE,     // Memory store
+    BRANCH,    // Conditional branch to a label
+    JUMP,      // Unconditional transfer of control
+    CALL,      // Call to a function or the operating system
+    STRUCTURE  // Label, directive or blank line
+  }
+
+  /**
+   * The assembly mnemonic of the operation
+   */
+  private final String mnemonic;
+
+  /**
+   * The category of the operation
+   */
+  private final Kind kind;
+
+  /**
+   * Constructor for an Opcode
+   *
+   * @param mnemonic The assembly mnemonic
+   * @param kind     The category of the operation
+   */
+  Opcode(final String mnemonic, final Kind kind)
+  {
+    this.mnemonic = mnemonic;
+    this.kind = kind;
+  }
+
+  /**
+   * Get the assembly mnemonic of the operation
+   *
+   * @return The mnemonic (such as "add")
+   */
+  public String getMnemonic()
+  {
+    return mnemonic;
+  }
+
+  /**
+   * Get the category of the operation
+   *
+   * @return The kind of operation
+   */
+  public Kind getKind()
+  {
+    return kind;
+  }
+
+  /**
+   * Determine if the operation is a conditional branch
+   *
+   * @return T/F if the operation is a conditional branch
+   */
+  public boolean isBranch()
+  {
+    return kind == Kind.BRANCH;
+  }
+
+  /**
+   * Determine if the operation is part of the file structure rather than an
+   * executable instruction
+   *
+   * @return T/F if the operation is a label, directive or separator
+   */
+  public boolean isStructure()
+  {
+    return kind == Kind.STRUCTURE;
+  }
+}
@@ -0,0 +1,10 @@
+package codegen.instruction;
+
+/**
+ * Interface implemented by everything that can appear as the operand of a
+ * MIPS instruction (registers, immediates, labels and addresses). The
+ * assembly representation of an operand is obtained through toString().
+ */
+public interface Operand
+{
+}
@@ -0,0 +1,139 @@
+package codegen.instruction;
+
+/**
+ * Enumeration of the MIPS register file. Each register knows its hardware
+ * number (used to build register bitmasks) and its assembly name.
+ */
+public enum Register implements Operand
+{
+  ZERO( 0, "$0"  ),
+  AT  ( 1, "$at" ),
+  V0  ( 2, "$v0" ),
+  V1  ( 3, "$v1" ),
+  A0  ( 4, "$a0" ),
+  A1  ( 5, "$a1" ),
+  A2  ( 6, "$a2" ),
+  A3  ( 7, "$a3" ),
+  T0  ( 8, "$t0" ),
+  T1  ( 9, "$t1" ),
+  T2  (10, "$t2" ),
+  T3  (11, "$t3" ),
+  T4  (12, "$t4" ),
+  T5  (13, "$t5" ),
+  T6  (14, "$t6" ),
+  T7  (15, "$t7" ),
+  S0  (16, "$s0" ),
+  S1  (17, "$s1" ),
+  S2  (18, "$s2" ),
+  S3  (19, "$s3" ),
+  S4  (20, "$s4" ),
+  S5  (21, "$s5" ),
+  S6  (22, "$s6" ),
+  S7  (23, "$s7" ),
+  T8  (24, "$t8" ),
+  T9  (25, "$t9" ),
+  K0  (26, "$k0" ),
+  K1  (27, "$k1" ),
+  GP  (28, "$gp" ),
+  SP  (29, "$sp" ),
+  FP  (30, "$fp" ),
+  RA  (31, "$ra" );
+
+  /** Bitmask of the argument registers ($a0 - $a3) */
+  public static final int ARGUMENT_MASK = 0x000000F0;
+
+  /** Bitmask of the temporary registers ($t0 - $t9) */
+  public static final int TEMPORARY_MASK = 0x0300FF00;
+
+  /** Bitmask of the saved registers ($s0 - $s7) */
+  public static final int SAVED_MASK = 0x00FF0000;
+
+  /** Registers indexed by their hardware number */
+  private static final Register[] BY_NUMBER = values();
+
+  /** The hardware number of the register */
+  private final int number;
+
+  /** The assembly name of the register */
+  private final String name;
+
+  /**
+   * Constructor for a Register
+   *
+   * @param number The hardware number of the register
+   * @param name   The assembly name of the register
+   */
+  Register(final int number, final String name)
+  {
+    this.number = number;
+    this.name = name;
+  }
+
+  /**
+   * Get the hardware number of the register
+   *
+   * @return The register number (0 - 31)
+   */
+  public int getNumber()
+  {
+    return number;
+  }
+
+  /**
+   * Get the bit representing this register in a register bitmask
+   *
+   * @return The single-bit mask of the register
+   */
+  public int getMask()
+  {
+    return 1 << number;
+  }
+
+  /**
+   * Get the assembly name of the register
+   *
+   * @return The assembly name (such as "$t0")
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Look up a register by its hardware number
+   *
+   * @param number The hardware number
+   * @return The register with the provided number
+   */
+  public static Register fromNumber(final int number)
+  {
+    return BY_NUMBER[number];
+  }
+
+  /**
+   * Get an argument register ($a0 - $a3)
+   *
+   * @param index The argument number
+   * @return The argument register
+   * @throws IllegalStateException Thrown if there is no such argument register
+   */
+  public static Register argument(final int index)
+  {
+    if (index < 0 || index > 3)
+    {
+      throw new IllegalStateException("No argument register $a" + index);
+    }
+    return BY_NUMBER[A0.number + index];
+  }
+
+  /**
+   * Obtain the assembly representation of the register
+   *
+   * @return The assembly name of the register
+   */
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
@@ -0,0 +1,130 @@
+package codegen.ir;
+
+/**
+ * Which memory accesses of a function in SSA form may touch the same word.
+ *
+ * Every address is traced back through its index arithmetic to its root: the
+ * label of a global, or a local array of the frame. Accesses through
+ * different roots never overlap, and neither do accesses through the same
+ * register at different offsets. An address with no known root (an array
+ * parameter, for instance) may point anywhere.
+ */
+final class AliasAnalysis
+{
+  /**
+   * The instruction defining every register (by register number)
+   */
+  private final IRInstruction[] definitions;
+
+  /**
+   * The number of definitions of every register (by register number)
+   */
+  private final int[] definitionCounts;
+
+  /**
+   * Full constructor for AliasAnalysis
+   *
+   * @param function The function (in SSA form)
+   */
+  AliasAnalysis(final IRFunction function)
+  {
+    definitions = new IRInstruction[function.getRegisterCount()];
+    definitionCounts = new int[function.getRegisterCount()];
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (instruction.getDest() != null)
+        {
+          definitions[instruction.getDest().getId()] = instruction;
+          ++definitionCounts[instruction.getDest().getId()];
+        }
+      }
+    }
+  }
+
+  /**
+   * Determine if two memory accesses may touch the same word
+   *
+   * @param base        The base register of the first access
+   * @param offset      The offset of the first access (bytes)
+   * @param otherBase   The base register of the second access
+   * @param otherOffset The offset of the second access (bytes)
+   * @return T/F if the accesses may overlap
+   */
+  boolean mayAlias(final VirtualRegister base, final int offset,
+                   final VirtualRegister otherBase, final int otherOffset)
+  {
+    if (base == otherBase)
+    {
+      return offset == otherOffset;
+    }
+    final String root = findRoot(base);
+    final String otherRoot = findRoot(otherBase);
+    return root == null || otherRoot == null || root.equals(otherRoot);
+  }
+
+  /**
+   * Determine if a call may write memory of the function
+   *
+   * @param instruction The CALL instruction
+   * @return T/F if the call is to anything but input() or output()
+   */
+  static boolean mayStore(final IRInstruction instruction)
+  {
+    return !instruction.getSymbol().equals("input") &&
+           !instruction.getSymbol().equals("output");
+  }
+
+  /**
+   * Find the array or global an address points into
+   *
+   * @param address The register holding the address
+   * @return The label of the global, a name for the local array, or null if
+   *         the address may point anywhere
+   */
+  String findRoot(final VirtualRegister address)
+  {
+    if (address.getId() >= definitions.length ||
+        definitionCounts[address.getId()] != 1)
+    {
+      return null;
+    }
+    final IRInstruction definition = definitions[address.getId()];
+    switch (definition.getOpcode())
+    {
+      case LOAD_ADDRESS:
+      {
+        return definition.getSymbol();
+      }
+      case FRAME_ADDRESS:
+      {
+        return "frame " + definition.getOperand(0);
+      }
+      case COPY:
+      case ADD:
+      case SUB:
+      {
+        // Follow the base through the index arithmetic
+        String root = null;
+        for (final VirtualRegister use : definition.getUses())
+        {
+          final String found = findRoot(use);
+          if (found != null)
+          {
+            if (root != null)
+            {
+              return null;
+            }
+            root = found;
+          }
+        }
+        return root;
+      }
+      default:
+      {
+        return null;
+      }
+    }
+  }
+}
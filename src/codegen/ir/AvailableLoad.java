@@ -0,0 +1,41 @@
+package codegen.ir;
+
+/**
+ * A word of memory known to be held in a register, after it was loaded or
+ * stored (used by value numbering)
+ */
+final class AvailableLoad
+{
+  /**
+   * The base register of the address
+   */
+  private final VirtualRegister base;
+
+  /**
+   * The offset from the base register (bytes)
+   */
+  private final int offset;
+
+  /**
+   * The register holding the word
+   */
+  private final VirtualRegister value;
+
+  /**
+   * Full constructor for an AvailableLoad
+   *
+   * @param access The LOAD or STORE instruction accessing the word
+   * @param value  The register holding the word
+   */
+  AvailableLoad(final IRInstruction access, final VirtualRegister value)
+  {
+    final int baseIndex = (access.getOpcode() == IROpcode.STORE) ? 1 : 0;
+    this.base = (VirtualRegister) access.getOperand(baseIndex);
+    this.offset = ((Constant) access.getOperand(baseIndex + 1)).getValue();
+    this.value = value;
+  }
+
+  VirtualRegister getBase()   { return base;   }
+  int             getOffset() { return offset; }
+  VirtualRegister getValue()  { return value;  }
+}
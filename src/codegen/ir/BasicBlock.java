@@ -0,0 +1,126 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+
+/**
+ * A basic block of the IR: a straight-line list of instructions that is only
+ * entered at the top and ends with a single terminator (JUMP, BRANCH or
+ * RETURN). The predecessor and successor lists are derived from the
+ * terminators by IRFunction.computeControlFlow().
+ */
+public final class BasicBlock
+{
+  /**
+   * The label of the block (unique within the program)
+   */
+  private final String label;
+
+  /**
+   * The instructions of the block
+   */
+  private final ArrayList<IRInstruction> instructions;
+
+  /**
+   * The blocks that may transfer control to this block
+   */
+  private final ArrayList<BasicBlock> predecessors;
+
+  /**
+   * The blocks this block may transfer control to
+   */
+  private final ArrayList<BasicBlock> successors;
+
+  /**
+   * Full constructor for a BasicBlock
+   *
+   * @param label The label of the block
+   */
+  BasicBlock(final String label)
+  {
+    this.label = label;
+    instructions = new ArrayList<>();
+    predecessors = new ArrayList<>();
+    successors = new ArrayList<>();
+  }
+
+  /**
+   * Get the label of the block
+   *
+   * @return The block label
+   */
+  public String getLabel()
+  {
+    return label;
+  }
+
+  /**
+   * Get the instructions of the block
+   *
+   * @return The (mutable) instruction list
+   */
+  public ArrayList<IRInstruction> getInstructions()
+  {
+    return instructions;
+  }
+
+  /**
+   * Append an instruction to the block
+   *
+   * @param instruction The instruction to append
+   */
+  public void add(final IRInstruction instruction)
+  {
+    instructions.add(instruction);
+  }
+
+  /**
+   * Get the terminator of the block
+   *
+   * @return The last instruction if it is a terminator, otherwise null
+   */
+  public IRInstruction getTerminator()
+  {
+    if (instructions.isEmpty())
+    {
+      return null;
+    }
+    final IRInstruction last = instructions.get(instructions.size() - 1);
+    return last.isTerminator() ? last : null;
+  }
+
+  /**
+   * Determine if the block already ends with a terminator
+   *
+   * @return T/F if the block is terminated
+   */
+  public boolean isTerminated()
+  {
+    return getTerminator() != null;
+  }
+
+  /**
+   * Get the predecessors of the block
+   *
+   * @return The predecessor list
+   */
+  public ArrayList<BasicBlock> getPredecessors()
+  {
+    return predecessors;
+  }
+
+  /**
+   * Get the successors of the block
+   *
+   * @return The successor list
+   */
+  public ArrayList<BasicBlock> getSuccessors()
+  {
+    return successors;
+  }
+
+  @Override
+  public String toString()
+  {
+    return label;
+  }
+}
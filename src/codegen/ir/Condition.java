@@ -0,0 +1,91 @@
+package codegen.ir;
+
+/**
+ * Enumeration of the comparisons used by the IR branch and set instructions
+ */
+public enum Condition
+{
+  EQ("=="),
+  NE("!="),
+  LT("<"),
+  LE("<="),
+  GT(">"),
+  GE(">=");
+
+  /**
+   * The source-level symbol of the comparison
+   */
+  private final String symbol;
+
+  /**
+   * Constructor for a Condition
+   *
+   * @param symbol The source-level symbol of the comparison
+   */
+  Condition(final String symbol)
+  {
+    this.symbol = symbol;
+  }
+
+  /**
+   * Get the condition that holds exactly when this one does not
+   *
+   * @return The negated condition (such as GE for LT)
+   */
+  public Condition negate()
+  {
+    switch (this)
+    {
+      case EQ: return NE;
+      case NE: return EQ;
+      case LT: return GE;
+      case LE: return GT;
+      case GT: return LE;
+      default: return LT;
+    }
+  }
+
+  /**
+   * Get the condition that gives the same result when the operands of the
+   * comparison are exchanged
+   *
+   * @return The swapped condition (such as GT for LT)
+   */
+  public Condition swap()
+  {
+    switch (this)
+    {
+      case LT: return GT;
+      case LE: return GE;
+      case GT: return LT;
+      case GE: return LE;
+      default: return this;
+    }
+  }
+
+  /**
+   * Evaluate the comparison for two known values
+   *
+   * @param lhs The left hand side of the comparison
+   * @param rhs The right hand side of the comparison
+   * @return T/F if the comparison holds
+   */
+  public boolean evaluate(final int lhs, final int rhs)
+  {
+    switch (this)
+    {
+      case EQ: return lhs == rhs;
+      case NE: return lhs != rhs;
+      case LT: return lhs <  rhs;
+      case LE: return lhs <= rhs;
+      case GT: return lhs >  rhs;
+      default: return lhs >= rhs;
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return symbol;
+  }
+}
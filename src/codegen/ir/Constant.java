@@ -0,0 +1,50 @@
+package codegen.ir;
+
+/**
+ * An integer constant operand of an IR instruction
+ */
+public final class Constant implements IROperand
+{
+  /**
+   * The value of the constant
+   */
+  private final int value;
+
+  /**
+   * Full constructor for a Constant
+   *
+   * @param value The value of the constant
+   */
+  public Constant(final int value)
+  {
+    this.value = value;
+  }
+
+  /**
+   * Get the value of the constant
+   *
+   * @return The integer value
+   */
+  public int getValue()
+  {
+    return value;
+  }
+
+  @Override
+  public boolean equals(final Object other)
+  {
+    return (other instanceof Constant) && ((Constant) other).value == value;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return value;
+  }
+
+  @Override
+  public String toString()
+  {
+    return Integer.toString(value);
+  }
+}
@@ -0,0 +1,651 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck) over a function
+ * in SSA form.
+ *
+ * Every register starts out undefined and is lowered to a constant or to
+ * "varying" as the instructions defining it are found to be executable. Only
+ * the successors a branch can actually take are followed, so constants are
+ * propagated across branches and through PHIs whose other incoming values
+ * can never arrive.
+ *
+ * Afterwards, constant registers are substituted into their uses, branches
+ * with a known outcome become jumps, blocks that can never execute are
+ * removed, and definitions left without uses are deleted.
+ */
+public final class ConstantPropagation
+{
+  /** Lattice value of a register whose value is not known yet */
+  private static final int UNDEFINED = 0;
+
+  /** Lattice value of a register with a single constant value */
+  private static final int CONSTANT  = 1;
+
+  /** Lattice value of a register that may take more than one value */
+  private static final int VARYING   = 2;
+
+  /**
+   * The function being optimized
+   */
+  private final IRFunction function;
+
+  /**
+   * The lattice value of every register (by register number)
+   */
+  private int[] state;
+
+  /**
+   * The constant value of every register whose lattice value is CONSTANT
+   */
+  private int[] value;
+
+  /**
+   * The block containing every instruction
+   */
+  private HashMap<IRInstruction, BasicBlock> blockOf;
+
+  /**
+   * The instructions using every register
+   */
+  private HashMap<VirtualRegister, ArrayList<IRInstruction>> users;
+
+  /**
+   * The blocks found to be executable
+   */
+  private HashSet<BasicBlock> executableBlocks;
+
+  /**
+   * The successors of every block found to be executable
+   */
+  private HashMap<BasicBlock, HashSet<BasicBlock>> executableEdges;
+
+  /**
+   * Control flow edges waiting to be processed (pairs of source, target)
+   */
+  private ArrayList<BasicBlock> edgeWorklist;
+
+  /**
+   * Instructions waiting to be re-evaluated
+   */
+  private ArrayList<IRInstruction> instructionWorklist;
+
+  /**
+   * Full constructor for ConstantPropagation
+   *
+   * @param function The function to optimize (in SSA form)
+   */
+  public ConstantPropagation(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Run the propagation and rewrite the function
+   *
+   * @return T/F if the function was changed
+   */
+  public boolean run()
+  {
+    analyze();
+
+    boolean changed = substitute();
+    changed |= foldBranches();
+    changed |= new DeadCodeElimination(function).run();
+
+    function.computeControlFlow();
+    return changed;
+  }
+
+  /**
+   * Compute the lattice value of every register and the executable blocks
+   */
+  private void analyze()
+  {
+    function.computeControlFlow();
+
+    final int count = function.getRegisterCount();
+    state = new int[count];
+    value = new int[count];
+    blockOf = new HashMap<>();
+    users = new HashMap<>();
+    executableBlocks = new HashSet<>();
+    executableEdges = new HashMap<>();
+    edgeWorklist = new ArrayList<>();
+    instructionWorklist = new ArrayList<>();
+
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        blockOf.put(instruction, block);
+        for (final VirtualRegister use : instruction.getUses())
+        {
+          ArrayList<IRInstruction> list = users.get(use);
+          if (list == null)
+          {
+            list = new ArrayList<>();
+            users.put(use, list);
+          }
+          list.add(instruction);
+
+          // Parameters (and variables read before any assignment) are
+          // never defined inside the function
+          if (use.isVariable() && !use.isVersion())
+          {
+            state[use.getId()] = VARYING;
+          }
+        }
+      }
+    }
+
+    // Enter the function
+    edgeWorklist.add(null);
+    edgeWorklist.add(function.getEntry());
+
+    while (!edgeWorklist.isEmpty() || !instructionWorklist.isEmpty())
+    {
+      while (!edgeWorklist.isEmpty())
+      {
+        final BasicBlock source = edgeWorklist.remove(0);
+        final BasicBlock target = edgeWorklist.remove(0);
+        visitEdge(source, target);
+      }
+      while (!instructionWorklist.isEmpty())
+      {
+        final IRInstruction instruction =
+            instructionWorklist.remove(instructionWorklist.size() - 1);
+        if (executableBlocks.contains(blockOf.get(instruction)))
+        {
+          visit(instruction);
+        }
+      }
+    }
+  }
+
+  /**
+   * Process a control flow edge that has been found to be executable
+   *
+   * @param source The source block (null for the function entry)
+   * @param target The target block
+   */
+  private void visitEdge(final BasicBlock source, final BasicBlock target)
+  {
+    if (source != null)
+    {
+      HashSet<BasicBlock> edges = executableEdges.get(source);
+      if (edges == null)
+      {
+        edges = new HashSet<>();
+        executableEdges.put(source, edges);
+      }
+      if (!edges.add(target))
+      {
+        return;
+      }
+    }
+
+    if (executableBlocks.add(target))
+    {
+      // First visit: evaluate the whole block
+      for (final IRInstruction instruction : target.getInstructions())
+      {
+        visit(instruction);
+      }
+    }
+    else
+    {
+      // Only the PHIs can see the new incoming edge
+      for (final IRInstruction instruction : target.getInstructions())
+      {
+        if (instruction.getOpcode() != IROpcode.PHI)
+        {
+          break;
+        }
+        visit(instruction);
+      }
+    }
+  }
+
+  /**
+   * Evaluate an instruction in an executable block
+   *
+   * @param instruction The instruction to evaluate
+   */
+  private void visit(final IRInstruction instruction)
+  {
+    final BasicBlock block = blockOf.get(instruction);
+    switch (instruction.getOpcode())
+    {
+      case JUMP:
+      {
+        addEdge(block, instruction.getTargets().get(0));
+        return;
+      }
+      case BRANCH:
+      {
+        final IROperand lhs = instruction.getOperand(0);
+        final IROperand rhs = instruction.getOperand(1);
+        if (stateOf(lhs) == CONSTANT && stateOf(rhs) == CONSTANT)
+        {
+          final boolean taken =
+              instruction.getCondition().evaluate(valueOf(lhs), valueOf(rhs));
+          addEdge(block, instruction.getTargets().get(taken ? 0 : 1));
+        }
+        else if (stateOf(lhs) == VARYING || stateOf(rhs) == VARYING)
+        {
+          addEdge(block, instruction.getTargets().get(0));
+          addEdge(block, instruction.getTargets().get(1));
+        }
+        return;
+      }
+      case RETURN:
+      case STORE:
+      {
+        return;
+      }
+      default:
+      {
+        break;
+      }
+    }
+
+    final VirtualRegister dest = instruction.getDest();
+    if (dest == null)
+    {
+      return;
+    }
+
+    // Evaluate the instruction into a (state, value) pair
+    int newState;
+    int newValue = 0;
+    switch (instruction.getOpcode())
+    {
+      case PHI:
+      {
+        newState = UNDEFINED;
+        for (int i = 0; i < instruction.getOperandCount(); ++i)
+        {
+          final HashSet<BasicBlock> sourceEdges =
+              executableEdges.get(instruction.getTargets().get(i));
+          if (sourceEdges == null || !sourceEdges.contains(block))
+          {
+            continue;
+          }
+          final IROperand operand = instruction.getOperand(i);
+          final int operandState = stateOf(operand);
+          if (operandState == UNDEFINED)
+          {
+            continue;
+          }
+          if (operandState == VARYING ||
+              (newState == CONSTANT && newValue != valueOf(operand)))
+          {
+            newState = VARYING;
+            break;
+          }
+          newState = CONSTANT;
+          newValue = valueOf(operand);
+        }
+        break;
+      }
+      case COPY:
+      {
+        newState = stateOf(instruction.getOperand(0));
+        if (newState == CONSTANT)
+        {
+          newValue = valueOf(instruction.getOperand(0));
+        }
+        break;
+      }
+      case ADD:
+      case SUB:
+      case MUL:
+      case DIV:
+      case SLL:
+      case SRA:
+      case SRL:
+      case MULHI:
+      case SET:
+      {
+        final IROperand lhs = instruction.getOperand(0);
+        final IROperand rhs = instruction.getOperand(1);
+        final int lhsState = stateOf(lhs);
+        final int rhsState = stateOf(rhs);
+
+        if (instruction.getOpcode() == IROpcode.MUL &&
+            ((lhsState == CONSTANT && valueOf(lhs) == 0) ||
+             (rhsState == CONSTANT && valueOf(rhs) == 0)))
+        {
+          // Anything times zero is zero
+          newState = CONSTANT;
+          newValue = 0;
+        }
+        else if (lhsState == VARYING || rhsState == VARYING)
+        {
+          newState = VARYING;
+        }
+        else if (lhsState == UNDEFINED || rhsState == UNDEFINED)
+        {
+          newState = UNDEFINED;
+        }
+        else if (instruction.getOpcode() == IROpcode.DIV && valueOf(rhs) == 0)
+        {
+          // Leave the division by zero to the program
+          newState = VARYING;
+        }
+        else
+        {
+          newState = CONSTANT;
+          newValue = fold(instruction, valueOf(lhs), valueOf(rhs));
+        }
+        break;
+      }
+      default:
+      {
+        // Loads, calls and addresses are never known
+        newState = VARYING;
+        break;
+      }
+    }
+
+    // Values only ever move down the lattice
+    final int id = dest.getId();
+    if (newState == CONSTANT && state[id] == CONSTANT && newValue != value[id])
+    {
+      newState = VARYING;
+    }
+    if (newState <= state[id])
+    {
+      return;
+    }
+    state[id] = newState;
+    value[id] = newValue;
+    final ArrayList<IRInstruction> list = users.get(dest);
+    if (list != null)
+    {
+      instructionWorklist.addAll(list);
+    }
+  }
+
+  /**
+   * Queue a control flow edge
+   *
+   * @param source The source block
+   * @param target The target block
+   */
+  private void addEdge(final BasicBlock source, final BasicBlock target)
+  {
+    final HashSet<BasicBlock> edges = executableEdges.get(source);
+    if (edges != null && edges.contains(target))
+    {
+      return;
+    }
+    edgeWorklist.add(source);
+    edgeWorklist.add(target);
+  }
+
+  /**
+   * Replace the uses of constant registers with constants, and the
+   * definitions of constant registers with copies of the constant
+   *
+   * @return T/F if the function was changed
+   */
+  private boolean substitute()
+  {
+    boolean changed = false;
+    for (final BasicBlock block : function.getBlocks())
+    {
+      if (!executableBlocks.contains(block))
+      {
+        continue;
+      }
+      ArrayList<IRInstruction> instructions = block.getInstructions();
+      for (int i = 0; i < instructions.size(); ++i)
+      {
+        IRInstruction instruction = instructions.get(i);
+        final VirtualRegister dest = instruction.getDest();
+
+        // Computations with a known result become copies of the result
+        if (dest != null &&
+            instruction.getOpcode().isPure() &&
+            state[dest.getId()] == CONSTANT &&
+            !(instruction.getOpcode() == IROpcode.COPY &&
+              instruction.getOperand(0) instanceof Constant))
+        {
+          instruction = IRInstruction.copy(dest, new Constant(value[dest.getId()]));
+          instructions.set(i, instruction);
+          changed = true;
+          continue;
+        }
+
+        changed |= substituteOperands(instruction);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Replace the constant register operands of an instruction with constants,
+   * wherever the instruction accepts a constant
+   *
+   * @param instruction The instruction to rewrite
+   * @return T/F if the instruction was changed
+   */
+  private boolean substituteOperands(final IRInstruction instruction)
+  {
+    switch (instruction.getOpcode())
+    {
+      case COPY:
+      case RETURN:
+      case CALL:
+      case TAIL_CALL:
+      {
+        // Every operand may be a constant
+        boolean changed = false;
+        for (int i = 0; i < instruction.getOperandCount(); ++i)
+        {
+          changed |= substituteOperand(instruction, i);
+        }
+        return changed;
+      }
+      case ADD:
+      case SUB:
+      case MUL:
+      case DIV:
+      case SLL:
+      case SRA:
+      case SRL:
+      case MULHI:
+      case SET:
+      case BRANCH:
+      {
+        // The left hand side has to stay in a register, unless the operands
+        // can be exchanged
+        boolean changed = substituteOperand(instruction, 1);
+        if (stateOf(instruction.getOperand(0)) == CONSTANT &&
+            instruction.getOperand(1) instanceof VirtualRegister &&
+            exchangeOperands(instruction))
+        {
+          substituteOperand(instruction, 1);
+          changed = true;
+        }
+        return changed;
+      }
+      default:
+      {
+        // Memory operations need their operands in registers, and the PHIs
+        // have to keep referring to the versions that reach them
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Exchange the operands of a commutative operation or comparison
+   *
+   * @param instruction The instruction
+   * @return T/F if the operands could be exchanged
+   */
+  private static boolean exchangeOperands(final IRInstruction instruction)
+  {
+    switch (instruction.getOpcode())
+    {
+      case ADD:
+      case MUL:
+      {
+        break;
+      }
+      case SET:
+      case BRANCH:
+      {
+        instruction.setCondition(instruction.getCondition().swap());
+        break;
+      }
+      default:
+      {
+        return false;
+      }
+    }
+    final IROperand lhs = instruction.getOperand(0);
+    instruction.setOperand(0, instruction.getOperand(1));
+    instruction.setOperand(1, lhs);
+    return true;
+  }
+
+  /**
+   * Replace a single operand with a constant if its register is constant
+   *
+   * @param instruction The instruction
+   * @param index       The operand index
+   * @return T/F if the operand was replaced
+   */
+  private boolean substituteOperand(final IRInstruction instruction,
+                                    final int index)
+  {
+    final IROperand operand = instruction.getOperand(index);
+    if (operand instanceof VirtualRegister &&
+        state[((VirtualRegister) operand).getId()] == CONSTANT)
+    {
+      instruction.setOperand(index,
+                             new Constant(value[((VirtualRegister) operand).getId()]));
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Turn the branches that can only go one way into jumps, drop the PHI
+   * operands of edges that never execute, and remove the blocks that never
+   * execute
+   *
+   * @return T/F if the function was changed
+   */
+  private boolean foldBranches()
+  {
+    boolean changed = false;
+
+    ArrayList<BasicBlock> blocks = function.getBlocks();
+    for (int b = blocks.size() - 1; b >= 0; --b)
+    {
+      final BasicBlock block = blocks.get(b);
+      if (!executableBlocks.contains(block))
+      {
+        blocks.remove(b);
+        changed = true;
+        continue;
+      }
+
+      final ArrayList<IRInstruction> instructions = block.getInstructions();
+      final IRInstruction terminator = block.getTerminator();
+      if (terminator.getOpcode() == IROpcode.BRANCH)
+      {
+        final HashSet<BasicBlock> edges = executableEdges.get(block);
+        final BasicBlock trueTarget = terminator.getTargets().get(0);
+        final BasicBlock falseTarget = terminator.getTargets().get(1);
+        if (!edges.contains(trueTarget) || !edges.contains(falseTarget))
+        {
+          final BasicBlock target = edges.contains(trueTarget) ? trueTarget : falseTarget;
+          instructions.set(instructions.size() - 1, IRInstruction.jump(target));
+          changed = true;
+        }
+      }
+
+      for (final IRInstruction phi : instructions)
+      {
+        if (phi.getOpcode() != IROpcode.PHI)
+        {
+          break;
+        }
+        for (int i = phi.getOperandCount() - 1; i >= 0; --i)
+        {
+          final HashSet<BasicBlock> edges =
+              executableEdges.get(phi.getTargets().get(i));
+          if (edges == null || !edges.contains(block))
+          {
+            phi.removeOperand(i);
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Get the lattice value of an operand
+   *
+   * @param operand The operand
+   * @return UNDEFINED, CONSTANT or VARYING
+   */
+  private int stateOf(final IROperand operand)
+  {
+    if (operand instanceof Constant)
+    {
+      return CONSTANT;
+    }
+    return state[((VirtualRegister) operand).getId()];
+  }
+
+  /**
+   * Get the constant value of an operand whose lattice value is CONSTANT
+   *
+   * @param operand The operand
+   * @return The constant value
+   */
+  private int valueOf(final IROperand operand)
+  {
+    if (operand instanceof Constant)
+    {
+      return ((Constant) operand).getValue();
+    }
+    return value[((VirtualRegister) operand).getId()];
+  }
+
+  /**
+   * Compute the result of an arithmetic operation or comparison on constants
+   *
+   * @param instruction The instruction
+   * @param lhs         The left hand side
+   * @param rhs         The right hand side
+   * @return The result
+   */
+  static int fold(final IRInstruction instruction, final int lhs, final int rhs)
+  {
+    switch (instruction.getOpcode())
+    {
+      case ADD: return lhs + rhs;
+      case SUB: return lhs - rhs;
+      case MUL: return lhs * rhs;
+      case DIV: return lhs / rhs;
+      case SLL: return lhs << rhs;
+      case SRA: return lhs >> rhs;
+      case SRL: return lhs >>> rhs;
+      case MULHI: return (int) (((long) lhs * rhs) >> 32);
+      default:  return instruction.getCondition().evaluate(lhs, rhs) ? 1 : 0;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Class that simplifies the control flow graph of a function that is not in
+ * SSA form: branches and jumps to blocks that only jump on are sent straight
+ * to the final target, branches with a single target become jumps, and the
+ * blocks that can no longer be reached from the entry block are removed.
+ */
+public final class ControlFlowCleanup
+{
+  /**
+   * The function being simplified
+   */
+  private final IRFunction function;
+
+  /**
+   * Full constructor for ControlFlowCleanup
+   *
+   * @param function The function to simplify (not in SSA form)
+   */
+  public ControlFlowCleanup(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Simplify the control flow graph
+   *
+   * @return T/F if the function was changed
+   */
+  public boolean run()
+  {
+    boolean changed = false;
+    for (final BasicBlock block : function.getBlocks())
+    {
+      final IRInstruction terminator = block.getTerminator();
+      final ArrayList<BasicBlock> targets = terminator.getTargets();
+      for (int i = 0; i < targets.size(); ++i)
+      {
+        final BasicBlock target = skipJumps(targets.get(i));
+        if (target != targets.get(i))
+        {
+          targets.set(i, target);
+          changed = true;
+        }
+      }
+
+      if (terminator.getOpcode() == IROpcode.BRANCH &&
+          targets.get(0) == targets.get(1))
+      {
+        block.getInstructions().set(block.getInstructions().size() - 1,
+                                    IRInstruction.jump(targets.get(0)));
+        changed = true;
+      }
+    }
+
+    changed |= removeUnreachable();
+    function.computeControlFlow();
+    return changed;
+  }
+
+  /**
+   * Follow a chain of blocks that only jump to the next one
+   *
+   * @param block The first block of the chain
+   * @return The first block of the chain that does something else
+   */
+  private static BasicBlock skipJumps(final BasicBlock block)
+  {
+    HashSet<BasicBlock> visited = new HashSet<>();
+    BasicBlock current = block;
+    while (current.getInstructions().size() == 1 &&
+           current.getTerminator().getOpcode() == IROpcode.JUMP &&
+           visited.add(current))
+    {
+      current = current.getTerminator().getTargets().get(0);
+    }
+    // An empty loop jumps to itself forever, so it must be kept
+    return visited.contains(current) ? block : current;
+  }
+
+  /**
+   * Remove the blocks that cannot be reached from the entry block
+   *
+   * @return T/F if any block was removed
+   */
+  private boolean removeUnreachable()
+  {
+    HashSet<BasicBlock> reachable = new HashSet<>();
+    ArrayList<BasicBlock> worklist = new ArrayList<>();
+    worklist.add(function.getEntry());
+    while (!worklist.isEmpty())
+    {
+      final BasicBlock block = worklist.remove(worklist.size() - 1);
+      if (reachable.add(block))
+      {
+        worklist.addAll(block.getTerminator().getTargets());
+      }
+    }
+    return function.getBlocks().retainAll(reachable);
+  }
+}
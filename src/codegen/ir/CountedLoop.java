@@ -0,0 +1,254 @@
+package codegen.ir;
+
+import java.util.HashSet;
+
+/**
+ * An innermost loop of a function not in SSA form that counts a variable
+ * towards a constant bound: the variable is changed in exactly one place, by
+ * a constant step taken once every iteration, and the only way out of the
+ * loop is the branch at the bottom comparing the variable with the bound
+ * (the shape a while-loop is lowered to).
+ */
+final class CountedLoop
+{
+  /**
+   * The loop
+   */
+  private final Loop loop;
+
+  /**
+   * The only block jumping back to the header
+   */
+  private final BasicBlock latch;
+
+  /**
+   * The block the loop exits to
+   */
+  private final BasicBlock exit;
+
+  /**
+   * The variable counting the iterations
+   */
+  private final VirtualRegister variable;
+
+  /**
+   * The condition on the variable and the bound for another iteration
+   */
+  private final Condition condition;
+
+  /**
+   * The bound the variable is compared with
+   */
+  private final int bound;
+
+  /**
+   * The amount added to the variable every iteration
+   */
+  private final int step;
+
+  /**
+   * Full constructor for a CountedLoop
+   *
+   * @param loop      The loop
+   * @param latch     The only block jumping back to the header
+   * @param exit      The block the loop exits to
+   * @param variable  The variable counting the iterations
+   * @param condition The condition for another iteration
+   * @param bound     The bound the variable is compared with
+   * @param step      The amount added to the variable every iteration
+   */
+  private CountedLoop(final Loop loop, final BasicBlock latch,
+                      final BasicBlock exit, final VirtualRegister variable,
+                      final Condition condition, final int bound,
+                      final int step)
+  {
+    this.loop = loop;
+    this.latch = latch;
+    this.exit = exit;
+    this.variable = variable;
+    this.condition = condition;
+    this.bound = bound;
+    this.step = step;
+  }
+
+  Loop            getLoop()      { return loop;      }
+  BasicBlock      getLatch()     { return latch;     }
+  BasicBlock      getExit()      { return exit;      }
+  VirtualRegister getVariable()  { return variable;  }
+  Condition       getCondition() { return condition; }
+  int             getBound()     { return bound;     }
+  int             getStep()      { return step;      }
+
+  /**
+   * Recognize a counted loop
+   *
+   * @param loop The loop (must not contain other loops)
+   * @param tree The dominator tree of the function
+   * @return The counted loop, or null if the loop does not count
+   */
+  static CountedLoop find(final Loop loop, final DominatorTree tree)
+  {
+    if (loop.getLatches().size() != 1)
+    {
+      return null;
+    }
+    final BasicBlock header = loop.getHeader();
+    final BasicBlock latch = loop.getLatches().get(0);
+
+    // The latch branches back to the header or out of the loop, and no other
+    // block leaves the loop
+    final IRInstruction branch = latch.getTerminator();
+    if (branch.getOpcode() != IROpcode.BRANCH ||
+        !(branch.getOperand(0) instanceof VirtualRegister) ||
+        !(branch.getOperand(1) instanceof Constant))
+    {
+      return null;
+    }
+    final boolean backOnTrue = branch.getTargets().get(0) == header;
+    final BasicBlock exit = branch.getTargets().get(backOnTrue ? 1 : 0);
+    if (branch.getTargets().get(backOnTrue ? 0 : 1) != header ||
+        loop.contains(exit))
+    {
+      return null;
+    }
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      for (final BasicBlock successor : block.getSuccessors())
+      {
+        if (block != latch && !loop.contains(successor))
+        {
+          return null;
+        }
+      }
+    }
+
+    // The variable compared is stepped by a constant exactly once, in a
+    // block taken every iteration
+    final VirtualRegister variable = (VirtualRegister) branch.getOperand(0);
+    if (!variable.isVariable())
+    {
+      return null;
+    }
+    IRInstruction increment = null;
+    BasicBlock incrementBlock = null;
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (instruction.getDest() == variable)
+        {
+          if (increment != null)
+          {
+            return null;
+          }
+          increment = instruction;
+          incrementBlock = block;
+        }
+      }
+    }
+    if (increment == null || !tree.dominates(incrementBlock, latch))
+    {
+      return null;
+    }
+    final int step = findStep(increment);
+    if (step == 0)
+    {
+      return null;
+    }
+
+    final Condition condition = backOnTrue ? branch.getCondition() :
+                                             branch.getCondition().negate();
+    return new CountedLoop(loop, latch, exit, variable, condition,
+                           ((Constant) branch.getOperand(1)).getValue(), step);
+  }
+
+  /**
+   * Find the value the variable starts the loop with, if it is a constant
+   * assigned on the only way into the loop
+   *
+   * @return The value, or null if it is not known
+   */
+  Integer findInitialValue()
+  {
+    BasicBlock block = null;
+    for (final BasicBlock predecessor : loop.getHeader().getPredecessors())
+    {
+      if (predecessor != latch)
+      {
+        if (block != null)
+        {
+          return null;
+        }
+        block = predecessor;
+      }
+    }
+
+    // Walk back through the blocks that can only be entered one way
+    HashSet<BasicBlock> visited = new HashSet<>();
+    while (block != null && visited.add(block))
+    {
+      for (int i = block.getInstructions().size() - 1; i >= 0; --i)
+      {
+        final IRInstruction instruction = block.getInstructions().get(i);
+        if (instruction.getDest() != variable)
+        {
+          continue;
+        }
+        if (instruction.getOpcode() == IROpcode.COPY &&
+            instruction.getOperand(0) instanceof Constant)
+        {
+          return ((Constant) instruction.getOperand(0)).getValue();
+        }
+        return null;
+      }
+      block = (block.getPredecessors().size() == 1) ?
+              block.getPredecessors().get(0) : null;
+    }
+    return null;
+  }
+
+  /**
+   * Get the constant step of the variable's only definition in the loop
+   *
+   * @param increment The definition
+   * @return The amount added to the variable (0 if not a constant step)
+   */
+  private static int findStep(final IRInstruction increment)
+  {
+    final VirtualRegister variable = increment.getDest();
+    if (increment.getOperandCount() != 2)
+    {
+      return 0;
+    }
+    final IROperand lhs = increment.getOperand(0);
+    final IROperand rhs = increment.getOperand(1);
+    switch (increment.getOpcode())
+    {
+      case ADD:
+      {
+        if (lhs == variable && rhs instanceof Constant)
+        {
+          return ((Constant) rhs).getValue();
+        }
+        if (rhs == variable && lhs instanceof Constant)
+        {
+          return ((Constant) lhs).getValue();
+        }
+        return 0;
+      }
+      case SUB:
+      {
+        if (lhs == variable && rhs instanceof Constant &&
+            ((Constant) rhs).getValue() != Integer.MIN_VALUE)
+        {
+          return -((Constant) rhs).getValue();
+        }
+        return 0;
+      }
+      default:
+      {
+        return 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+
+/**
+ * Class that removes every side-effect free instruction whose result is never
+ * used. Removing an instruction can leave its operands unused, so the pass
+ * repeats until nothing more can be removed.
+ *
+ * A register is only considered unused if no instruction reads it at all,
+ * so the pass is correct both in SSA form and for variables with several
+ * definitions.
+ */
+public final class DeadCodeElimination
+{
+  /**
+   * The function being optimized
+   */
+  private final IRFunction function;
+
+  /**
+   * Full constructor for DeadCodeElimination
+   *
+   * @param function The function to optimize
+   */
+  public DeadCodeElimination(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Remove the dead instructions
+   *
+   * @return T/F if an instruction was removed
+   */
+  public boolean run()
+  {
+    boolean changed = false;
+    boolean removed = true;
+    while (removed)
+    {
+      removed = false;
+
+      int[] uses = new int[function.getRegisterCount()];
+      for (final BasicBlock block : function.getBlocks())
+      {
+        for (final IRInstruction instruction : block.getInstructions())
+        {
+          for (final VirtualRegister use : instruction.getUses())
+          {
+            ++uses[use.getId()];
+          }
+        }
+      }
+
+      for (final BasicBlock block : function.getBlocks())
+      {
+        ArrayList<IRInstruction> instructions = block.getInstructions();
+        for (int i = instructions.size() - 1; i >= 0; --i)
+        {
+          final IRInstruction instruction = instructions.get(i);
+          final VirtualRegister dest = instruction.getDest();
+          if (dest != null &&
+              instruction.getOpcode().isPure() &&
+              uses[dest.getId()] == 0)
+          {
+            instructions.remove(i);
+            removed = true;
+          }
+        }
+      }
+      changed |= removed;
+    }
+    return changed;
+  }
+}
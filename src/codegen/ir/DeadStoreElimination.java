@@ -0,0 +1,229 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+
+/**
+ * Class that removes stores to memory that can never be read, over a function
+ * in SSA form (register definitions that are never read are left to
+ * DeadCodeElimination).
+ *
+ * A store is dead if a later store in the same block writes the same word
+ * before anything may read it, or if it writes a local array that is never
+ * read: the array is not loaded from, and its address is only used to
+ * compute element addresses and to store to them. Local arrays left without
+ * any use afterwards are released from the stack frame.
+ */
+public final class DeadStoreElimination
+{
+  /**
+   * The function being optimized
+   */
+  private final IRFunction function;
+
+  /**
+   * Which loads and stores of the function may overlap
+   */
+  private AliasAnalysis aliases;
+
+  /**
+   * Full constructor for DeadStoreElimination
+   *
+   * @param function The function to optimize (in SSA form)
+   */
+  public DeadStoreElimination(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Remove the dead stores, and release the local arrays no longer used
+   *
+   * @return T/F if the function was changed
+   */
+  public boolean run()
+  {
+    aliases = new AliasAnalysis(function);
+    boolean changed = false;
+    for (final BasicBlock block : function.getBlocks())
+    {
+      changed |= removeOverwrittenStores(block);
+    }
+    changed |= removeUnreadArrays();
+    if (changed)
+    {
+      new DeadCodeElimination(function).run();
+    }
+    return releaseArrays() || changed;
+  }
+
+  /**
+   * Remove the stores of a block that are overwritten later in the block
+   * before anything may read them
+   *
+   * @param block The block
+   * @return T/F if a store was removed
+   */
+  private boolean removeOverwrittenStores(final BasicBlock block)
+  {
+    boolean changed = false;
+
+    // Walk backwards, tracking the words certain to be written before read
+    ArrayList<IRInstruction> overwritten = new ArrayList<>();
+    ArrayList<IRInstruction> instructions = block.getInstructions();
+    for (int i = instructions.size() - 1; i >= 0; --i)
+    {
+      final IRInstruction instruction = instructions.get(i);
+      switch (instruction.getOpcode())
+      {
+        case STORE:
+        {
+          final IROperand base = instruction.getOperand(1);
+          final IROperand offset = instruction.getOperand(2);
+          boolean dead = false;
+          for (final IRInstruction later : overwritten)
+          {
+            dead |= later.getOperand(1) == base &&
+                    later.getOperand(2).equals(offset);
+          }
+          if (dead)
+          {
+            instructions.remove(i);
+            changed = true;
+          }
+          else
+          {
+            overwritten.add(instruction);
+          }
+          break;
+        }
+        case LOAD:
+        {
+          final VirtualRegister base = (VirtualRegister) instruction.getOperand(0);
+          final int offset = ((Constant) instruction.getOperand(1)).getValue();
+          for (int j = overwritten.size() - 1; j >= 0; --j)
+          {
+            final IRInstruction store = overwritten.get(j);
+            if (aliases.mayAlias(base, offset,
+                                 (VirtualRegister) store.getOperand(1),
+                                 ((Constant) store.getOperand(2)).getValue()))
+            {
+              overwritten.remove(j);
+            }
+          }
+          break;
+        }
+        case CALL:
+        {
+          // The callee may read anything
+          if (AliasAnalysis.mayStore(instruction))
+          {
+            overwritten.clear();
+          }
+          break;
+        }
+        default:
+        {
+          break;
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Remove the stores to the local arrays that are never read
+   *
+   * @return T/F if a store was removed
+   */
+  private boolean removeUnreadArrays()
+  {
+    // Find the local arrays that may be read: loaded from, or with an
+    // address that escapes into anything but address arithmetic and stores
+    HashSet<String> arrays = new HashSet<>();
+    HashSet<String> read = new HashSet<>();
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        final IROpcode opcode = instruction.getOpcode();
+        if (opcode == IROpcode.FRAME_ADDRESS)
+        {
+          arrays.add(aliases.findRoot(instruction.getDest()));
+        }
+        for (int i = 0; i < instruction.getOperandCount(); ++i)
+        {
+          final IROperand operand = instruction.getOperand(i);
+          if (!(operand instanceof VirtualRegister))
+          {
+            continue;
+          }
+          final boolean addressOnly =
+              opcode == IROpcode.ADD || opcode == IROpcode.SUB ||
+              opcode == IROpcode.COPY ||
+              (opcode == IROpcode.STORE && i == 1);
+          final String root = aliases.findRoot((VirtualRegister) operand);
+          if (root != null && !addressOnly)
+          {
+            read.add(root);
+          }
+        }
+      }
+    }
+    arrays.removeAll(read);
+    if (arrays.isEmpty())
+    {
+      return false;
+    }
+
+    boolean changed = false;
+    for (final BasicBlock block : function.getBlocks())
+    {
+      ArrayList<IRInstruction> instructions = block.getInstructions();
+      for (int i = instructions.size() - 1; i >= 0; --i)
+      {
+        final IRInstruction instruction = instructions.get(i);
+        if (instruction.getOpcode() == IROpcode.STORE &&
+            arrays.contains(aliases.findRoot(
+                (VirtualRegister) instruction.getOperand(1))))
+        {
+          instructions.remove(i);
+          changed = true;
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Release the local arrays whose address is no longer taken
+   *
+   * @return T/F if any array was released
+   */
+  private boolean releaseArrays()
+  {
+    ArrayList<IRInstruction> addresses = new ArrayList<>();
+    BitSet used = new BitSet();
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (instruction.getOpcode() == IROpcode.FRAME_ADDRESS)
+        {
+          addresses.add(instruction);
+          used.set(((Constant) instruction.getOperand(0)).getValue());
+        }
+      }
+    }
+
+    final int words = function.getLocalArrayWords();
+    final int[] moved = function.releaseLocalArrays(used);
+    for (final IRInstruction address : addresses)
+    {
+      final int word = ((Constant) address.getOperand(0)).getValue();
+      address.setOperand(0, new Constant(moved[word]));
+    }
+    return function.getLocalArrayWords() != words;
+  }
+}
@@ -0,0 +1,290 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The dominator tree of a function, along with the dominance frontier of
+ * every block. Only the blocks reachable from the entry block are part of the
+ * tree.
+ *
+ * The immediate dominators are computed with the iterative algorithm of
+ * Cooper, Harvey and Kennedy over the reverse postorder of the blocks; the
+ * frontiers are computed by walking up from the predecessors of every join
+ * block.
+ */
+public final class DominatorTree
+{
+  /**
+   * The reachable blocks in reverse postorder (the entry block is first)
+   */
+  private final ArrayList<BasicBlock> order;
+
+  /**
+   * The position of every reachable block in the reverse postorder
+   */
+  private final HashMap<BasicBlock, Integer> index;
+
+  /**
+   * The immediate dominator of every block, by reverse postorder position
+   * (the entry block is its own immediate dominator)
+   */
+  private final int[] dominators;
+
+  /**
+   * The blocks immediately dominated by every block
+   */
+  private final HashMap<BasicBlock, ArrayList<BasicBlock>> children;
+
+  /**
+   * The dominance frontier of every block
+   */
+  private final HashMap<BasicBlock, ArrayList<BasicBlock>> frontiers;
+
+  /**
+   * Full constructor for the DominatorTree. The control flow of the function
+   * must be up to date.
+   *
+   * @param function The function to analyze
+   */
+  public DominatorTree(final IRFunction function)
+  {
+    order = computeReversePostorder(function.getEntry());
+    index = new HashMap<>();
+    for (int i = 0; i < order.size(); ++i)
+    {
+      index.put(order.get(i), i);
+    }
+
+    // Iterate to a fixed point over the reverse postorder
+    dominators = new int[order.size()];
+    Arrays.fill(dominators, -1);
+    dominators[0] = 0;
+    boolean changed = true;
+    while (changed)
+    {
+      changed = false;
+      for (int i = 1; i < order.size(); ++i)
+      {
+        int dominator = -1;
+        for (final BasicBlock predecessor : order.get(i).getPredecessors())
+        {
+          final Integer position = index.get(predecessor);
+          if (position == null || dominators[position] == -1)
+          {
+            continue;
+          }
+          dominator = (dominator == -1) ? position : intersect(position, dominator);
+        }
+        if (dominators[i] != dominator)
+        {
+          dominators[i] = dominator;
+          changed = true;
+        }
+      }
+    }
+
+    children = new HashMap<>();
+    frontiers = new HashMap<>();
+    for (final BasicBlock block : order)
+    {
+      children.put(block, new ArrayList<BasicBlock>());
+      frontiers.put(block, new ArrayList<BasicBlock>());
+    }
+    for (int i = 1; i < order.size(); ++i)
+    {
+      children.get(order.get(dominators[i])).add(order.get(i));
+    }
+
+    // A block is in the frontier of every block on the path from each of its
+    // predecessors up to (but excluding) its immediate dominator
+    for (int i = 0; i < order.size(); ++i)
+    {
+      final BasicBlock block = order.get(i);
+      if (block.getPredecessors().size() < 2)
+      {
+        continue;
+      }
+      for (final BasicBlock predecessor : block.getPredecessors())
+      {
+        final Integer position = index.get(predecessor);
+        if (position == null)
+        {
+          continue;
+        }
+        int runner = position;
+        while (runner != dominators[i])
+        {
+          ArrayList<BasicBlock> frontier = frontiers.get(order.get(runner));
+          if (!frontier.contains(block))
+          {
+            frontier.add(block);
+          }
+          runner = dominators[runner];
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the reachable blocks in reverse postorder
+   *
+   * @return The list of blocks (the entry block is first)
+   */
+  public ArrayList<BasicBlock> getReversePostorder()
+  {
+    return order;
+  }
+
+  /**
+   * Determine if a block is reachable from the entry block
+   *
+   * @param block The block in question
+   * @return T/F if the block is reachable
+   */
+  public boolean isReachable(final BasicBlock block)
+  {
+    return index.containsKey(block);
+  }
+
+  /**
+   * Get the immediate dominator of a block
+   *
+   * @param block The block in question
+   * @return The immediate dominator, or null for the entry block
+   */
+  public BasicBlock getImmediateDominator(final BasicBlock block)
+  {
+    final int position = index.get(block);
+    return (position == 0) ? null : order.get(dominators[position]);
+  }
+
+  /**
+   * Get the blocks immediately dominated by a block
+   *
+   * @param block The block in question
+   * @return The children of the block in the dominator tree
+   */
+  public ArrayList<BasicBlock> getChildren(final BasicBlock block)
+  {
+    return children.get(block);
+  }
+
+  /**
+   * Get the dominance frontier of a block
+   *
+   * @param block The block in question
+   * @return The blocks in the dominance frontier
+   */
+  public ArrayList<BasicBlock> getFrontier(final BasicBlock block)
+  {
+    return frontiers.get(block);
+  }
+
+  /**
+   * Determine if one block dominates another (every block dominates itself)
+   *
+   * @param dominator The potential dominator
+   * @param block     The potentially dominated block
+   * @return T/F if the first block dominates the second
+   */
+  public boolean dominates(final BasicBlock dominator, final BasicBlock block)
+  {
+    final Integer target = index.get(dominator);
+    Integer position = index.get(block);
+    if (target == null || position == null)
+    {
+      return false;
+    }
+    // Immediate dominators always come earlier in the reverse postorder
+    int runner = position;
+    while (runner > target)
+    {
+      runner = dominators[runner];
+    }
+    return runner == target;
+  }
+
+  /**
+   * Find the closest block dominating two reachable blocks
+   *
+   * @param first  The first block
+   * @param second The second block
+   * @return The closest common dominator
+   */
+  public BasicBlock getCommonDominator(final BasicBlock first,
+                                       final BasicBlock second)
+  {
+    return order.get(intersect(index.get(first), index.get(second)));
+  }
+
+  /**
+   * Find the closest common dominator of two blocks
+   *
+   * @param first  The reverse postorder position of the first block
+   * @param second The reverse postorder position of the second block
+   * @return The position of the common dominator
+   */
+  private int intersect(final int first, final int second)
+  {
+    int finger1 = first;
+    int finger2 = second;
+    while (finger1 != finger2)
+    {
+      while (finger1 > finger2)
+      {
+        finger1 = dominators[finger1];
+      }
+      while (finger2 > finger1)
+      {
+        finger2 = dominators[finger2];
+      }
+    }
+    return finger1;
+  }
+
+  /**
+   * Compute the reverse postorder of the blocks reachable from a block
+   *
+   * @param entry The entry block
+   * @return The reachable blocks in reverse postorder
+   */
+  static ArrayList<BasicBlock> computeReversePostorder(final BasicBlock entry)
+  {
+    ArrayList<BasicBlock> postorder = new ArrayList<>();
+    HashMap<BasicBlock, Integer> visited = new HashMap<>();
+
+    // Depth-first search with an explicit stack of (block, next successor)
+    ArrayList<BasicBlock> stack = new ArrayList<>();
+    stack.add(entry);
+    visited.put(entry, 0);
+    while (!stack.isEmpty())
+    {
+      final BasicBlock block = stack.get(stack.size() - 1);
+      final int next = visited.get(block);
+      if (next < block.getSuccessors().size())
+      {
+        visited.put(block, next + 1);
+        final BasicBlock successor = block.getSuccessors().get(next);
+        if (!visited.containsKey(successor))
+        {
+          visited.put(successor, 0);
+          stack.add(successor);
+        }
+      }
+      else
+      {
+        stack.remove(stack.size() - 1);
+        postorder.add(block);
+      }
+    }
+
+    ArrayList<BasicBlock> order = new ArrayList<>();
+    for (int i = postorder.size() - 1; i >= 0; --i)
+    {
+      order.add(postorder.get(i));
+    }
+    return order;
+  }
+}
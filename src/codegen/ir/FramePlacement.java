@@ -0,0 +1,408 @@
+package codegen.ir;
+
+import codegen.instruction.Register;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Class that decides what a function keeps in its stack frame, and where the
+ * frame is pushed (shrink-wrapping).
+ *
+ * The frame holds the callee-saved registers the function writes, its spill
+ * slots, its local arrays, a call area and, unless the function is a leaf (or terminates the
+ * program instead of returning), its return address. The call area is shared
+ * by every call: it holds the outgoing stack arguments
+ * and the caller-saved registers that are live across the call, so calls
+ * never move the stack pointer themselves. Rather than always pushing the frame on
+ * entry, it is pushed in the closest block dominating every block that needs
+ * it, moved out of any loop. That block must dominate every return it can
+ * reach; returns that cannot be reached from it leave without touching the
+ * stack. If no such block exists the frame is pushed on entry.
+ */
+public final class FramePlacement
+{
+  /**
+   * Does the function make no calls (or never return through $ra)?
+   */
+  private final boolean leaf;
+
+  /**
+   * Bitmask of the callee-saved registers written by the function
+   */
+  private final int savedMask;
+
+  /**
+   * Bitmask of the caller-saved registers to save around every call
+   */
+  private final HashMap<IRInstruction, Integer> callerSaved;
+
+  /**
+   * The size of the call area at the bottom of the frame (bytes)
+   */
+  private int callAreaSize;
+
+  /**
+   * The block pushing the stack frame (null if there is no frame)
+   */
+  private BasicBlock saveBlock;
+
+  /**
+   * The dominator tree of the function (null if there is no frame)
+   */
+  private DominatorTree tree;
+
+  /**
+   * Full constructor for the FramePlacement. Every virtual register of the
+   * function must have a home register.
+   *
+   * @param function The function
+   */
+  public FramePlacement(final IRFunction function)
+  {
+    boolean calls = false;
+    int written = 0;
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        calls |= instruction.getOpcode() == IROpcode.CALL;
+        if (instruction.getDest() != null)
+        {
+          written |= function.getHome(instruction.getDest()).getMask();
+        }
+      }
+    }
+    leaf = !calls || function.terminates();
+    savedMask = written & Register.SAVED_MASK;
+    callerSaved = new HashMap<>();
+    callAreaSize = 0;
+    saveBlock = null;
+    tree = null;
+
+    function.computeControlFlow();
+    findCallerSaved(function);
+
+    // Find the blocks that touch the frame
+    ArrayList<BasicBlock> users = new ArrayList<>();
+    for (final BasicBlock block : function.getBlocks())
+    {
+      if (usesFrame(function, block))
+      {
+        users.add(block);
+      }
+    }
+    if (users.isEmpty() && function.getSpillSlotCount() == 0)
+    {
+      return;
+    }
+
+    tree = new DominatorTree(function);
+    saveBlock = function.getEntry();
+
+    BasicBlock candidate = null;
+    for (final BasicBlock block : users)
+    {
+      if (tree.isReachable(block))
+      {
+        candidate = (candidate == null) ? block :
+                    tree.getCommonDominator(candidate, block);
+      }
+    }
+    if (candidate == null)
+    {
+      return;
+    }
+
+    // A frame pushed inside a loop would be pushed on every iteration
+    final LoopInfo loops = new LoopInfo(tree);
+    while (loops.getDepth(candidate) > 0)
+    {
+      candidate = tree.getImmediateDominator(candidate);
+    }
+
+    if (dominatesReachableReturns(candidate))
+    {
+      saveBlock = candidate;
+    }
+  }
+
+  /**
+   * Determine if the function makes no calls, so $ra does not need saving
+   *
+   * @return T/F if the function is a leaf
+   */
+  public boolean isLeaf()
+  {
+    return leaf;
+  }
+
+  /**
+   * Get the callee-saved registers written by the function
+   *
+   * @return Bitmask of the registers to save in the frame
+   */
+  public int getSavedMask()
+  {
+    return savedMask;
+  }
+
+  /**
+   * Get the caller-saved registers to save around a call
+   *
+   * @param instruction The CALL instruction
+   * @return Bitmask of the registers holding values live after it
+   */
+  public int getCallerSaved(final IRInstruction instruction)
+  {
+    final Integer mask = callerSaved.get(instruction);
+    return (mask == null) ? 0 : mask;
+  }
+
+  /**
+   * Get the size of the call area
+   *
+   * @return The bytes to reserve at the bottom of the frame for calls
+   */
+  public int getCallAreaSize()
+  {
+    return callAreaSize;
+  }
+
+  /**
+   * Get the size of the call area a single call needs
+   *
+   * @param instruction The CALL instruction
+   * @return The size (bytes)
+   */
+  public int getCallAreaSize(final IRInstruction instruction)
+  {
+    return getOutgoingSize(instruction) +
+           4 * Integer.bitCount(getCallerSaved(instruction));
+  }
+
+  /**
+   * Get the size of the outgoing stack arguments of a call. Under o32 a call
+   * passing arguments on the stack also reserves 16 bytes for the callee to
+   * store $a0-$a3.
+   *
+   * @param instruction The CALL instruction
+   * @return The size, or 0 if every argument goes in a register (bytes)
+   */
+  public static int getOutgoingSize(final IRInstruction instruction)
+  {
+    if (instruction.getOpcode() != IROpcode.CALL ||
+        instruction.getOperandCount() <= 4)
+    {
+      return 0;
+    }
+    return 4 * instruction.getOperandCount();
+  }
+
+  /**
+   * Find the caller-saved registers live across every call, and size the
+   * call area to fit the largest. Liveness is computed over the registers
+   * the values were given rather than the virtual registers: once a copy
+   * has been coalesced away, its destination has uses but no definition.
+   *
+   * @param function The function
+   */
+  private void findCallerSaved(final IRFunction function)
+  {
+    // Find the registers every block reads before writing, and writes
+    HashMap<BasicBlock, Integer> uses = new HashMap<>();
+    HashMap<BasicBlock, Integer> defs = new HashMap<>();
+    for (final BasicBlock block : function.getBlocks())
+    {
+      int used = 0;
+      int defined = 0;
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        used |= getUseMask(function, instruction) & ~defined;
+        defined |= getDefMask(function, instruction);
+      }
+      uses.put(block, used);
+      defs.put(block, defined);
+    }
+
+    HashMap<BasicBlock, Integer> liveOut = new HashMap<>();
+    for (final BasicBlock block : function.getBlocks())
+    {
+      liveOut.put(block, 0);
+    }
+    boolean changed = true;
+    while (changed)
+    {
+      changed = false;
+      for (int b = function.getBlocks().size() - 1; b >= 0; --b)
+      {
+        final BasicBlock block = function.getBlocks().get(b);
+        int live = 0;
+        for (final BasicBlock successor : block.getSuccessors())
+        {
+          live |= uses.get(successor) |
+                  (liveOut.get(successor) & ~defs.get(successor));
+        }
+        if (live != liveOut.get(block))
+        {
+          liveOut.put(block, live);
+          changed = true;
+        }
+      }
+    }
+
+    for (final BasicBlock block : function.getBlocks())
+    {
+      final ArrayList<IRInstruction> instructions = block.getInstructions();
+      int live = liveOut.get(block);
+      for (int i = instructions.size() - 1; i >= 0; --i)
+      {
+        final IRInstruction instruction = instructions.get(i);
+        if (instruction.getOpcode() == IROpcode.CALL)
+        {
+          final int saved = live & ~getDefMask(function, instruction) &
+                            (Register.TEMPORARY_MASK | Register.ARGUMENT_MASK);
+          callerSaved.put(instruction, saved);
+          callAreaSize = Math.max(callAreaSize, getCallAreaSize(instruction));
+        }
+        live = (live & ~getDefMask(function, instruction)) |
+               getUseMask(function, instruction);
+      }
+    }
+  }
+
+  /**
+   * Get the register an instruction writes
+   *
+   * @param function    The function
+   * @param instruction The instruction
+   * @return The bitmask of the register of its destination (0 if none)
+   */
+  private static int getDefMask(final IRFunction function,
+                                final IRInstruction instruction)
+  {
+    return (instruction.getDest() == null) ? 0 :
+           function.getHome(instruction.getDest()).getMask();
+  }
+
+  /**
+   * Get the registers an instruction reads
+   *
+   * @param function    The function
+   * @param instruction The instruction
+   * @return The bitmask of the registers of its operands
+   */
+  private static int getUseMask(final IRFunction function,
+                                final IRInstruction instruction)
+  {
+    int mask = 0;
+    for (final VirtualRegister use : instruction.getUses())
+    {
+      mask |= function.getHome(use).getMask();
+    }
+    return mask;
+  }
+
+  /**
+   * Get the block that pushes the stack frame
+   *
+   * @return The block, or null if the function has no frame
+   */
+  public BasicBlock getSaveBlock()
+  {
+    return saveBlock;
+  }
+
+  /**
+   * Determine if the frame has been pushed when a block runs
+   *
+   * @param block The block in question
+   * @return T/F if the block runs inside the frame
+   */
+  public boolean isInsideFrame(final BasicBlock block)
+  {
+    return saveBlock != null && tree.dominates(saveBlock, block);
+  }
+
+  /**
+   * Determine if a block needs the stack frame
+   *
+   * @param function The function
+   * @param block    The block in question
+   * @return T/F if the block calls, touches a saved register, a spill slot,
+   *         a local array or the call area
+   */
+  private boolean usesFrame(final IRFunction function, final BasicBlock block)
+  {
+    for (final IRInstruction instruction : block.getInstructions())
+    {
+      switch (instruction.getOpcode())
+      {
+        case CALL:
+        {
+          if (!leaf || getCallAreaSize(instruction) != 0)
+          {
+            return true;
+          }
+          break;
+        }
+        case FRAME_ADDRESS:
+        case SPILL:
+        case RELOAD:
+        {
+          return true;
+        }
+        default:
+        {
+          break;
+        }
+      }
+      int mask = 0;
+      if (instruction.getDest() != null)
+      {
+        mask |= function.getHome(instruction.getDest()).getMask();
+      }
+      for (final VirtualRegister use : instruction.getUses())
+      {
+        mask |= function.getHome(use).getMask();
+      }
+      if ((mask & savedMask) != 0)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Determine if a block dominates every return reachable from it (so every
+   * return leaves either with the frame pushed or without it ever having
+   * been pushed)
+   *
+   * @param candidate The block in question
+   * @return T/F if the frame can be pushed in the block
+   */
+  private boolean dominatesReachableReturns(final BasicBlock candidate)
+  {
+    HashSet<BasicBlock> visited = new HashSet<>();
+    ArrayList<BasicBlock> worklist = new ArrayList<>();
+    worklist.add(candidate);
+    while (!worklist.isEmpty())
+    {
+      final BasicBlock block = worklist.remove(worklist.size() - 1);
+      if (!visited.add(block))
+      {
+        continue;
+      }
+      final IROpcode exit = block.getTerminator().getOpcode();
+      if ((exit == IROpcode.RETURN || exit == IROpcode.TAIL_CALL) &&
+          !tree.dominates(candidate, block))
+      {
+        return false;
+      }
+      worklist.addAll(block.getSuccessors());
+    }
+    return true;
+  }
+}
@@ -0,0 +1,293 @@
+package codegen.ir;
+
+import codegen.instruction.Register;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * The IR of a single function: its parameters, its virtual registers and its
+ * basic blocks in layout order. The first block is the entry block; it is
+ * labelled with the function name and is never the target of a branch.
+ */
+public final class IRFunction
+{
+  /**
+   * The name of the function
+   */
+  private final String name;
+
+  /**
+   * Does the function terminate the program (main)?
+   */
+  private final boolean terminate;
+
+  /**
+   * The virtual registers holding the parameters, in declaration order
+   */
+  private final ArrayList<VirtualRegister> parameters;
+
+  /**
+   * The basic blocks, in layout order
+   */
+  private final ArrayList<BasicBlock> blocks;
+
+  /**
+   * The MIPS register each virtual register lives in (assigned by register
+   * allocation)
+   */
+  private final HashMap<VirtualRegister, Register> homes;
+
+  /**
+   * The number of virtual registers created so far
+   */
+  private int registerCount;
+
+  /**
+   * The number of generated block labels so far
+   */
+  private int labelCount;
+
+  /**
+   * The number of stack slots used for spilled virtual registers
+   */
+  private int spillSlotCount;
+
+  /**
+   * The number of words of local arrays kept in the stack frame
+   */
+  private int localArrayWords;
+
+  /**
+   * The size of every region of the frame's array area reserved by
+   * newLocalArray(), in order (words)
+   */
+  private final ArrayList<Integer> localArraySizes;
+
+  /**
+   * Full constructor for an IRFunction
+   *
+   * @param name      The name of the function
+   * @param terminate Does the function terminate the program?
+   */
+  public IRFunction(final String name, final boolean terminate)
+  {
+    this.name = name;
+    this.terminate = terminate;
+    parameters = new ArrayList<>();
+    blocks = new ArrayList<>();
+    homes = new HashMap<>();
+    registerCount = 0;
+    labelCount = 0;
+    spillSlotCount = 0;
+    localArrayWords = 0;
+    localArraySizes = new ArrayList<>();
+  }
+
+  public String                     getName()           { return name;           }
+  public boolean                    terminates()        { return terminate;      }
+  public ArrayList<VirtualRegister> getParameters()     { return parameters;     }
+  public ArrayList<BasicBlock>      getBlocks()         { return blocks;         }
+  public int                        getRegisterCount()  { return registerCount;  }
+  public int                        getSpillSlotCount() { return spillSlotCount; }
+  public int                        getLocalArrayWords() { return localArrayWords; }
+
+  /**
+   * Get the entry block of the function
+   *
+   * @return The first block
+   */
+  public BasicBlock getEntry()
+  {
+    return blocks.get(0);
+  }
+
+  /**
+   * Create a new temporary virtual register
+   *
+   * @return The new register
+   */
+  public VirtualRegister newTemporary()
+  {
+    return new VirtualRegister(registerCount++, (String) null);
+  }
+
+  /**
+   * Create a new virtual register holding a variable
+   *
+   * @param variable The name of the variable
+   * @return The new register
+   */
+  public VirtualRegister newVariable(final String variable)
+  {
+    return new VirtualRegister(registerCount++, variable);
+  }
+
+  /**
+   * Create a new SSA version of a variable
+   *
+   * @param variable The variable
+   * @return The new register
+   */
+  public VirtualRegister newVersion(final VirtualRegister variable)
+  {
+    return new VirtualRegister(registerCount++, variable.getOriginal());
+  }
+
+  /**
+   * Reserve a new stack slot for a spilled virtual register
+   *
+   * @return The number of the slot
+   */
+  public int newSpillSlot()
+  {
+    return spillSlotCount++;
+  }
+
+  /**
+   * Reserve room for a local array in the stack frame
+   *
+   * @param words The size of the array
+   * @return The word the array starts at in the frame's array area
+   */
+  public int newLocalArray(final int words)
+  {
+    final int start = localArrayWords;
+    localArrayWords += words;
+    localArraySizes.add(words);
+    return start;
+  }
+
+  /**
+   * Release the local arrays that are no longer used, moving the remaining
+   * ones down to close the gaps
+   *
+   * @param used The words of the array area still addressed
+   * @return The new word of every old word of the array area (-1 for the
+   *         words released)
+   */
+  public int[] releaseLocalArrays(final BitSet used)
+  {
+    int[] moved = new int[localArrayWords];
+    ArrayList<Integer> kept = new ArrayList<>();
+    int start = 0;
+    int words = 0;
+    for (final int size : localArraySizes)
+    {
+      final boolean keep = size > 0 &&
+                           used.nextSetBit(start) >= 0 &&
+                           used.nextSetBit(start) < start + size;
+      for (int i = 0; i < size; ++i)
+      {
+        moved[start + i] = keep ? words + i : -1;
+      }
+      if (keep)
+      {
+        kept.add(size);
+        words += size;
+      }
+      start += size;
+    }
+    localArraySizes.clear();
+    localArraySizes.addAll(kept);
+    localArrayWords = words;
+    return moved;
+  }
+
+  /**
+   * Create a new block. The block is not part of the layout until it is
+   * added with addBlock().
+   *
+   * @param label The label of the block, or null to generate one
+   * @return The new block
+   */
+  public BasicBlock createBlock(final String label)
+  {
+    return new BasicBlock(
+        (label != null) ? label : String.format("%s_L%d", name, ++labelCount));
+  }
+
+  /**
+   * Append a block to the layout
+   *
+   * @param block The block to append
+   */
+  public void addBlock(final BasicBlock block)
+  {
+    blocks.add(block);
+  }
+
+  /**
+   * Record the MIPS register a virtual register lives in
+   *
+   * @param variable The virtual register
+   * @param register The MIPS register
+   */
+  public void setHome(final VirtualRegister variable, final Register register)
+  {
+    homes.put(variable, register);
+  }
+
+  /**
+   * Get the MIPS register a virtual register lives in
+   *
+   * @param variable The virtual register
+   * @return The MIPS register, or null if none has been assigned yet
+   */
+  public Register getHome(final VirtualRegister variable)
+  {
+    return homes.get(variable.getOriginal());
+  }
+
+  /**
+   * Rebuild the predecessor and successor lists of every block from the block
+   * terminators
+   */
+  public void computeControlFlow()
+  {
+    for (final BasicBlock block : blocks)
+    {
+      block.getPredecessors().clear();
+      block.getSuccessors().clear();
+    }
+    for (final BasicBlock block : blocks)
+    {
+      final IRInstruction terminator = block.getTerminator();
+      if (terminator == null)
+      {
+        throw new IllegalStateException(
+            "Block " + block.getLabel() + " has no terminator");
+      }
+      for (final BasicBlock target : terminator.getTargets())
+      {
+        if (!block.getSuccessors().contains(target))
+        {
+          block.getSuccessors().add(target);
+          target.getPredecessors().add(block);
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder builder = new StringBuilder();
+    builder.append("function ").append(name).append('(');
+    for (int i = 0; i < parameters.size(); ++i)
+    {
+      builder.append((i == 0) ? "" : ", ").append(parameters.get(i));
+    }
+    builder.append(')').append(System.lineSeparator());
+    for (final BasicBlock block : blocks)
+    {
+      builder.append(block.getLabel()).append(':').append(System.lineSeparator());
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        builder.append("  ").append(instruction).append(System.lineSeparator());
+      }
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,443 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+
+/**
+ * A single three-address instruction of the IR. The meaning of the operands
+ * depends on the opcode (see IROpcode). Instructions are mutable so that
+ * optimization passes can rewrite them in place.
+ */
+public final class IRInstruction
+{
+  /**
+   * The operation performed by the instruction
+   */
+  private IROpcode opcode;
+
+  /**
+   * The virtual register defined by the instruction (null if none)
+   */
+  private VirtualRegister dest;
+
+  /**
+   * The operands of the instruction
+   */
+  private final ArrayList<IROperand> operands;
+
+  /**
+   * The comparison of a SET or BRANCH instruction
+   */
+  private Condition condition;
+
+  /**
+   * The called function (CALL) or data label (LOAD_ADDRESS)
+   */
+  private String symbol;
+
+  /**
+   * The successor blocks of a JUMP or BRANCH instruction, or the incoming
+   * blocks of a PHI (parallel to the operands)
+   */
+  private final ArrayList<BasicBlock> targets;
+
+  /**
+   * Full constructor for an IRInstruction
+   *
+   * @param opcode   The operation performed
+   * @param dest     The defined virtual register (null if none)
+   * @param operands The operands of the instruction
+   */
+  public IRInstruction(final IROpcode opcode,
+                       final VirtualRegister dest,
+                       final IROperand... operands)
+  {
+    this.opcode = opcode;
+    this.dest = dest;
+    this.operands = new ArrayList<>();
+    for (final IROperand operand : operands)
+    {
+      this.operands.add(operand);
+    }
+    condition = null;
+    symbol = null;
+    targets = new ArrayList<>();
+  }
+
+  /**
+   * Copy constructor for an IRInstruction
+   *
+   * @param other The instruction to copy (its operand and target lists are
+   *              copied, the operands and blocks themselves are shared)
+   */
+  public IRInstruction(final IRInstruction other)
+  {
+    opcode = other.opcode;
+    dest = other.dest;
+    operands = new ArrayList<>(other.operands);
+    condition = other.condition;
+    symbol = other.symbol;
+    targets = new ArrayList<>(other.targets);
+  }
+
+  /**
+   * Create a COPY instruction
+   *
+   * @param dest   The register to copy to
+   * @param source The register or constant to copy
+   * @return The new instruction
+   */
+  public static IRInstruction copy(final VirtualRegister dest,
+                                   final IROperand source)
+  {
+    return new IRInstruction(IROpcode.COPY, dest, source);
+  }
+
+  /**
+   * Create a LOAD_ADDRESS instruction
+   *
+   * @param dest  The register receiving the address
+   * @param label The data label
+   * @return The new instruction
+   */
+  public static IRInstruction loadAddress(final VirtualRegister dest,
+                                          final String label)
+  {
+    IRInstruction instruction = new IRInstruction(IROpcode.LOAD_ADDRESS, dest);
+    instruction.symbol = label;
+    return instruction;
+  }
+
+  /**
+   * Create a PARAM instruction
+   *
+   * @param dest  The register receiving the argument
+   * @param index The position of the parameter
+   * @return The new instruction
+   */
+  public static IRInstruction param(final VirtualRegister dest, final int index)
+  {
+    return new IRInstruction(IROpcode.PARAM, dest, new Constant(index));
+  }
+
+  /**
+   * Create a LOAD instruction
+   *
+   * @param dest   The register receiving the loaded word
+   * @param base   The register holding the base address
+   * @param offset The offset from the base address (bytes)
+   * @return The new instruction
+   */
+  public static IRInstruction load(final VirtualRegister dest,
+                                   final VirtualRegister base,
+                                   final int offset)
+  {
+    return new IRInstruction(IROpcode.LOAD, dest, base, new Constant(offset));
+  }
+
+  /**
+   * Create a STORE instruction
+   *
+   * @param value  The register holding the word to store
+   * @param base   The register holding the base address
+   * @param offset The offset from the base address (bytes)
+   * @return The new instruction
+   */
+  public static IRInstruction store(final VirtualRegister value,
+                                    final VirtualRegister base,
+                                    final int offset)
+  {
+    return new IRInstruction(IROpcode.STORE, null, value, base,
+                             new Constant(offset));
+  }
+
+  /**
+   * Create a SPILL instruction
+   *
+   * @param value The register holding the word to spill
+   * @param slot  The spill slot of the function
+   * @return The new instruction
+   */
+  public static IRInstruction spill(final VirtualRegister value, final int slot)
+  {
+    return new IRInstruction(IROpcode.SPILL, null, value, new Constant(slot));
+  }
+
+  /**
+   * Create a RELOAD instruction
+   *
+   * @param dest The register receiving the spilled word
+   * @param slot The spill slot of the function
+   * @return The new instruction
+   */
+  public static IRInstruction reload(final VirtualRegister dest, final int slot)
+  {
+    return new IRInstruction(IROpcode.RELOAD, dest, new Constant(slot));
+  }
+
+  /**
+   * Create a SET instruction
+   *
+   * @param dest      The register receiving the result (0 or 1)
+   * @param condition The comparison
+   * @param lhs       The left hand side of the comparison
+   * @param rhs       The right hand side of the comparison
+   * @return The new instruction
+   */
+  public static IRInstruction set(final VirtualRegister dest,
+                                  final Condition condition,
+                                  final IROperand lhs,
+                                  final IROperand rhs)
+  {
+    IRInstruction instruction = new IRInstruction(IROpcode.SET, dest, lhs, rhs);
+    instruction.condition = condition;
+    return instruction;
+  }
+
+  /**
+   * Create a CALL instruction
+   *
+   * @param dest      The register receiving the return value (null if unused)
+   * @param function  The name of the called function
+   * @param arguments The arguments of the call
+   * @return The new instruction
+   */
+  public static IRInstruction call(final VirtualRegister dest,
+                                   final String function,
+                                   final ArrayList<IROperand> arguments)
+  {
+    IRInstruction instruction = new IRInstruction(IROpcode.CALL, dest);
+    instruction.operands.addAll(arguments);
+    instruction.symbol = function;
+    return instruction;
+  }
+
+  /**
+   * Create a JUMP instruction
+   *
+   * @param target The block to continue at
+   * @return The new instruction
+   */
+  public static IRInstruction jump(final BasicBlock target)
+  {
+    IRInstruction instruction = new IRInstruction(IROpcode.JUMP, null);
+    instruction.targets.add(target);
+    return instruction;
+  }
+
+  /**
+   * Create a BRANCH instruction
+   *
+   * @param condition   The comparison
+   * @param lhs         The left hand side of the comparison
+   * @param rhs         The right hand side of the comparison
+   * @param trueTarget  The block to continue at if the comparison holds
+   * @param falseTarget The block to continue at otherwise
+   * @return The new instruction
+   */
+  public static IRInstruction branch(final Condition condition,
+                                     final IROperand lhs,
+                                     final IROperand rhs,
+                                     final BasicBlock trueTarget,
+                                     final BasicBlock falseTarget)
+  {
+    IRInstruction instruction =
+        new IRInstruction(IROpcode.BRANCH, null, lhs, rhs);
+    instruction.condition = condition;
+    instruction.targets.add(trueTarget);
+    instruction.targets.add(falseTarget);
+    return instruction;
+  }
+
+  /**
+   * Create a PHI instruction with one operand per predecessor of a block
+   *
+   * @param dest         The register defined by the PHI
+   * @param value        The initial value of every operand
+   * @param predecessors The incoming blocks
+   * @return The new instruction
+   */
+  public static IRInstruction phi(final VirtualRegister dest,
+                                  final IROperand value,
+                                  final ArrayList<BasicBlock> predecessors)
+  {
+    IRInstruction instruction = new IRInstruction(IROpcode.PHI, dest);
+    for (final BasicBlock predecessor : predecessors)
+    {
+      instruction.operands.add(value);
+      instruction.targets.add(predecessor);
+    }
+    return instruction;
+  }
+
+  /**
+   * Create a RETURN instruction
+   *
+   * @param value The returned value (null for a void return)
+   * @return The new instruction
+   */
+  public static IRInstruction ret(final IROperand value)
+  {
+    return (value == null) ? new IRInstruction(IROpcode.RETURN, null) :
+                             new IRInstruction(IROpcode.RETURN, null, value);
+  }
+
+  public IROpcode        getOpcode()    { return opcode;    }
+  public VirtualRegister getDest()      { return dest;      }
+  public Condition       getCondition() { return condition; }
+  public String          getSymbol()    { return symbol;    }
+
+  public void setOpcode(final IROpcode opcode)          { this.opcode = opcode;       }
+  public void setDest(final VirtualRegister dest)       { this.dest = dest;           }
+  public void setCondition(final Condition condition)   { this.condition = condition; }
+
+  /**
+   * Get the number of operands
+   *
+   * @return The operand count
+   */
+  public int getOperandCount()
+  {
+    return operands.size();
+  }
+
+  /**
+   * Get an operand
+   *
+   * @param index The index of the operand
+   * @return The operand
+   */
+  public IROperand getOperand(final int index)
+  {
+    return operands.get(index);
+  }
+
+  /**
+   * Replace an operand
+   *
+   * @param index   The index of the operand
+   * @param operand The new operand
+   */
+  public void setOperand(final int index, final IROperand operand)
+  {
+    operands.set(index, operand);
+  }
+
+  /**
+   * Remove an operand (along with its incoming block, for a PHI)
+   *
+   * @param index The index of the operand
+   */
+  public void removeOperand(final int index)
+  {
+    operands.remove(index);
+    if (opcode == IROpcode.PHI)
+    {
+      targets.remove(index);
+    }
+  }
+
+  /**
+   * Add an operand to a PHI, along with its incoming block
+   *
+   * @param operand The value flowing in from the block
+   * @param block   The incoming block
+   */
+  public void addIncoming(final IROperand operand, final BasicBlock block)
+  {
+    operands.add(operand);
+    targets.add(block);
+  }
+
+  /**
+   * Get the successor blocks of a JUMP or BRANCH, or the incoming blocks of a
+   * PHI (empty for any other instruction)
+   *
+   * @return The list of target blocks
+   */
+  public ArrayList<BasicBlock> getTargets()
+  {
+    return targets;
+  }
+
+  /**
+   * Determine if the instruction ends a basic block
+   *
+   * @return T/F if the instruction is a terminator
+   */
+  public boolean isTerminator()
+  {
+    return opcode.isTerminator();
+  }
+
+  /**
+   * Collect the virtual registers read by the instruction
+   *
+   * @return The list of used registers (a register read twice appears twice)
+   */
+  public ArrayList<VirtualRegister> getUses()
+  {
+    ArrayList<VirtualRegister> uses = new ArrayList<>();
+    for (final IROperand operand : operands)
+    {
+      if (operand instanceof VirtualRegister)
+      {
+        uses.add((VirtualRegister) operand);
+      }
+    }
+    return uses;
+  }
+
+  /**
+   * Replace every use of a virtual register
+   *
+   * @param from The register to replace
+   * @param to   The replacement operand
+   */
+  public void replaceUses(final VirtualRegister from, final IROperand to)
+  {
+    for (int i = 0; i < operands.size(); ++i)
+    {
+      if (operands.get(i) == from)
+      {
+        operands.set(i, to);
+      }
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder builder = new StringBuilder();
+    if (dest != null)
+    {
+      builder.append(dest).append(" = ");
+    }
+    builder.append(opcode.getText());
+    if (opcode == IROpcode.PHI)
+    {
+      for (int i = 0; i < operands.size(); ++i)
+      {
+        builder.append((i == 0) ? " [" : ", [").append(operands.get(i))
+               .append(", ").append(targets.get(i).getLabel()).append(']');
+      }
+      return builder.toString();
+    }
+    if (condition != null)
+    {
+      builder.append(' ').append(condition);
+    }
+    if (symbol != null)
+    {
+      builder.append(' ').append(symbol);
+    }
+    for (int i = 0; i < operands.size(); ++i)
+    {
+      builder.append((i == 0) ? " " : ", ").append(operands.get(i));
+    }
+    for (final BasicBlock target : targets)
+    {
+      builder.append(" -> ").append(target.getLabel());
+    }
+    return builder.toString();
+  }
+}
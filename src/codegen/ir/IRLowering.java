@@ -0,0 +1,674 @@
+package codegen.ir;
+
+import analyzer.symbol.record.SymbolRecord;
+import analyzer.symbol.table.FunctionSymbolTable;
+import analyzer.symbol.table.SymbolTable;
+import codegen.table.LocalTable;
+import codegen.table.RegisterRecord;
+import globals.pair.IdentifierPair;
+import syntaxtree.ASTNodeType;
+import syntaxtree.AbstractSyntaxTreeNode;
+
+import java.util.ArrayList;
+
+/**
+ * Class that lowers the analyzed AST of a single function into the IR.
+ *
+ * Every parameter and local variable becomes a virtual register holding the
+ * variable, and every intermediate value becomes a fresh temporary. Global
+ * scalars and array elements live in memory and are accessed with explicit
+ * loads and stores. The blocks are laid out in source order, so a straight
+ * translation of the IR follows the structure of the program.
+ *
+ * Every parameter is defined by a PARAM instruction at the start of the
+ * entry block, so parameters are allocated like any other variable.
+ */
+public final class IRLowering
+{
+  /**
+   * The LocalTable containing the global identifiers
+   */
+  private final LocalTable globalTable;
+
+  /**
+   * The LocalTable of the innermost scope being lowered
+   */
+  private LocalTable localTable;
+
+  /**
+   * The SymbolTable of the innermost scope being lowered (null if the analyzer
+   * removed it because it declares nothing that is used)
+   */
+  private SymbolTable scopeTable;
+
+  /**
+   * The function being built
+   */
+  private IRFunction function;
+
+  /**
+   * The block instructions are currently appended to
+   */
+  private BasicBlock current;
+
+  /**
+   * The full constructor for the IRLowering
+   *
+   * @param globalTable The LocalTable containing the global identifiers
+   */
+  public IRLowering(final LocalTable globalTable)
+  {
+    this.globalTable = globalTable;
+  }
+
+  /**
+   * Lower a function to the IR
+   *
+   * @param name          The name of the function
+   * @param functionTable The function symbol table associated with the function
+   * @param terminate     Does this function terminate the program?
+   * @return The IR of the function
+   */
+  public IRFunction lower(final String name,
+                          final FunctionSymbolTable functionTable,
+                          final boolean terminate)
+  {
+    function = new IRFunction(name, terminate);
+    localTable = globalTable.enterScope();
+    scopeTable = functionTable;
+
+    current = function.createBlock(name);
+    function.addBlock(current);
+
+    // Parameters are copied out of the incoming arguments on entry
+    for (final IdentifierPair parameter : functionTable.getParameters())
+    {
+      SymbolRecord symbolRecord =
+          (SymbolRecord) functionTable.getSymbolItem("", parameter.name, false);
+
+      VirtualRegister variable = function.newVariable(parameter.name);
+      function.getParameters().add(variable);
+      current.add(IRInstruction.param(variable, symbolRecord.getMemoryLocation()));
+
+      RegisterRecord record = new RegisterRecord(null, 0, 4);
+      record.setVariable(variable);
+      record.setArray(symbolRecord.isArray());
+      localTable.addRecord(parameter.name, record);
+    }
+
+    lowerStatements(functionTable.getNode());
+
+    // Falling off the end of the function returns from it
+    if (!current.isTerminated())
+    {
+      current.add(IRInstruction.ret(null));
+    }
+
+    function.computeControlFlow();
+    return function;
+  }
+
+  /**
+   * Lower a list of statements (linked through their siblings)
+   *
+   * @param node The first statement
+   */
+  private void lowerStatements(final AbstractSyntaxTreeNode node)
+  {
+    AbstractSyntaxTreeNode statement = node;
+    while (statement != null)
+    {
+      lowerStatement(statement);
+      statement = statement.getSibling();
+    }
+  }
+
+  /**
+   * Lower a single statement
+   *
+   * @param node The statement node
+   */
+  private void lowerStatement(final AbstractSyntaxTreeNode node)
+  {
+    // Code following a return is unreachable, but still needs a block
+    if (current.isTerminated())
+    {
+      current = function.createBlock(null);
+      function.addBlock(current);
+    }
+
+    switch (node.getNodeType())
+    {
+      case STATEMENT_IF:
+      {
+        lowerIf(node);
+        break;
+      }
+      case STATEMENT_WHILE:
+      {
+        lowerWhile(node);
+        break;
+      }
+      case STATEMENT_RETURN:
+      {
+        IROperand value = null;
+        if (node.getChild(0) != null)
+        {
+          value = lowerExpression(node.getChild(0));
+        }
+        current.add(IRInstruction.ret(value));
+        break;
+      }
+      case STATEMENT_VAR_DECLARATION:
+      {
+        declareVariable(node, false);
+        break;
+      }
+      case STATEMENT_ARRAY_DECLARATION:
+      {
+        declareVariable(node, true);
+        break;
+      }
+      case META_ANONYMOUS_BLOCK:
+      {
+        lowerScope(node.getChild(0), node.getName());
+        break;
+      }
+      case EXPRESSION_CALL:
+      {
+        // The return value of a call statement is discarded
+        lowerCall(node, null);
+        break;
+      }
+      default:
+      {
+        lowerExpression(node);
+        break;
+      }
+    }
+  }
+
+  /**
+   * Lower the statements of a nested scope
+   *
+   * @param body      The first statement of the scope
+   * @param scopeName The name of the scope's SymbolTable
+   */
+  private void lowerScope(final AbstractSyntaxTreeNode body,
+                          final String scopeName)
+  {
+    final SymbolTable enclosingTable = scopeTable;
+    if (enclosingTable != null)
+    {
+      scopeTable = (SymbolTable) enclosingTable.getSymbolItem("", scopeName, true);
+    }
+    localTable = localTable.enterScope();
+
+    lowerStatements(body);
+
+    localTable = localTable.exitScope();
+    scopeTable = enclosingTable;
+  }
+
+  /**
+   * Lower an if-statement (with an optional else)
+   *
+   * @param node The if-statement node
+   */
+  private void lowerIf(final AbstractSyntaxTreeNode node)
+  {
+    final String name = node.getName();
+    final boolean haveElse = node.getChild(2) != null;
+
+    BasicBlock body = function.createBlock(name + "_body");
+    BasicBlock otherwise = haveElse ? function.createBlock(name + "_else") : null;
+    BasicBlock end = function.createBlock(name + "_end");
+
+    lowerCondition(node.getChild(0), body, haveElse ? otherwise : end);
+
+    startBlock(body);
+    lowerScope(node.getChild(1), name);
+    jumpTo(end);
+
+    if (haveElse)
+    {
+      startBlock(otherwise);
+      lowerScope(node.getChild(2), name.replace("if", "else"));
+      jumpTo(end);
+    }
+
+    startBlock(end);
+  }
+
+  /**
+   * Lower a while-loop. The loop is rotated into a guarded do-while: the
+   * condition is tested once before entering the loop and then again at the
+   * bottom of the body, so every iteration ends in a single branch back to
+   * the top instead of a jump to a test that branches out.
+   *
+   * @param node The while-statement node
+   */
+  private void lowerWhile(final AbstractSyntaxTreeNode node)
+  {
+    final String name = node.getName();
+
+    BasicBlock start = function.createBlock(name + "_start");
+    BasicBlock body = function.createBlock(name + "_body");
+    BasicBlock test = function.createBlock(name + "_test");
+    BasicBlock end = function.createBlock(name + "_end");
+
+    startBlock(start);
+    lowerCondition(node.getChild(0), body, end);
+
+    startBlock(body);
+    lowerScope(node.getChild(1), name);
+
+    startBlock(test);
+    lowerCondition(node.getChild(0), body, end);
+
+    startBlock(end);
+  }
+
+  /**
+   * Lower a condition into a branch
+   *
+   * @param node        The condition expression
+   * @param trueTarget  The block to continue at if the condition holds
+   * @param falseTarget The block to continue at otherwise
+   */
+  private void lowerCondition(final AbstractSyntaxTreeNode node,
+                              final BasicBlock trueTarget,
+                              final BasicBlock falseTarget)
+  {
+    final Condition condition = getCondition(node);
+    if (condition == null)
+    {
+      // Any other expression is true when it is not zero
+      final IROperand operand = lowerExpression(node);
+      if (operand instanceof Constant)
+      {
+        // A folded condition always goes the same way
+        jumpTo((((Constant) operand).getValue() != 0) ? trueTarget : falseTarget);
+        return;
+      }
+      final VirtualRegister value = materialize(operand);
+      current.add(IRInstruction.branch(Condition.NE, value, new Constant(0),
+                                       trueTarget, falseTarget));
+      return;
+    }
+
+    IROperand lhs = lowerExpression(node.getChild(0));
+    IROperand rhs = lowerExpression(node.getChild(1));
+    Condition branchCondition = condition;
+
+    // The left hand side of a comparison has to be in a register
+    if (lhs instanceof Constant)
+    {
+      if (rhs instanceof VirtualRegister)
+      {
+        final IROperand swap = lhs;
+        lhs = rhs;
+        rhs = swap;
+        branchCondition = condition.swap();
+      }
+      else
+      {
+        lhs = materialize(lhs);
+      }
+    }
+
+    current.add(IRInstruction.branch(branchCondition, lhs, rhs,
+                                     trueTarget, falseTarget));
+  }
+
+  /**
+   * Declare a local variable or array
+   *
+   * @param node    The declaration node
+   * @param isArray Is the declared variable an array?
+   */
+  private void declareVariable(final AbstractSyntaxTreeNode node,
+                               final boolean isArray)
+  {
+    final String name = node.getName();
+
+    // Variables that are never used were removed by the analyzer
+    if (scopeTable == null || scopeTable.getSymbolItem("", name, false) == null)
+    {
+      return;
+    }
+
+    // The register allocator decides where the variable lives
+    VirtualRegister variable = function.newVariable(name);
+
+    final int size = isArray ? node.getChild(0).getValue() : 1;
+    RegisterRecord record = new RegisterRecord(null, 0, 4 * size);
+    record.setVariable(variable);
+    record.setArray(isArray);
+    localTable.addRecord(name, record);
+
+    if (isArray)
+    {
+      // Local arrays live in the stack frame for the whole activation
+      current.add(new IRInstruction(IROpcode.FRAME_ADDRESS, variable,
+                                    new Constant(function.newLocalArray(size))));
+    }
+    else
+    {
+      current.add(IRInstruction.copy(variable, new Constant(0)));
+    }
+  }
+
+  /**
+   * Lower an expression
+   *
+   * @param node The expression node
+   * @return The register or constant holding the value of the expression
+   *         (null if the node has no value)
+   */
+  private IROperand lowerExpression(final AbstractSyntaxTreeNode node)
+  {
+    switch (node.getNodeType())
+    {
+      case EXPRESSION_NUMBER:
+      {
+        return new Constant(node.getValue());
+      }
+      case EXPRESSION_IDENTIFIER:
+      {
+        final RegisterRecord record = localTable.getRecord(node.getName());
+        if (record.getVariable() != null)
+        {
+          return record.getVariable();
+        }
+
+        // A global: arrays are used by address, scalars are loaded
+        VirtualRegister address = function.newTemporary();
+        current.add(IRInstruction.loadAddress(address, record.getLabel()));
+        if (record.isArray())
+        {
+          return address;
+        }
+        VirtualRegister value = function.newTemporary();
+        current.add(IRInstruction.load(value, address, 0));
+        return value;
+      }
+      case EXPRESSION_ARRAY_IDENTIFIER:
+      {
+        final VirtualRegister address = lowerElementAddress(node);
+        VirtualRegister value = function.newTemporary();
+        current.add(IRInstruction.load(value, address, 0));
+        return value;
+      }
+      case EXPRESSION_OPERATION:
+      {
+        return lowerOperation(node, null);
+      }
+      case EXPRESSION_CALL:
+      {
+        return lowerCall(node, function.newTemporary());
+      }
+      case STATEMENT_ASSIGN:
+      {
+        return lowerAssign(node);
+      }
+      default:
+      {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Lower an expression directly into a variable
+   *
+   * @param dest The variable receiving the value
+   * @param node The expression node
+   */
+  private void lowerInto(final VirtualRegister dest,
+                         final AbstractSyntaxTreeNode node)
+  {
+    switch (node.getNodeType())
+    {
+      case EXPRESSION_OPERATION:
+      {
+        lowerOperation(node, dest);
+        break;
+      }
+      case EXPRESSION_CALL:
+      {
+        lowerCall(node, dest);
+        break;
+      }
+      default:
+      {
+        current.add(IRInstruction.copy(dest, lowerExpression(node)));
+        break;
+      }
+    }
+  }
+
+  /**
+   * Lower an assignment
+   *
+   * @param node The assignment node
+   * @return The assigned value
+   */
+  private IROperand lowerAssign(final AbstractSyntaxTreeNode node)
+  {
+    final AbstractSyntaxTreeNode target = node.getChild(0);
+
+    if (target.getNodeType() == ASTNodeType.EXPRESSION_ARRAY_IDENTIFIER)
+    {
+      final VirtualRegister value = materialize(lowerExpression(node.getChild(1)));
+      final VirtualRegister address = lowerElementAddress(target);
+      current.add(IRInstruction.store(value, address, 0));
+      return value;
+    }
+
+    final RegisterRecord record = localTable.getRecord(target.getName());
+    if (record.getVariable() != null)
+    {
+      lowerInto(record.getVariable(), node.getChild(1));
+      return record.getVariable();
+    }
+
+    // Global scalars live in memory
+    final VirtualRegister value = materialize(lowerExpression(node.getChild(1)));
+    VirtualRegister address = function.newTemporary();
+    current.add(IRInstruction.loadAddress(address, record.getLabel()));
+    current.add(IRInstruction.store(value, address, 0));
+    return value;
+  }
+
+  /**
+   * Lower the address computation of an array element
+   *
+   * @param node The array identifier node
+   * @return The register holding the address of the element
+   */
+  private VirtualRegister lowerElementAddress(final AbstractSyntaxTreeNode node)
+  {
+    final VirtualRegister index = materialize(lowerExpression(node.getChild(0)));
+
+    final RegisterRecord record = localTable.getRecord(node.getName());
+    VirtualRegister base = record.getVariable();
+    if (base == null)
+    {
+      base = function.newTemporary();
+      current.add(IRInstruction.loadAddress(base, record.getLabel()));
+    }
+
+    VirtualRegister offset = function.newTemporary();
+    current.add(new IRInstruction(IROpcode.SLL, offset, index, new Constant(2)));
+    VirtualRegister address = function.newTemporary();
+    current.add(new IRInstruction(IROpcode.ADD, address, base, offset));
+    return address;
+  }
+
+  /**
+   * Lower an arithmetic or relational operation
+   *
+   * @param node The operation node
+   * @param dest The register receiving the result (null for a new temporary)
+   * @return The register holding the result
+   */
+  private VirtualRegister lowerOperation(final AbstractSyntaxTreeNode node,
+                                         final VirtualRegister dest)
+  {
+    // Operands are evaluated left to right
+    IROperand lhs = lowerExpression(node.getChild(0));
+    IROperand rhs = lowerExpression(node.getChild(1));
+    final VirtualRegister result = (dest != null) ? dest : function.newTemporary();
+
+    final Condition condition = getCondition(node);
+    if (condition != null)
+    {
+      Condition setCondition = condition;
+      if (lhs instanceof Constant && rhs instanceof VirtualRegister)
+      {
+        final IROperand swap = lhs;
+        lhs = rhs;
+        rhs = swap;
+        setCondition = condition.swap();
+      }
+      current.add(IRInstruction.set(result, setCondition, materialize(lhs), rhs));
+      return result;
+    }
+
+    IROpcode opcode;
+    switch (node.getTokenType())
+    {
+      case SPECIAL_PLUS:
+      {
+        opcode = IROpcode.ADD;
+        break;
+      }
+      case SPECIAL_MINUS:
+      {
+        opcode = IROpcode.SUB;
+        break;
+      }
+      case SPECIAL_TIMES:
+      {
+        opcode = IROpcode.MUL;
+        break;
+      }
+      case SPECIAL_DIVIDE:
+      {
+        opcode = IROpcode.DIV;
+        break;
+      }
+      default:
+      {
+        throw new IllegalStateException(
+            "Unknown operator " + node.getTokenType());
+      }
+    }
+
+    // The left hand side of an operation has to be in a register
+    if (lhs instanceof Constant &&
+        rhs instanceof VirtualRegister &&
+        (opcode == IROpcode.ADD || opcode == IROpcode.MUL))
+    {
+      final IROperand swap = lhs;
+      lhs = rhs;
+      rhs = swap;
+    }
+
+    current.add(new IRInstruction(opcode, result, materialize(lhs), rhs));
+    return result;
+  }
+
+  /**
+   * Lower a function call
+   *
+   * @param node The call node
+   * @param dest The register receiving the return value (null if unused)
+   * @return The register holding the return value (null if unused)
+   */
+  private VirtualRegister lowerCall(final AbstractSyntaxTreeNode node,
+                                    final VirtualRegister dest)
+  {
+    ArrayList<IROperand> arguments = new ArrayList<>();
+    AbstractSyntaxTreeNode argument = node.getChild(0);
+    while (argument != null)
+    {
+      if (argument.getNodeType() != ASTNodeType.META_NULL)
+      {
+        arguments.add(lowerExpression(argument));
+      }
+      argument = argument.getSibling();
+    }
+
+    current.add(IRInstruction.call(dest, node.getName(), arguments));
+    return dest;
+  }
+
+  /**
+   * Make sure a value is held in a register
+   *
+   * @param operand The register or constant
+   * @return The register holding the value
+   */
+  private VirtualRegister materialize(final IROperand operand)
+  {
+    if (operand instanceof VirtualRegister)
+    {
+      return (VirtualRegister) operand;
+    }
+    VirtualRegister register = function.newTemporary();
+    current.add(IRInstruction.copy(register, operand));
+    return register;
+  }
+
+  /**
+   * Terminate the current block with a jump (unless it is already terminated)
+   *
+   * @param target The block to jump to
+   */
+  private void jumpTo(final BasicBlock target)
+  {
+    if (!current.isTerminated())
+    {
+      current.add(IRInstruction.jump(target));
+    }
+  }
+
+  /**
+   * Append a block to the layout and continue lowering into it. The previous
+   * block falls through into the new one if it is not already terminated.
+   *
+   * @param block The block to start
+   */
+  private void startBlock(final BasicBlock block)
+  {
+    jumpTo(block);
+    function.addBlock(block);
+    current = block;
+  }
+
+  /**
+   * Get the comparison of a relational operation
+   *
+   * @param node The expression node
+   * @return The comparison, or null if the node is not a relational operation
+   */
+  private static Condition getCondition(final AbstractSyntaxTreeNode node)
+  {
+    if (node.getNodeType() != ASTNodeType.EXPRESSION_OPERATION)
+    {
+      return null;
+    }
+    switch (node.getTokenType())
+    {
+      case SPECIAL_EQUAL:        return Condition.EQ;
+      case SPECIAL_NOT_EQUAL:    return Condition.NE;
+      case SPECIAL_LESS_THAN:    return Condition.LT;
+      case SPECIAL_LTE:          return Condition.LE;
+      case SPECIAL_GREATER_THAN: return Condition.GT;
+      case SPECIAL_GTE:          return Condition.GE;
+      default:                   return null;
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package codegen.ir;
+
+/**
+ * Enumeration of the operations of the three-address IR.
+ *
+ * Operand conventions (dest is the defined virtual register, if any):
+ *   ADD/SUB/MUL/DIV/SLL  dest = op0 (op) op1    op0 is always a register
+ *   SRA/SRL              dest = op0 shifted right by op1 (arithmetic/logical)
+ *   MULHI                dest = high word of the 64-bit product op0 * op1
+ *   SET                  dest = (op0 cond op1) ? 1 : 0
+ *   COPY                 dest = op0
+ *   LOAD_ADDRESS         dest = address of the data label (symbol)
+ *   FRAME_ADDRESS        dest = address of the local array starting at word
+ *                        op0 of the stack frame's array area
+ *   LOAD                 dest = memory[op0 + op1]   op1 is a constant offset
+ *   STORE                memory[op1 + op2] = op0    op2 is a constant offset
+ *   CALL                 [dest =] symbol(op0, op1, ...)
+ *   JUMP                 continue at target 0
+ *   BRANCH               if (op0 cond op1) target 0 else target 1
+ *   RETURN               return [op0] from the function
+ *   TAIL_CALL            return symbol(op0, op1, ...) from the function,
+ *                        leaving the frame before the callee is entered
+ *   PHI                  dest = op(i) when entered from incoming block i
+ *                        (only present while the function is in SSA form)
+ *   PARAM                dest = incoming argument op0 (a constant index)
+ *   SPILL                stack slot op1 = op0       op1 is a constant slot
+ *   RELOAD               dest = stack slot op0      op0 is a constant slot
+ *                        (both inserted by register allocation)
+ */
+public enum IROpcode
+{
+  ADD         ("add",   Kind.OPERATION),
+  SUB         ("sub",   Kind.OPERATION),
+  MUL         ("mul",   Kind.OPERATION),
+  DIV         ("div",   Kind.OPERATION),
+  SLL         ("sll",   Kind.OPERATION),
+  SRA         ("sra",   Kind.OPERATION),
+  SRL         ("srl",   Kind.OPERATION),
+  MULHI       ("mulhi", Kind.OPERATION),
+  SET         ("set",   Kind.OPERATION),
+  COPY        ("copy",  Kind.OPERATION),
+  LOAD_ADDRESS("la",    Kind.OPERATION),
+  FRAME_ADDRESS("fa",   Kind.OPERATION),
+  PARAM       ("param", Kind.OPERATION),
+  LOAD        ("load",  Kind.MEMORY),
+  STORE       ("store", Kind.MEMORY),
+  CALL        ("call",  Kind.CALL),
+  JUMP        ("jump",  Kind.TERMINATOR),
+  BRANCH      ("br",    Kind.TERMINATOR),
+  RETURN      ("ret",   Kind.TERMINATOR),
+  TAIL_CALL   ("tailcall", Kind.TERMINATOR),
+  PHI         ("phi",   Kind.OPERATION),
+  SPILL       ("spill", Kind.MEMORY),
+  RELOAD      ("reload", Kind.MEMORY);
+
+  /**
+   * Enumeration of the broad categories of IR operations
+   */
+  public enum Kind
+  {
+    OPERATION,  // Pure computation of the destination from the operands
+    MEMORY,     // Memory load or store
+    CALL,       // Call into another function or the operating system
+    TERMINATOR  // Transfer of control that ends a basic block
+  }
+
+  /**
+   * The name used when printing the operation
+   */
+  private final String text;
+
+  /**
+   * The category of the operation
+   */
+  private final Kind kind;
+
+  /**
+   * Constructor for an IROpcode
+   *
+   * @param text The name used when printing the operation
+   * @param kind The category of the operation
+   */
+  IROpcode(final String text, final Kind kind)
+  {
+    this.text = text;
+    this.kind = kind;
+  }
+
+  /**
+   * Get the name used when printing the operation
+   *
+   * @return The printed name
+   */
+  public String getText()
+  {
+    return text;
+  }
+
+  /**
+   * Get the category of the operation
+   *
+   * @return The kind of operation
+   */
+  public Kind getKind()
+  {
+    return kind;
+  }
+
+  /**
+   * Determine if the operation ends a basic block
+   *
+   * @return T/F if the operation is a terminator
+   */
+  public boolean isTerminator()
+  {
+    return kind == Kind.TERMINATOR;
+  }
+
+  /**
+   * Determine if the operation has no effect other than defining its
+   * destination (so it may be removed when the destination is unused)
+   *
+   * @return T/F if the operation is free of side effects
+   */
+  public boolean isPure()
+  {
+    return kind == Kind.OPERATION || this == LOAD || this == RELOAD;
+  }
+
+  /**
+   * Determine if the operation is a binary arithmetic operation
+   *
+   * @return T/F if the operation is ADD, SUB, MUL, DIV, a shift or MULHI
+   */
+  public boolean isArithmetic()
+  {
+    return this == ADD || this == SUB || this == MUL || this == DIV ||
+           this == SLL || this == SRA || this == SRL || this == MULHI;
+  }
+}
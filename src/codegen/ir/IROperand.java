@@ -0,0 +1,9 @@
+package codegen.ir;
+
+/**
+ * Interface for anything that can be used as an operand of an IR instruction
+ * (a virtual register or a constant)
+ */
+public interface IROperand
+{
+}
@@ -0,0 +1,743 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Induction-variable strength reduction over a function in SSA form. Loops
+ * must have preheaders (see LoopInvariantCodeMotion).
+ *
+ * A basic induction variable is a variable with a PHI in the loop header
+ * that every trip through the loop steps by a constant: the value from the
+ * latch is the PHI plus constants, added once per trip outside any inner
+ * loop. Values computed from it by adding, multiplying and shifting by
+ * constants are linear in it, and an element address (a loop-invariant base
+ * plus such a value, loaded or stored through) becomes a pointer of its own.
+ * The pointer starts at the first address in the preheader and steps along
+ * with the variable, so the address of every trip costs a single addition
+ * instead of a shift and an addition. Addresses with the same base and scale share one pointer and
+ * differ by a constant offset, which strength reduction folds into the loads
+ * and stores.
+ *
+ * When the variable is then only used to end the loop against a constant
+ * bound, the test is rewritten against the pointer (linear-function test
+ * replacement), and the variable is removed.
+ */
+public final class InductionVariableReduction
+{
+  /**
+   * The function being optimized
+   */
+  private final IRFunction function;
+
+  /**
+   * The dominator tree of the function
+   */
+  private DominatorTree tree;
+
+  /**
+   * The loops of the function
+   */
+  private LoopInfo loops;
+
+  /**
+   * The instruction defining every register (by register number)
+   */
+  private IRInstruction[] definitions;
+
+  /**
+   * The number of definitions of every register (by register number)
+   */
+  private int[] definitionCounts;
+
+  /**
+   * The preheader of the loop being reduced
+   */
+  private BasicBlock preheader;
+
+  /**
+   * The latch of the loop being reduced
+   */
+  private BasicBlock latch;
+
+  /**
+   * The last step of the induction variable being reduced
+   */
+  private IRInstruction increment;
+
+  /**
+   * The block of the last step of the induction variable
+   */
+  private BasicBlock incrementBlock;
+
+  /**
+   * The amount the induction variable is stepped by every trip
+   */
+  private int step;
+
+  /**
+   * The pointers stepped along with the induction variable, at the top of
+   * the loop (by base register and scale)
+   */
+  private HashMap<String, VirtualRegister> pointers;
+
+  /**
+   * The same pointers after their step (by base register and scale)
+   */
+  private HashMap<String, VirtualRegister> steppedPointers;
+
+  /**
+   * The base of every pointer (by base register and scale)
+   */
+  private HashMap<String, VirtualRegister> pointerBases;
+
+  /**
+   * The scale of every pointer (by base register and scale)
+   */
+  private HashMap<String, Integer> pointerScales;
+
+  /**
+   * The pointers used for an address on every trip through the loop, so
+   * that they only run over addresses the loop reads or writes (by base
+   * register and scale)
+   */
+  private HashSet<String> dereferenced;
+
+  /**
+   * Full constructor for InductionVariableReduction
+   *
+   * @param function The function to optimize (in SSA form, with preheaders)
+   */
+  public InductionVariableReduction(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Reduce the element addresses computed from the induction variables of
+   * every loop
+   *
+   * @return T/F if the function was changed
+   */
+  public boolean run()
+  {
+    function.computeControlFlow();
+    tree = new DominatorTree(function);
+    loops = new LoopInfo(tree);
+
+    boolean changed = false;
+    for (final Loop loop : loops.getLoops())
+    {
+      preheader = LoopInvariantCodeMotion.findPreheader(loop);
+      if (preheader == null || loop.getLatches().size() != 1)
+      {
+        continue;
+      }
+      latch = loop.getLatches().get(0);
+
+      ArrayList<IRInstruction> phis = new ArrayList<>();
+      for (final IRInstruction instruction : loop.getHeader().getInstructions())
+      {
+        if (instruction.getOpcode() == IROpcode.PHI)
+        {
+          phis.add(instruction);
+        }
+      }
+      for (final IRInstruction phi : phis)
+      {
+        findDefinitions();
+        changed |= reduce(loop, phi);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Find the definition of every register
+   */
+  private void findDefinitions()
+  {
+    definitions = new IRInstruction[function.getRegisterCount()];
+    definitionCounts = new int[function.getRegisterCount()];
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (instruction.getDest() != null)
+        {
+          definitions[instruction.getDest().getId()] = instruction;
+          ++definitionCounts[instruction.getDest().getId()];
+        }
+      }
+    }
+  }
+
+  /**
+   * Reduce the element addresses computed from a PHI of a loop header, if
+   * it is a basic induction variable
+   *
+   * @param loop The loop
+   * @param phi  The PHI
+   * @return T/F if the loop was changed
+   */
+  private boolean reduce(final Loop loop, final IRInstruction phi)
+  {
+    final int entry = phi.getTargets().indexOf(preheader);
+    final int back = phi.getTargets().indexOf(latch);
+    if (phi.getOperandCount() != 2 || entry < 0 || back < 0 ||
+        !(phi.getOperand(back) instanceof VirtualRegister))
+    {
+      return false;
+    }
+
+    // Walk the steps back from the value for the next trip to the PHI
+    ArrayList<IRInstruction> steps = new ArrayList<>();
+    VirtualRegister value = (VirtualRegister) phi.getOperand(back);
+    while (value != phi.getDest())
+    {
+      final IRInstruction definition = definitions[value.getId()];
+      if (definitionCounts[value.getId()] != 1 || findStep(definition) == null)
+      {
+        return false;
+      }
+      steps.add(0, definition);
+      value = (VirtualRegister) findStep(definition);
+    }
+    if (steps.isEmpty())
+    {
+      return false;
+    }
+
+    // Every step runs exactly once per trip
+    HashMap<IRInstruction, BasicBlock> stepBlocks = new HashMap<>();
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (steps.contains(instruction))
+        {
+          stepBlocks.put(instruction, block);
+        }
+      }
+    }
+    for (final IRInstruction instruction : steps)
+    {
+      final BasicBlock block = stepBlocks.get(instruction);
+      if (block == null || loops.getLoop(block) != loop ||
+          !tree.dominates(block, latch))
+      {
+        return false;
+      }
+    }
+
+    // The PHI and its steps are the variable offset by constants
+    HashMap<VirtualRegister, Integer> scales = new HashMap<>();
+    HashMap<VirtualRegister, Integer> offsets = new HashMap<>();
+    scales.put(phi.getDest(), 1);
+    offsets.put(phi.getDest(), 0);
+    int offset = 0;
+    for (final IRInstruction instruction : steps)
+    {
+      offset += getStepAmount(instruction);
+      scales.put(instruction.getDest(), 1);
+      offsets.put(instruction.getDest(), offset);
+    }
+    if (offset == 0)
+    {
+      return false;
+    }
+    step = offset;
+    increment = steps.get(steps.size() - 1);
+    incrementBlock = stepBlocks.get(increment);
+
+    final BitSet defined = new BitSet(function.getRegisterCount());
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (instruction.getDest() != null)
+        {
+          defined.set(instruction.getDest().getId());
+        }
+      }
+    }
+
+    // Find the registers used to address memory inside the loop, and those
+    // used on every trip through it
+    final BitSet accessed = new BitSet(function.getRegisterCount());
+    final BitSet accessedEveryTrip = new BitSet(function.getRegisterCount());
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        final IROperand address = getAddress(instruction);
+        if (address instanceof VirtualRegister)
+        {
+          accessed.set(((VirtualRegister) address).getId());
+          if (tree.dominates(block, latch))
+          {
+            accessedEveryTrip.set(((VirtualRegister) address).getId());
+          }
+        }
+      }
+    }
+
+    // Find the values linear in the variable, and the addresses computed
+    // from them, in reverse postorder so operands are seen first
+    ArrayList<IRInstruction> addresses = new ArrayList<>();
+    ArrayList<BasicBlock> addressBlocks = new ArrayList<>();
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        final VirtualRegister dest = instruction.getDest();
+        if (dest == null || definitionCounts[dest.getId()] != 1 ||
+            scales.containsKey(dest))
+        {
+          continue;
+        }
+        if (findLinear(instruction, scales, offsets))
+        {
+          continue;
+        }
+        if (accessed.get(dest.getId()) &&
+            findBase(instruction, scales, defined) != null)
+        {
+          addresses.add(instruction);
+          addressBlocks.add(block);
+        }
+      }
+    }
+    if (addresses.isEmpty())
+    {
+      return false;
+    }
+
+    pointers = new HashMap<>();
+    steppedPointers = new HashMap<>();
+    pointerBases = new HashMap<>();
+    pointerScales = new HashMap<>();
+    dereferenced = new HashSet<>();
+    for (int a = 0; a < addresses.size(); ++a)
+    {
+      final IRInstruction address = addresses.get(a);
+      final BasicBlock block = addressBlocks.get(a);
+      final VirtualRegister base = findBase(address, scales, defined);
+      final VirtualRegister index = (VirtualRegister) address.getOperand(
+          (address.getOperand(0) == base) ? 1 : 0);
+      final int scale = scales.get(index);
+      final String key = base.getId() + ":" + scale;
+      if (!pointers.containsKey(key))
+      {
+        createPointer(loop, phi.getOperand(entry), base, scale, key);
+      }
+      if (accessedEveryTrip.get(address.getDest().getId()))
+      {
+        dereferenced.add(key);
+      }
+
+      // The address is the pointer plus the constant part of the index,
+      // taken from before or after the pointer steps
+      final boolean stepped = (block == incrementBlock) ?
+          block.getInstructions().indexOf(address) >
+              block.getInstructions().indexOf(increment) :
+          tree.dominates(incrementBlock, block);
+      final VirtualRegister pointer =
+          stepped ? steppedPointers.get(key) : pointers.get(key);
+      final int constant = offsets.get(index) - (stepped ? scale * step : 0);
+      block.getInstructions().set(block.getInstructions().indexOf(address),
+                                  offset(address.getDest(), pointer, constant));
+    }
+
+    new DeadCodeElimination(function).run();
+    replaceTest(loop, phi, steps, offsets, defined);
+    return true;
+  }
+
+  /**
+   * Get the value a step of an induction variable steps from
+   *
+   * @param instruction The instruction defining the stepped value
+   * @return The register stepped (null if the instruction does not add a
+   *         constant to a register)
+   */
+  private static IROperand findStep(final IRInstruction instruction)
+  {
+    final IROpcode opcode = instruction.getOpcode();
+    if (opcode != IROpcode.ADD && opcode != IROpcode.SUB)
+    {
+      return null;
+    }
+    final IROperand lhs = instruction.getOperand(0);
+    final IROperand rhs = instruction.getOperand(1);
+    if (lhs instanceof VirtualRegister && rhs instanceof Constant)
+    {
+      return lhs;
+    }
+    if (opcode == IROpcode.ADD && lhs instanceof Constant &&
+        rhs instanceof VirtualRegister)
+    {
+      return rhs;
+    }
+    return null;
+  }
+
+  /**
+   * Get the amount a step of an induction variable steps by
+   *
+   * @param instruction The ADD or SUB instruction of the step
+   * @return The amount added
+   */
+  private static int getStepAmount(final IRInstruction instruction)
+  {
+    final IROperand amount =
+        (instruction.getOperand(0) instanceof Constant) ?
+        instruction.getOperand(0) : instruction.getOperand(1);
+    final int value = ((Constant) amount).getValue();
+    return (instruction.getOpcode() == IROpcode.SUB) ? -value : value;
+  }
+
+  /**
+   * Determine if an instruction computes a value linear in the induction
+   * variable from another, and record the scale and offset if so
+   *
+   * @param instruction The instruction
+   * @param scales      The scale of every linear value found
+   * @param offsets     The offset of every linear value found
+   * @return T/F if the instruction computes a linear value
+   */
+  private static boolean findLinear(final IRInstruction instruction,
+                                    final HashMap<VirtualRegister, Integer> scales,
+                                    final HashMap<VirtualRegister, Integer> offsets)
+  {
+    final IROpcode opcode = instruction.getOpcode();
+    IROperand value = (instruction.getOperandCount() > 0) ?
+                      instruction.getOperand(0) : null;
+    IROperand other = (instruction.getOperandCount() > 1) ?
+                      instruction.getOperand(1) : null;
+    if ((opcode == IROpcode.ADD || opcode == IROpcode.MUL) &&
+        !scales.containsKey(value))
+    {
+      final IROperand swap = value;
+      value = other;
+      other = swap;
+    }
+    if (!scales.containsKey(value) ||
+        (opcode != IROpcode.COPY && !(other instanceof Constant)))
+    {
+      return false;
+    }
+
+    final int scale = scales.get(value);
+    final int offset = offsets.get(value);
+    final int constant = (other == null) ? 0 : ((Constant) other).getValue();
+    switch (opcode)
+    {
+      case COPY:
+      {
+        scales.put(instruction.getDest(), scale);
+        offsets.put(instruction.getDest(), offset);
+        return true;
+      }
+      case ADD:
+      {
+        scales.put(instruction.getDest(), scale);
+        offsets.put(instruction.getDest(), offset + constant);
+        return true;
+      }
+      case SUB:
+      {
+        scales.put(instruction.getDest(), scale);
+        offsets.put(instruction.getDest(), offset - constant);
+        return true;
+      }
+      case MUL:
+      {
+        scales.put(instruction.getDest(), scale * constant);
+        offsets.put(instruction.getDest(), offset * constant);
+        return true;
+      }
+      case SLL:
+      {
+        scales.put(instruction.getDest(), scale << constant);
+        offsets.put(instruction.getDest(), offset << constant);
+        return true;
+      }
+      default:
+      {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Get the address operand of a load or store
+   *
+   * @param instruction The instruction
+   * @return The register or constant holding the address, or null if the
+   *         instruction does not access memory
+   */
+  private static IROperand getAddress(final IRInstruction instruction)
+  {
+    switch (instruction.getOpcode())
+    {
+      case LOAD:
+      {
+        return instruction.getOperand(0);
+      }
+      case STORE:
+      {
+        return instruction.getOperand(1);
+      }
+      default:
+      {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Find the loop-invariant base of an address computed by adding it to a
+   * value linear in the induction variable (other than the variable itself,
+   * which would gain nothing)
+   *
+   * @param instruction The instruction
+   * @param scales      The scale of every linear value found
+   * @param defined     The registers defined inside the loop
+   * @return The base, or null if the instruction does not compute an address
+   */
+  private static VirtualRegister findBase(
+      final IRInstruction instruction,
+      final HashMap<VirtualRegister, Integer> scales,
+      final BitSet defined)
+  {
+    if (instruction.getOpcode() != IROpcode.ADD)
+    {
+      return null;
+    }
+    for (int i = 0; i < 2; ++i)
+    {
+      final IROperand base = instruction.getOperand(i);
+      final IROperand index = instruction.getOperand(1 - i);
+      if (base instanceof VirtualRegister &&
+          !defined.get(((VirtualRegister) base).getId()) &&
+          scales.containsKey(index) && scales.get(index) != 0 &&
+          scales.get(index) != 1)
+      {
+        return (VirtualRegister) base;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Create a pointer stepped along with the induction variable: it starts
+   * at the base plus the scaled initial value in the preheader, and steps
+   * right after the variable's last step
+   *
+   * @param loop    The loop
+   * @param initial The initial value of the induction variable
+   * @param base    The base of the addresses
+   * @param scale   The scale of the index
+   * @param key     The key of the pointer
+   */
+  private void createPointer(final Loop loop, final IROperand initial,
+                             final VirtualRegister base, final int scale,
+                             final String key)
+  {
+    final VirtualRegister start =
+        function.newVariable(increment.getDest().getName() + "_ptr");
+    final Constant constant = findConstant(initial);
+    ArrayList<IRInstruction> setup = new ArrayList<>();
+    if (constant != null)
+    {
+      setup.add(offset(start, base, constant.getValue() * scale));
+    }
+    else
+    {
+      final VirtualRegister scaled = function.newTemporary();
+      setup.add(new IRInstruction(IROpcode.MUL, scaled, initial,
+                                  new Constant(scale)));
+      setup.add(new IRInstruction(IROpcode.ADD, start, base, scaled));
+    }
+    final ArrayList<IRInstruction> instructions = preheader.getInstructions();
+    instructions.addAll(instructions.size() - 1, setup);
+
+    final VirtualRegister pointer = function.newVersion(start);
+    final VirtualRegister stepped = function.newVersion(start);
+    IRInstruction phi = new IRInstruction(IROpcode.PHI, pointer);
+    phi.addIncoming(start, preheader);
+    phi.addIncoming(stepped, latch);
+    loop.getHeader().getInstructions().add(0, phi);
+
+    final ArrayList<IRInstruction> block = incrementBlock.getInstructions();
+    block.add(block.indexOf(increment) + 1,
+              new IRInstruction(IROpcode.ADD, stepped, pointer,
+                                new Constant(scale * step)));
+
+    pointers.put(key, pointer);
+    steppedPointers.put(key, stepped);
+    pointerBases.put(key, base);
+    pointerScales.put(key, scale);
+  }
+
+  /**
+   * Create an instruction adding a constant to a register
+   *
+   * @param dest     The register defined
+   * @param register The register added to
+   * @param constant The constant added
+   * @return The ADD instruction (a COPY if the constant is 0)
+   */
+  private static IRInstruction offset(final VirtualRegister dest,
+                                      final VirtualRegister register,
+                                      final int constant)
+  {
+    if (constant == 0)
+    {
+      return IRInstruction.copy(dest, register);
+    }
+    return new IRInstruction(IROpcode.ADD, dest, register,
+                             new Constant(constant));
+  }
+
+  /**
+   * Get the constant an operand holds
+   *
+   * @param operand The operand
+   * @return The constant, or null if it is not known
+   */
+  private Constant findConstant(final IROperand operand)
+  {
+    if (operand instanceof Constant)
+    {
+      return (Constant) operand;
+    }
+    final int id = ((VirtualRegister) operand).getId();
+    if (id < definitions.length && definitionCounts[id] == 1 &&
+        definitions[id].getOpcode() == IROpcode.COPY &&
+        definitions[id].getOperand(0) instanceof Constant)
+    {
+      return (Constant) definitions[id].getOperand(0);
+    }
+    return null;
+  }
+
+  /**
+   * Test the end of the loop against a pointer rather than the induction
+   * variable, and remove the variable, if that is all it is still used for.
+   * The pointer must be loaded or stored through on every trip, and the
+   * latch must be the only way out of the loop, so that the pointer ends at
+   * most one element past the memory the loop runs over and comparing
+   * addresses cannot overflow.
+   *
+   * @param loop    The loop
+   * @param phi     The PHI of the variable
+   * @param steps   The steps of the variable
+   * @param offsets The offset of the PHI and every step from the PHI
+   * @param defined The registers defined inside the loop
+   */
+  private void replaceTest(final Loop loop, final IRInstruction phi,
+                           final ArrayList<IRInstruction> steps,
+                           final HashMap<VirtualRegister, Integer> offsets,
+                           final BitSet defined)
+  {
+    final IRInstruction branch = latch.getTerminator();
+    if (branch.getOpcode() != IROpcode.BRANCH ||
+        !offsets.containsKey(branch.getOperand(0)) ||
+        (branch.getOperand(1) instanceof VirtualRegister &&
+         defined.get(((VirtualRegister) branch.getOperand(1)).getId())))
+    {
+      return;
+    }
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      for (final BasicBlock successor : block.getSuccessors())
+      {
+        if (block != latch && !loop.contains(successor))
+        {
+          return;
+        }
+      }
+    }
+
+    // The variable must have no other use than its own steps
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (instruction == phi || steps.contains(instruction) ||
+            instruction == branch)
+        {
+          continue;
+        }
+        for (final VirtualRegister use : instruction.getUses())
+        {
+          if (offsets.containsKey(use))
+          {
+            return;
+          }
+        }
+      }
+    }
+
+    String key = null;
+    for (final String candidate : dereferenced)
+    {
+      if (key == null ||
+          Math.abs(pointerScales.get(candidate)) < Math.abs(pointerScales.get(key)))
+      {
+        key = candidate;
+      }
+    }
+    if (key == null)
+    {
+      return;
+    }
+    final int scale = pointerScales.get(key);
+
+    // The stepped pointer is the base plus the scaled variable after its
+    // last step; the bound is moved the same way
+    final int distance = step - offsets.get(branch.getOperand(0));
+    final IROperand bound = branch.getOperand(1);
+    final VirtualRegister base = pointerBases.get(key);
+    final VirtualRegister end = function.newTemporary();
+    ArrayList<IRInstruction> setup = new ArrayList<>();
+    if (bound instanceof Constant)
+    {
+      final long limit =
+          ((long) ((Constant) bound).getValue() + distance) * scale;
+      if (limit < Integer.MIN_VALUE || limit > Integer.MAX_VALUE)
+      {
+        return;
+      }
+      setup.add(offset(end, base, (int) limit));
+    }
+    else
+    {
+      final VirtualRegister moved = function.newTemporary();
+      final VirtualRegister scaled = function.newTemporary();
+      setup.add(offset(moved, (VirtualRegister) bound, distance));
+      setup.add(new IRInstruction(IROpcode.MUL, scaled, moved,
+                                  new Constant(scale)));
+      setup.add(new IRInstruction(IROpcode.ADD, end, base, scaled));
+    }
+    final ArrayList<IRInstruction> instructions = preheader.getInstructions();
+    instructions.addAll(instructions.size() - 1, setup);
+
+    branch.setOperand(0, steppedPointers.get(key));
+    branch.setOperand(1, end);
+    if (scale < 0)
+    {
+      branch.setCondition(branch.getCondition().swap());
+    }
+
+    loop.getHeader().getInstructions().remove(phi);
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      block.getInstructions().removeAll(steps);
+    }
+  }
+}
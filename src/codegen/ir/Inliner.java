@@ -0,0 +1,265 @@
+package codegen.ir;
+
+import analyzer.symbol.table.FunctionSymbolTable;
+import codegen.table.LocalTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Class that inlines calls to small functions into their callers.
+ *
+ * Every function of the program is lowered once up front to decide which
+ * functions to inline: those that call nothing but input() and output() (so
+ * inlining can never recurse), and that are either small or called from
+ * only one place. Every inlined call lowers the callee again and copies it
+ * into the caller with fresh registers and blocks. The parameters become
+ * copies of the arguments (an array argument is its address, so arrays are
+ * still passed by reference), the callee's local arrays move to the caller's
+ * frame, and every return becomes a jump to the code following the call.
+ *
+ * The decisions are made before any function is generated, and inlining only
+ * reads the shared tables, so one Inliner can serve every function generator.
+ */
+public final class Inliner
+{
+  /**
+   * The largest function (in IR instructions) inlined at every call
+   */
+  private static final int SMALL_FUNCTION_SIZE = 40;
+
+  /**
+   * The largest function (in IR instructions) inlined at its only call
+   */
+  private static final int SINGLE_CALL_SIZE = 150;
+
+  /**
+   * The LocalTable containing the global identifiers
+   */
+  private final LocalTable globalTable;
+
+  /**
+   * The symbol tables of the functions to inline, by name
+   */
+  private final HashMap<String, FunctionSymbolTable> inlined;
+
+  /**
+   * Full constructor for the Inliner
+   *
+   * @param globalTable The LocalTable containing the global identifiers
+   * @param functions   The symbol tables of the functions of the program
+   *                    (other than input and output), by name
+   */
+  public Inliner(final LocalTable globalTable,
+                 final HashMap<String, FunctionSymbolTable> functions)
+  {
+    this.globalTable = globalTable;
+    inlined = new HashMap<>();
+
+    // Measure every function and count the calls to it
+    HashMap<String, Integer> sizes = new HashMap<>();
+    HashMap<String, Integer> calls = new HashMap<>();
+    ArrayList<String> leaves = new ArrayList<>();
+    for (final String name : functions.keySet())
+    {
+      final IRFunction function = new IRLowering(globalTable).lower(
+          name, functions.get(name), name.equals("main"));
+
+      int size = 0;
+      boolean leaf = !function.terminates();
+      for (final BasicBlock block : function.getBlocks())
+      {
+        for (final IRInstruction instruction : block.getInstructions())
+        {
+          ++size;
+          if (instruction.getOpcode() != IROpcode.CALL)
+          {
+            continue;
+          }
+          final String callee = instruction.getSymbol();
+          final Integer count = calls.get(callee);
+          calls.put(callee, (count == null) ? 1 : count + 1);
+          leaf &= !AliasAnalysis.mayStore(instruction);
+        }
+      }
+      sizes.put(name, size);
+      if (leaf)
+      {
+        leaves.add(name);
+      }
+    }
+
+    for (final String name : leaves)
+    {
+      final int size = sizes.get(name);
+      final Integer count = calls.get(name);
+      if (size <= SMALL_FUNCTION_SIZE ||
+          (count != null && count == 1 && size <= SINGLE_CALL_SIZE))
+      {
+        inlined.put(name, functions.get(name));
+      }
+    }
+  }
+
+  /**
+   * Inline the calls of a function to the functions chosen for inlining.
+   * The function must not be in SSA form.
+   *
+   * @param function The calling function
+   * @return T/F if any call was inlined
+   */
+  public boolean inline(final IRFunction function)
+  {
+    int count = 0;
+    for (int b = 0; b < function.getBlocks().size(); ++b)
+    {
+      final BasicBlock block = function.getBlocks().get(b);
+      final ArrayList<IRInstruction> instructions = block.getInstructions();
+      for (int i = 0; i < instructions.size(); ++i)
+      {
+        final IRInstruction instruction = instructions.get(i);
+        if (instruction.getOpcode() != IROpcode.CALL ||
+            !inlined.containsKey(instruction.getSymbol()))
+        {
+          continue;
+        }
+
+        // Move the code following the call to a block of its own, and copy
+        // the callee in between (the copy itself is not inlined again)
+        final String prefix =
+            String.format("%s_inline%d_", function.getName(), ++count);
+        final BasicBlock continuation =
+            function.createBlock(prefix + block.getLabel());
+        continuation.getInstructions().addAll(
+            instructions.subList(i + 1, instructions.size()));
+        instructions.subList(i, instructions.size()).clear();
+
+        final ArrayList<BasicBlock> body =
+            copyCallee(function, instruction, continuation, prefix);
+        block.add(IRInstruction.jump(body.get(0)));
+        body.add(continuation);
+        function.getBlocks().addAll(b + 1, body);
+        b += body.size() - 1;
+        break;
+      }
+    }
+
+    if (count > 0)
+    {
+      function.computeControlFlow();
+    }
+    return count > 0;
+  }
+
+  /**
+   * Copy a fresh lowering of the callee of a call into the caller
+   *
+   * @param function     The calling function
+   * @param call         The CALL instruction
+   * @param continuation The block to continue at after the callee returns
+   * @param prefix       The prefix of the labels of the copied blocks
+   * @return The copied blocks, in layout order (the entry block is first)
+   */
+  private ArrayList<BasicBlock> copyCallee(final IRFunction function,
+                                          final IRInstruction call,
+                                          final BasicBlock continuation,
+                                          final String prefix)
+  {
+    final IRFunction callee = new IRLowering(globalTable).lower(
+        call.getSymbol(), inlined.get(call.getSymbol()), false);
+    final int arrayStart = function.newLocalArray(callee.getLocalArrayWords());
+
+    // Give every register and block of the callee a counterpart in the caller
+    HashMap<VirtualRegister, VirtualRegister> registers = new HashMap<>();
+    HashMap<BasicBlock, BasicBlock> blocks = new HashMap<>();
+    ArrayList<BasicBlock> body = new ArrayList<>();
+    for (final BasicBlock block : callee.getBlocks())
+    {
+      final BasicBlock copy = function.createBlock(prefix + block.getLabel());
+      blocks.put(block, copy);
+      body.add(copy);
+    }
+
+    for (final BasicBlock block : callee.getBlocks())
+    {
+      final BasicBlock copy = blocks.get(block);
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        IRInstruction clone = new IRInstruction(instruction);
+        if (clone.getDest() != null)
+        {
+          clone.setDest(mapRegister(function, registers, clone.getDest()));
+        }
+        for (int i = 0; i < clone.getOperandCount(); ++i)
+        {
+          final IROperand operand = clone.getOperand(i);
+          if (operand instanceof VirtualRegister)
+          {
+            clone.setOperand(i, mapRegister(function, registers,
+                                            (VirtualRegister) operand));
+          }
+        }
+        for (int i = 0; i < clone.getTargets().size(); ++i)
+        {
+          clone.getTargets().set(i, blocks.get(clone.getTargets().get(i)));
+        }
+
+        switch (clone.getOpcode())
+        {
+          case PARAM:
+          {
+            // The parameter takes the value (or address) of the argument
+            final int index = ((Constant) clone.getOperand(0)).getValue();
+            copy.add(IRInstruction.copy(clone.getDest(), call.getOperand(index)));
+            break;
+          }
+          case FRAME_ADDRESS:
+          {
+            final int word = ((Constant) clone.getOperand(0)).getValue();
+            clone.setOperand(0, new Constant(arrayStart + word));
+            copy.add(clone);
+            break;
+          }
+          case RETURN:
+          {
+            if (call.getDest() != null && clone.getOperandCount() > 0)
+            {
+              copy.add(IRInstruction.copy(call.getDest(), clone.getOperand(0)));
+            }
+            copy.add(IRInstruction.jump(continuation));
+            break;
+          }
+          default:
+          {
+            copy.add(clone);
+            break;
+          }
+        }
+      }
+    }
+    return body;
+  }
+
+  /**
+   * Get the caller's counterpart of a register of the callee
+   *
+   * @param function  The calling function
+   * @param registers The counterparts found so far
+   * @param register  The register of the callee
+   * @return The register of the caller
+   */
+  private static VirtualRegister mapRegister(
+      final IRFunction function,
+      final HashMap<VirtualRegister, VirtualRegister> registers,
+      final VirtualRegister register)
+  {
+    VirtualRegister mapped = registers.get(register);
+    if (mapped == null)
+    {
+      mapped = register.isVariable() ? function.newVariable(register.getName()) :
+                                       function.newTemporary();
+      registers.put(register, mapped);
+    }
+    return mapped;
+  }
+}
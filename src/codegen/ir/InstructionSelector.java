@@ -0,0 +1,628 @@
+package codegen.ir;
+
+import codegen.emitter.MIPSCodeEmitter;
+import codegen.emitter.MemoryStack;
+import codegen.instruction.Immediate;
+import codegen.instruction.Label;
+import codegen.instruction.Opcode;
+import codegen.instruction.Operand;
+import codegen.instruction.Register;
+
+import java.util.ArrayList;
+
+/**
+ * Class that translates the IR of a function into MIPS instructions.
+ *
+ * Every virtual register must already have a home register (see
+ * RegisterAllocator). Calls follow the o32 convention: the first four
+ * arguments go in $a0-$a3, the rest on the stack, and only the caller-saved
+ * registers holding values that are still live after a call are saved
+ * around it, in the call area of the frame. The callee-saved registers the
+ * function writes (and $ra, unless the function is a leaf) are saved once in
+ * the same frame, which also holds the spill slots. The frame is only pushed
+ * on the paths that need it (see FramePlacement); the other paths return
+ * without one.
+ */
+public final class InstructionSelector
+{
+  /**
+   * Code emitter used to emit the function's MIPS code
+   */
+  private final MIPSCodeEmitter emitter;
+
+  /**
+   * The function being translated
+   */
+  private IRFunction function;
+
+  /**
+   * The stack frame of the function
+   */
+  private MemoryStack stack;
+
+  /**
+   * Where the stack frame of the function is pushed
+   */
+  private FramePlacement placement;
+
+  /**
+   * The block being translated
+   */
+  private BasicBlock currentBlock;
+
+  /**
+   * The full constructor for the InstructionSelector
+   *
+   * @param emitter The emitter receiving the MIPS instructions
+   */
+  public InstructionSelector(final MIPSCodeEmitter emitter)
+  {
+    this.emitter = emitter;
+  }
+
+  /**
+   * Translate a function (including its prologue and epilogue)
+   *
+   * @param irFunction The function to translate
+   */
+  public void select(final IRFunction irFunction)
+  {
+    function = irFunction;
+
+    // Save every callee-saved register the function writes
+    placement = new FramePlacement(function);
+    stack = new MemoryStack(emitter);
+    for (int mask = placement.getSavedMask(); mask != 0; mask &= mask - 1)
+    {
+      stack.addRegister(Register.fromNumber(Integer.numberOfTrailingZeros(mask)));
+    }
+    stack.addSlots(function.getSpillSlotCount());
+    stack.addArrayWords(function.getLocalArrayWords());
+    stack.setCallAreaSize(placement.getCallAreaSize());
+    stack.setSaveReturnAddress(!placement.isLeaf());
+
+    emitter.emitLabel(function.getName());
+
+    final ArrayList<BasicBlock> blocks = function.getBlocks();
+    for (int i = 0; i < blocks.size(); ++i)
+    {
+      final BasicBlock block = blocks.get(i);
+      final BasicBlock next = (i + 1 < blocks.size()) ? blocks.get(i + 1) : null;
+
+      if (i != 0)
+      {
+        emitter.emitLabel(block.getLabel());
+      }
+      if (block == placement.getSaveBlock())
+      {
+        stack.emitStackPush();
+      }
+      currentBlock = block;
+      final ArrayList<IRInstruction> instructions = block.getInstructions();
+      for (final IRInstruction instruction : instructions)
+      {
+        selectInstruction(instruction, next);
+      }
+    }
+
+    // Create a cleanup block for the returns made inside the frame
+    if (placement.getSaveBlock() != null)
+    {
+      emitter.emitLabel(function.getName() + "_cleanup");
+
+      // Manage the stack popping
+      stack.emitStackPop();
+      emitExit();
+    }
+  }
+
+  /**
+   * Emit the instruction leaving the function
+   */
+  private void emitExit()
+  {
+    // Handle if the program terminates or not
+    if (function.terminates())
+    {
+      emitter.emitSyscall(10, null, false);
+    }
+    else
+    {
+      emitter.emitFunctionExit();
+    }
+  }
+
+  /**
+   * Translate a single instruction
+   *
+   * @param instruction The instruction to translate
+   * @param next        The block laid out after the current one (null if the
+   *                    current block is the last one)
+   */
+  private void selectInstruction(final IRInstruction instruction,
+                                 final BasicBlock next)
+  {
+    final int count = instruction.getOperandCount();
+    Operand[] operands = new Operand[count];
+    for (int i = 0; i < count; ++i)
+    {
+      operands[i] = getOperand(instruction.getOperand(i));
+    }
+
+    switch (instruction.getOpcode())
+    {
+      case ADD:
+      case SUB:
+      case MUL:
+      case DIV:
+      case SLL:
+      case SRA:
+      case SRL:
+      {
+        final Register dest = define(instruction.getDest());
+        if (dest == null)
+        {
+          break;
+        }
+        Opcode opcode = getOpcode(instruction.getOpcode());
+        Operand rhs = operands[1];
+        if (rhs instanceof Immediate &&
+            (opcode == Opcode.ADD || opcode == Opcode.SUB))
+        {
+          // Add the (negated) constant with an immediate add
+          final int value = ((Immediate) rhs).getValue();
+          rhs = new Immediate((opcode == Opcode.SUB) ? -value : value);
+          opcode = Opcode.ADDI;
+        }
+        emitter.emitRType(opcode, operands[0], rhs, dest);
+        break;
+      }
+      case MULHI:
+      {
+        final Register dest = define(instruction.getDest());
+        if (dest == null)
+        {
+          break;
+        }
+        Operand rhs = operands[1];
+        if (rhs instanceof Immediate)
+        {
+          emitMove(Register.V1, rhs);
+          rhs = Register.V1;
+        }
+        emitter.emitMultiplyHigh(dest, operands[0], rhs);
+        break;
+      }
+      case SET:
+      {
+        final Register dest = define(instruction.getDest());
+        if (dest != null)
+        {
+          emitter.emitRType(getSetOpcode(instruction.getCondition()),
+                            operands[0], operands[1], dest);
+        }
+        break;
+      }
+      case COPY:
+      {
+        final Register dest = define(instruction.getDest());
+        if (dest != null)
+        {
+          emitMove(dest, operands[0]);
+        }
+        break;
+      }
+      case LOAD_ADDRESS:
+      {
+        final Register dest = define(instruction.getDest());
+        if (dest != null)
+        {
+          emitter.emitLoadAddress(dest, Label.data(instruction.getSymbol()));
+        }
+        break;
+      }
+      case FRAME_ADDRESS:
+      {
+        final Register dest = define(instruction.getDest());
+        if (dest != null)
+        {
+          final int word = ((Immediate) operands[0]).getValue();
+          emitter.emitRType(Opcode.ADDI, Register.SP,
+                            new Immediate(stack.getArrayOffset(word)), dest);
+        }
+        break;
+      }
+      case LOAD:
+      {
+        final Register dest = define(instruction.getDest());
+        if (dest != null)
+        {
+          emitter.emitLoadWord(dest, (Register) operands[0],
+                               ((Immediate) operands[1]).getValue());
+        }
+        break;
+      }
+      case STORE:
+      {
+        emitter.emitStoreWord((Register) operands[1],
+                              ((Immediate) operands[2]).getValue(),
+                              operands[0]);
+        break;
+      }
+      case SPILL:
+      {
+        emitter.emitStackSave((Register) operands[0],
+                              stack.getSlotOffset(((Immediate) operands[1]).getValue()));
+        break;
+      }
+      case RELOAD:
+      {
+        emitter.emitStackRetrieve(define(instruction.getDest()),
+                                  stack.getSlotOffset(((Immediate) operands[0]).getValue()));
+        break;
+      }
+      case PARAM:
+      {
+        final Register dest = define(instruction.getDest());
+        final int index = ((Immediate) operands[0]).getValue();
+        if (dest == null)
+        {
+          break;
+        }
+        if (index < 4)
+        {
+          emitMove(dest, Register.argument(index));
+        }
+        else
+        {
+          // Stack arguments sit above the caller's 16-byte home area
+          final int frameSize = placement.isInsideFrame(currentBlock) ?
+                                stack.getFrameSize() : 0;
+          emitter.emitStackRetrieve(dest, frameSize + 4 * index);
+        }
+        break;
+      }
+      case CALL:
+      {
+        selectCall(instruction, operands);
+        break;
+      }
+      case JUMP:
+      {
+        final BasicBlock target = instruction.getTargets().get(0);
+        if (target != next)
+        {
+          emitter.emitJump(target.getLabel());
+        }
+        break;
+      }
+      case BRANCH:
+      {
+        final BasicBlock trueTarget = instruction.getTargets().get(0);
+        final BasicBlock falseTarget = instruction.getTargets().get(1);
+        if (trueTarget == next)
+        {
+          // Branch out on the inverted condition and fall into the true path
+          emitter.emitBranch(getBranchOpcode(instruction.getCondition().negate()),
+                             operands[0], operands[1], falseTarget.getLabel());
+          break;
+        }
+        emitter.emitBranch(getBranchOpcode(instruction.getCondition()),
+                           operands[0], operands[1], trueTarget.getLabel());
+        if (falseTarget != next)
+        {
+          emitter.emitJump(falseTarget.getLabel());
+        }
+        break;
+      }
+      case RETURN:
+      {
+        if (count != 0)
+        {
+          emitMove(Register.V0, operands[0]);
+        }
+        if (!placement.isInsideFrame(currentBlock))
+        {
+          // Nothing to pop, so leave right away
+          emitExit();
+        }
+        else if (next != null)
+        {
+          // The cleanup block directly follows the last block
+          emitter.emitJump(function.getName() + "_cleanup");
+        }
+        break;
+      }
+      case TAIL_CALL:
+      {
+        selectTailCall(instruction, operands);
+        break;
+      }
+      default:
+      {
+        throw new IllegalStateException(
+            "Cannot translate " + instruction.getOpcode());
+      }
+    }
+  }
+
+  /**
+   * Translate a function call. The first four arguments are passed in $a0-$a3
+   * and the rest on the stack, above a 16-byte area reserved for the callee
+   * (o32). The caller-saved registers holding values that are still live
+   * after the call are saved above the outgoing arguments. Both live in the
+   * call area of the frame, so the stack pointer does not move.
+   *
+   * @param instruction The CALL instruction
+   * @param arguments   The translated arguments of the call
+   */
+  private void selectCall(final IRInstruction instruction,
+                          final Operand[] arguments)
+  {
+    ArrayList<Register> saved = getRegisters(placement.getCallerSaved(instruction));
+    final int outgoing = FramePlacement.getOutgoingSize(instruction);
+    for (int i = 0; i < saved.size(); ++i)
+    {
+      emitter.emitStackSave(saved.get(i), outgoing + i * 4);
+    }
+
+    // Store the stack arguments while every source still holds its value
+    for (int i = 4; i < arguments.length; ++i)
+    {
+      Operand argument = arguments[i];
+      if (argument instanceof Immediate)
+      {
+        emitMove(Register.V1, argument);
+        argument = Register.V1;
+      }
+      emitter.emitStoreWord(Register.SP, 4 * i, argument);
+    }
+
+    // Move the register arguments into place
+    ArrayList<Register> targets = new ArrayList<>();
+    ArrayList<Operand> sources = new ArrayList<>();
+    for (int i = 0; i < arguments.length && i < 4; ++i)
+    {
+      targets.add(Register.argument(i));
+      sources.add(arguments[i]);
+    }
+    emitParallelMove(targets, sources);
+
+    emitter.emitFunctionCall(instruction.getSymbol());
+
+    for (int i = saved.size() - 1; i >= 0; --i)
+    {
+      emitter.emitStackRetrieve(saved.get(i), outgoing + i * 4);
+    }
+
+    final Register dest = define(instruction.getDest());
+    if (dest != null)
+    {
+      emitter.emitDataSave(dest, Register.V0);
+    }
+  }
+
+  /**
+   * Translate a tail call. The arguments are moved into $a0-$a3 and the
+   * frame is popped (restoring $ra), so the callee entered by the jump
+   * returns straight to our caller.
+   *
+   * @param instruction The TAIL_CALL instruction
+   * @param arguments   The translated arguments of the call
+   */
+  private void selectTailCall(final IRInstruction instruction,
+                              final Operand[] arguments)
+  {
+    ArrayList<Register> targets = new ArrayList<>();
+    ArrayList<Operand> sources = new ArrayList<>();
+    for (int i = 0; i < arguments.length; ++i)
+    {
+      targets.add(Register.argument(i));
+      sources.add(arguments[i]);
+    }
+    emitParallelMove(targets, sources);
+
+    if (placement.isInsideFrame(currentBlock))
+    {
+      stack.emitStackPop();
+    }
+    emitter.emitJump(instruction.getSymbol());
+  }
+
+  /**
+   * Move several values into registers at once, as if every source were read
+   * before any target is written. Cycles are broken through $v1, and
+   * constants are loaded last.
+   *
+   * @param targets The destination registers (all different)
+   * @param sources The source registers or constants
+   */
+  private void emitParallelMove(final ArrayList<Register> targets,
+                                final ArrayList<Operand> sources)
+  {
+    ArrayList<Register> pendingTargets = new ArrayList<>();
+    ArrayList<Operand> pendingSources = new ArrayList<>();
+    for (int i = 0; i < targets.size(); ++i)
+    {
+      if (sources.get(i) instanceof Register && sources.get(i) != targets.get(i))
+      {
+        pendingTargets.add(targets.get(i));
+        pendingSources.add(sources.get(i));
+      }
+    }
+
+    while (!pendingTargets.isEmpty())
+    {
+      // Find a move whose target is not still needed as a source
+      int ready = -1;
+      for (int i = 0; i < pendingTargets.size() && ready < 0; ++i)
+      {
+        if (!pendingSources.contains(pendingTargets.get(i)))
+        {
+          ready = i;
+        }
+      }
+      if (ready >= 0)
+      {
+        emitMove(pendingTargets.remove(ready), pendingSources.remove(ready));
+        continue;
+      }
+
+      // Every target is still needed: set one aside to break the cycle
+      final Register blocked = pendingTargets.get(0);
+      emitMove(Register.V1, blocked);
+      for (int i = 0; i < pendingSources.size(); ++i)
+      {
+        if (pendingSources.get(i) == blocked)
+        {
+          pendingSources.set(i, Register.V1);
+        }
+      }
+    }
+
+    for (int i = 0; i < targets.size(); ++i)
+    {
+      if (sources.get(i) instanceof Immediate)
+      {
+        emitMove(targets.get(i), sources.get(i));
+      }
+    }
+  }
+
+  /**
+   * List the registers in a bitmask
+   *
+   * @param mask The bitmask
+   * @return The registers, in order of their numbers
+   */
+  private static ArrayList<Register> getRegisters(final int mask)
+  {
+    ArrayList<Register> registers = new ArrayList<>();
+    for (int rest = mask; rest != 0; rest &= rest - 1)
+    {
+      registers.add(Register.fromNumber(Integer.numberOfTrailingZeros(rest)));
+    }
+    return registers;
+  }
+
+  /**
+   * Move a register or constant into a register
+   *
+   * @param to   The destination register
+   * @param from The source register or constant
+   */
+  private void emitMove(final Register to, final Operand from)
+  {
+    if (from instanceof Immediate)
+    {
+      emitter.emitLoadImmediate(to, ((Immediate) from).getValue());
+    }
+    else if (from != to)
+    {
+      emitter.emitDataSave(to, from);
+    }
+  }
+
+  /**
+   * Translate an IR operand
+   *
+   * @param operand The register or constant
+   * @return The MIPS register or immediate holding the operand
+   */
+  private Operand getOperand(final IROperand operand)
+  {
+    if (operand instanceof Constant)
+    {
+      return new Immediate(((Constant) operand).getValue());
+    }
+    return getHome((VirtualRegister) operand);
+  }
+
+  /**
+   * Obtain the register for a value defined by an instruction
+   *
+   * @param register The defined virtual register
+   * @return The MIPS register, or null if the instruction defines nothing
+   */
+  private Register define(final VirtualRegister register)
+  {
+    return (register == null) ? null : getHome(register);
+  }
+
+  /**
+   * Get the home register of a virtual register
+   *
+   * @param register The virtual register
+   * @return The MIPS register assigned to it
+   * @throws IllegalStateException Thrown if no register was assigned
+   */
+  private Register getHome(final VirtualRegister register)
+  {
+    final Register home = function.getHome(register);
+    if (home == null)
+    {
+      throw new IllegalStateException(
+          "No register assigned to " + register + " in function " +
+          function.getName());
+    }
+    return home;
+  }
+
+  /**
+   * Get the MIPS operation of an arithmetic IR operation
+   *
+   * @param opcode The IR operation
+   * @return The MIPS operation
+   */
+  private static Opcode getOpcode(final IROpcode opcode)
+  {
+    switch (opcode)
+    {
+      case ADD: return Opcode.ADD;
+      case SUB: return Opcode.SUB;
+      case MUL: return Opcode.MUL;
+      case DIV: return Opcode.DIV;
+      case SRA: return Opcode.SRA;
+      case SRL: return Opcode.SRL;
+      default:  return Opcode.SLL;
+    }
+  }
+
+  /**
+   * Get the MIPS branch for a comparison
+   *
+   * @param condition The comparison
+   * @return The branch operation
+   */
+  private static Opcode getBranchOpcode(final Condition condition)
+  {
+    switch (condition)
+    {
+      case EQ: return Opcode.BEQ;
+      case NE: return Opcode.BNE;
+      case LT: return Opcode.BLT;
+      case LE: return Opcode.BLE;
+      case GT: return Opcode.BGT;
+      default: return Opcode.BGE;
+    }
+  }
+
+  /**
+   * Get the MIPS set operation for a comparison
+   *
+   * @param condition The comparison
+   * @return The set operation
+   */
+  private static Opcode getSetOpcode(final Condition condition)
+  {
+    switch (condition)
+    {
+      case EQ: return Opcode.SEQ;
+      case NE: return Opcode.SNE;
+      case LT: return Opcode.SLT;
+      case LE: return Opcode.SLE;
+      case GT: return Opcode.SGT;
+      default: return Opcode.SGE;
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * The virtual registers live on entry to and on exit from every block of a
+ * function. Registers are identified by their number, so the sets are bit
+ * sets indexed by VirtualRegister.getId().
+ *
+ * The analysis is the usual backward dataflow problem, iterated to a fixed
+ * point. It is meant for functions that are not in SSA form (a PHI is treated
+ * like any other instruction).
+ */
+public final class Liveness
+{
+  /**
+   * The registers live on entry to every block
+   */
+  private final HashMap<BasicBlock, BitSet> liveIn;
+
+  /**
+   * The registers live on exit from every block
+   */
+  private final HashMap<BasicBlock, BitSet> liveOut;
+
+  /**
+   * Full constructor for Liveness. The control flow of the function must be
+   * up to date.
+   *
+   * @param function The function to analyze
+   */
+  public Liveness(final IRFunction function)
+  {
+    liveIn = new HashMap<>();
+    liveOut = new HashMap<>();
+
+    // Summarize every block by the registers it reads before writing them
+    // (uses) and the registers it writes (definitions)
+    final ArrayList<BasicBlock> blocks = function.getBlocks();
+    HashMap<BasicBlock, BitSet> uses = new HashMap<>();
+    HashMap<BasicBlock, BitSet> definitions = new HashMap<>();
+    for (final BasicBlock block : blocks)
+    {
+      BitSet used = new BitSet();
+      BitSet defined = new BitSet();
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        for (final VirtualRegister use : instruction.getUses())
+        {
+          if (!defined.get(use.getId()))
+          {
+            used.set(use.getId());
+          }
+        }
+        if (instruction.getDest() != null)
+        {
+          defined.set(instruction.getDest().getId());
+        }
+      }
+      uses.put(block, used);
+      definitions.put(block, defined);
+      liveIn.put(block, new BitSet());
+      liveOut.put(block, new BitSet());
+    }
+
+    // Visiting the blocks backwards converges quickly, as most edges point
+    // forward in the layout
+    boolean changed = true;
+    while (changed)
+    {
+      changed = false;
+      for (int i = blocks.size() - 1; i >= 0; --i)
+      {
+        final BasicBlock block = blocks.get(i);
+
+        BitSet out = liveOut.get(block);
+        for (final BasicBlock successor : block.getSuccessors())
+        {
+          out.or(liveIn.get(successor));
+        }
+
+        BitSet in = (BitSet) out.clone();
+        in.andNot(definitions.get(block));
+        in.or(uses.get(block));
+        if (!in.equals(liveIn.get(block)))
+        {
+          liveIn.put(block, in);
+          changed = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the registers live on entry to a block
+   *
+   * @param block The block
+   * @return The set of live register numbers (must not be modified)
+   */
+  public BitSet getLiveIn(final BasicBlock block)
+  {
+    return liveIn.get(block);
+  }
+
+  /**
+   * Get the registers live on exit from a block
+   *
+   * @param block The block
+   * @return The set of live register numbers (must not be modified)
+   */
+  public BitSet getLiveOut(final BasicBlock block)
+  {
+    return liveOut.get(block);
+  }
+
+  /**
+   * Compute the registers live after every instruction of a block
+   *
+   * @param block The block
+   * @return The live sets, parallel to the instructions of the block
+   */
+  public ArrayList<BitSet> getLiveAfter(final BasicBlock block)
+  {
+    final ArrayList<IRInstruction> instructions = block.getInstructions();
+    BitSet[] result = new BitSet[instructions.size()];
+    BitSet live = (BitSet) liveOut.get(block).clone();
+    for (int i = instructions.size() - 1; i >= 0; --i)
+    {
+      result[i] = (BitSet) live.clone();
+      transfer(instructions.get(i), live);
+    }
+    return new ArrayList<>(Arrays.asList(result));
+  }
+
+  /**
+   * Step a live set backwards over an instruction
+   *
+   * @param instruction The instruction
+   * @param live        The registers live after the instruction; updated to
+   *                    the registers live before it
+   */
+  public static void transfer(final IRInstruction instruction, final BitSet live)
+  {
+    if (instruction.getDest() != null)
+    {
+      live.clear(instruction.getDest().getId());
+    }
+    for (final VirtualRegister use : instruction.getUses())
+    {
+      live.set(use.getId());
+    }
+  }
+}
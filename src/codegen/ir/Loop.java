@@ -0,0 +1,105 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * A natural loop of a function: a header block that dominates every block of
+ * the loop, and the blocks that can reach one of the header's back edges
+ * without passing through the header.
+ */
+public final class Loop
+{
+  /**
+   * The header of the loop (the target of its back edges)
+   */
+  private final BasicBlock header;
+
+  /**
+   * The blocks of the loop, in reverse postorder (the header is first)
+   */
+  private final ArrayList<BasicBlock> blocks;
+
+  /**
+   * The blocks of the loop, for membership tests
+   */
+  private final HashSet<BasicBlock> members;
+
+  /**
+   * The blocks jumping back to the header from inside the loop
+   */
+  private final ArrayList<BasicBlock> latches;
+
+  /**
+   * The innermost loop enclosing this one (null for an outermost loop)
+   */
+  private Loop parent;
+
+  /**
+   * Full constructor for a Loop
+   *
+   * @param header The header of the loop
+   */
+  Loop(final BasicBlock header)
+  {
+    this.header = header;
+    blocks = new ArrayList<>();
+    members = new HashSet<>();
+    latches = new ArrayList<>();
+    parent = null;
+  }
+
+  public BasicBlock            getHeader()  { return header;  }
+  public ArrayList<BasicBlock> getBlocks()  { return blocks;  }
+  public ArrayList<BasicBlock> getLatches() { return latches; }
+  public Loop                  getParent()  { return parent;  }
+
+  /**
+   * Set the innermost loop enclosing this one
+   *
+   * @param parent The enclosing loop
+   */
+  void setParent(final Loop parent)
+  {
+    this.parent = parent;
+  }
+
+  /**
+   * Add a block to the loop
+   *
+   * @param block The block
+   */
+  void addBlock(final BasicBlock block)
+  {
+    if (members.add(block))
+    {
+      blocks.add(block);
+    }
+  }
+
+  /**
+   * Determine if a block is part of the loop (or of a loop nested in it)
+   *
+   * @param block The block in question
+   * @return T/F if the block belongs to the loop
+   */
+  public boolean contains(final BasicBlock block)
+  {
+    return members.contains(block);
+  }
+
+  /**
+   * Get the nesting depth of the loop
+   *
+   * @return 1 for an outermost loop, 2 for a loop nested in it, and so on
+   */
+  public int getDepth()
+  {
+    int depth = 0;
+    for (Loop loop = this; loop != null; loop = loop.parent)
+    {
+      ++depth;
+    }
+    return depth;
+  }
+}
@@ -0,0 +1,150 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * The natural loops of a function and how they nest.
+ *
+ * Back edges are the edges whose target dominates their source; all of the
+ * back edges to one header form a single loop. Loops with different headers
+ * are either disjoint or nested, so the innermost loop of a block is simply
+ * the smallest loop containing it.
+ */
+public final class LoopInfo
+{
+  /**
+   * The loops of the function, innermost (smallest) first
+   */
+  private final ArrayList<Loop> loops;
+
+  /**
+   * The innermost loop containing every block that is in a loop
+   */
+  private final HashMap<BasicBlock, Loop> innermost;
+
+  /**
+   * Full constructor for LoopInfo
+   *
+   * @param tree The dominator tree of the function
+   */
+  public LoopInfo(final DominatorTree tree)
+  {
+    loops = new ArrayList<>();
+    innermost = new HashMap<>();
+
+    // Find the back edges, in reverse postorder of their headers
+    HashMap<BasicBlock, Loop> byHeader = new HashMap<>();
+    for (final BasicBlock block : tree.getReversePostorder())
+    {
+      for (final BasicBlock successor : block.getSuccessors())
+      {
+        if (!tree.dominates(successor, block))
+        {
+          continue;
+        }
+        Loop loop = byHeader.get(successor);
+        if (loop == null)
+        {
+          loop = new Loop(successor);
+          byHeader.put(successor, loop);
+          loops.add(loop);
+        }
+        loop.getLatches().add(block);
+      }
+    }
+
+    // Collect the body of every loop by walking backwards from its latches
+    for (final Loop loop : loops)
+    {
+      HashSet<BasicBlock> body = new HashSet<>();
+      body.add(loop.getHeader());
+      ArrayList<BasicBlock> worklist = new ArrayList<>(loop.getLatches());
+      while (!worklist.isEmpty())
+      {
+        final BasicBlock block = worklist.remove(worklist.size() - 1);
+        if (!tree.isReachable(block) || !body.add(block))
+        {
+          continue;
+        }
+        worklist.addAll(block.getPredecessors());
+      }
+
+      // Keep the blocks in reverse postorder
+      for (final BasicBlock block : tree.getReversePostorder())
+      {
+        if (body.contains(block))
+        {
+          loop.addBlock(block);
+        }
+      }
+    }
+
+    // Order the loops from the innermost outwards, and nest every loop in
+    // the smallest larger loop containing its header
+    for (int i = 1; i < loops.size(); ++i)
+    {
+      final Loop loop = loops.get(i);
+      int j = i - 1;
+      while (j >= 0 && loops.get(j).getBlocks().size() > loop.getBlocks().size())
+      {
+        loops.set(j + 1, loops.get(j));
+        --j;
+      }
+      loops.set(j + 1, loop);
+    }
+    for (int i = 0; i < loops.size(); ++i)
+    {
+      final Loop loop = loops.get(i);
+      for (int j = i + 1; j < loops.size(); ++j)
+      {
+        if (loops.get(j).contains(loop.getHeader()))
+        {
+          loop.setParent(loops.get(j));
+          break;
+        }
+      }
+      for (final BasicBlock block : loop.getBlocks())
+      {
+        if (!innermost.containsKey(block))
+        {
+          innermost.put(block, loop);
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the loops of the function
+   *
+   * @return The loops, innermost first
+   */
+  public ArrayList<Loop> getLoops()
+  {
+    return loops;
+  }
+
+  /**
+   * Get the innermost loop containing a block
+   *
+   * @param block The block in question
+   * @return The loop, or null if the block is not in a loop
+   */
+  public Loop getLoop(final BasicBlock block)
+  {
+    return innermost.get(block);
+  }
+
+  /**
+   * Get the loop nesting depth of a block
+   *
+   * @param block The block in question
+   * @return The number of loops containing the block
+   */
+  public int getDepth(final BasicBlock block)
+  {
+    final Loop loop = innermost.get(block);
+    return (loop == null) ? 0 : loop.getDepth();
+  }
+}
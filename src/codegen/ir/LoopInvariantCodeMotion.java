@@ -0,0 +1,367 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Loop-invariant code motion over a function in SSA form.
+ *
+ * Every loop is first given a preheader: a block outside the loop whose only
+ * successor is the loop header, and which is the only way into the loop.
+ * Computations inside the loop whose operands are all defined outside of it
+ * are then moved to the end of the preheader, innermost loops first, so that
+ * a computation invariant in several nested loops moves out of all of them.
+ *
+ * Only temporaries are moved; leaving SSA form maps every version of a
+ * variable back onto the variable, so moving a variable's definition could
+ * overwrite a value that is still live. A load only moves if nothing in the
+ * loop may store to the same word: stores through an address with a known,
+ * different array or global as its root are ignored, and any call other
+ * than input() and output() may store anywhere. Loads and divisions (which
+ * may fault) only move out of blocks that run on every trip through the
+ * loop, so that they never run when the original program would not have run
+ * them.
+ */
+public final class LoopInvariantCodeMotion
+{
+  /**
+   * The function being optimized
+   */
+  private final IRFunction function;
+
+  /**
+   * Which loads and stores of the function may overlap
+   */
+  private AliasAnalysis aliases;
+
+  /**
+   * The number of definitions of every register (by register number)
+   */
+  private int[] definitionCounts;
+
+  /**
+   * Full constructor for LoopInvariantCodeMotion
+   *
+   * @param function The function to optimize (in SSA form)
+   */
+  public LoopInvariantCodeMotion(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Move the loop-invariant computations out of every loop
+   *
+   * @return T/F if the function was changed
+   */
+  public boolean run()
+  {
+    // Insert the preheaders one at a time, as every one changes the loops
+    boolean changed = false;
+    function.computeControlFlow();
+    DominatorTree tree = new DominatorTree(function);
+    LoopInfo loops = new LoopInfo(tree);
+    boolean inserted = true;
+    while (inserted)
+    {
+      inserted = false;
+      for (final Loop loop : loops.getLoops())
+      {
+        if (findPreheader(loop) == null && loop.getHeader() != function.getEntry())
+        {
+          insertPreheader(loop);
+          function.computeControlFlow();
+          tree = new DominatorTree(function);
+          loops = new LoopInfo(tree);
+          inserted = true;
+          changed = true;
+          break;
+        }
+      }
+    }
+
+    aliases = new AliasAnalysis(function);
+    definitionCounts = new int[function.getRegisterCount()];
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (instruction.getDest() != null)
+        {
+          ++definitionCounts[instruction.getDest().getId()];
+        }
+      }
+    }
+
+    for (final Loop loop : loops.getLoops())
+    {
+      changed |= hoist(loop, tree);
+    }
+    return changed;
+  }
+
+  /**
+   * Find the preheader of a loop
+   *
+   * @param loop The loop
+   * @return The only block entering the loop, if it has no other successor,
+   *         otherwise null
+   */
+  static BasicBlock findPreheader(final Loop loop)
+  {
+    BasicBlock preheader = null;
+    for (final BasicBlock predecessor : loop.getHeader().getPredecessors())
+    {
+      if (loop.contains(predecessor))
+      {
+        continue;
+      }
+      if (preheader != null)
+      {
+        return null;
+      }
+      preheader = predecessor;
+    }
+    if (preheader == null || preheader.getSuccessors().size() != 1)
+    {
+      return null;
+    }
+    return preheader;
+  }
+
+  /**
+   * Insert a preheader in front of a loop, laid out just before its header.
+   * The edges entering the loop are redirected to the preheader, and the
+   * PHI operands flowing in along them are merged there.
+   *
+   * @param loop The loop
+   */
+  private void insertPreheader(final Loop loop)
+  {
+    final BasicBlock header = loop.getHeader();
+    ArrayList<BasicBlock> entries = new ArrayList<>();
+    for (final BasicBlock predecessor : header.getPredecessors())
+    {
+      if (!loop.contains(predecessor))
+      {
+        entries.add(predecessor);
+      }
+    }
+
+    final BasicBlock preheader = function.createBlock(null);
+    for (final BasicBlock entry : entries)
+    {
+      final ArrayList<BasicBlock> targets = entry.getTerminator().getTargets();
+      for (int i = 0; i < targets.size(); ++i)
+      {
+        if (targets.get(i) == header)
+        {
+          targets.set(i, preheader);
+        }
+      }
+    }
+
+    for (final IRInstruction phi : header.getInstructions())
+    {
+      if (phi.getOpcode() != IROpcode.PHI)
+      {
+        break;
+      }
+
+      // Move the incoming values from outside the loop to a PHI in the
+      // preheader (or just retarget the operand if there is only one)
+      IROperand value = null;
+      IRInstruction merge = null;
+      if (entries.size() > 1)
+      {
+        merge = IRInstruction.phi(function.newVersion(phi.getDest()), null,
+                                  entries);
+        preheader.add(merge);
+        value = merge.getDest();
+      }
+      for (int i = phi.getOperandCount() - 1; i >= 0; --i)
+      {
+        final int entry = entries.indexOf(phi.getTargets().get(i));
+        if (entry < 0)
+        {
+          continue;
+        }
+        if (merge != null)
+        {
+          merge.setOperand(entry, phi.getOperand(i));
+        }
+        else
+        {
+          value = phi.getOperand(i);
+        }
+        phi.removeOperand(i);
+      }
+      phi.addIncoming(value, preheader);
+    }
+    preheader.add(IRInstruction.jump(header));
+
+    function.getBlocks().add(function.getBlocks().indexOf(header), preheader);
+  }
+
+  /**
+   * Move the invariant computations of a loop to its preheader
+   *
+   * @param loop The loop
+   * @param tree The dominator tree of the function
+   * @return T/F if anything was moved
+   */
+  private boolean hoist(final Loop loop, final DominatorTree tree)
+  {
+    final BasicBlock preheader = findPreheader(loop);
+    if (preheader == null)
+    {
+      return false;
+    }
+
+    // Find what the loop defines and where it stores or calls
+    BitSet defined = new BitSet(function.getRegisterCount());
+    ArrayList<IRInstruction> stores = new ArrayList<>();
+    boolean calls = false;
+    ArrayList<BasicBlock> exits = new ArrayList<>();
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (instruction.getDest() != null)
+        {
+          defined.set(instruction.getDest().getId());
+        }
+        if (instruction.getOpcode() == IROpcode.STORE)
+        {
+          stores.add(instruction);
+        }
+        else if (instruction.getOpcode() == IROpcode.CALL &&
+                 AliasAnalysis.mayStore(instruction))
+        {
+          calls = true;
+        }
+      }
+      for (final BasicBlock successor : block.getSuccessors())
+      {
+        if (!loop.contains(successor))
+        {
+          exits.add(block);
+          break;
+        }
+      }
+    }
+
+    // The blocks are in reverse postorder, so every definition inside the
+    // loop is visited before its uses
+    ArrayList<IRInstruction> moved = new ArrayList<>();
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      boolean everyTrip = true;
+      for (final BasicBlock exit : exits)
+      {
+        everyTrip &= tree.dominates(block, exit);
+      }
+
+      ArrayList<IRInstruction> instructions = block.getInstructions();
+      for (int i = 0; i < instructions.size(); ++i)
+      {
+        final IRInstruction instruction = instructions.get(i);
+        if (!isInvariant(instruction, defined) ||
+            (mayFault(instruction) && !everyTrip) ||
+            (instruction.getOpcode() == IROpcode.LOAD &&
+             (calls || mayBeStored(instruction, stores))))
+        {
+          continue;
+        }
+        instructions.remove(i--);
+        moved.add(instruction);
+        defined.clear(instruction.getDest().getId());
+      }
+    }
+
+    ArrayList<IRInstruction> instructions = preheader.getInstructions();
+    instructions.addAll(instructions.size() - 1, moved);
+    return !moved.isEmpty();
+  }
+
+  /**
+   * Determine if an instruction computes the same value on every trip
+   * through a loop
+   *
+   * @param instruction The instruction
+   * @param defined     The registers defined inside the loop
+   * @return T/F if the instruction is a side-effect free computation of a
+   *         temporary from operands defined outside the loop
+   */
+  private boolean isInvariant(final IRInstruction instruction,
+                              final BitSet defined)
+  {
+    final IROpcode opcode = instruction.getOpcode();
+    final VirtualRegister dest = instruction.getDest();
+    if (dest == null || dest.isVariable() ||
+        definitionCounts[dest.getId()] != 1 ||
+        !opcode.isPure() || opcode == IROpcode.PHI ||
+        opcode == IROpcode.PARAM || opcode == IROpcode.RELOAD)
+    {
+      return false;
+    }
+
+    // A constant is just as cheap to load inside the loop, and would only
+    // tie up a register for the length of it
+    if (opcode == IROpcode.COPY && instruction.getOperand(0) instanceof Constant)
+    {
+      return false;
+    }
+
+    for (final VirtualRegister use : instruction.getUses())
+    {
+      if (defined.get(use.getId()))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Determine if an instruction may fault when run where the original
+   * program would not have run it
+   *
+   * @param instruction The instruction
+   * @return T/F if the instruction is a load, or a division by a register
+   *         or by zero
+   */
+  private static boolean mayFault(final IRInstruction instruction)
+  {
+    if (instruction.getOpcode() == IROpcode.LOAD)
+    {
+      return true;
+    }
+    return instruction.getOpcode() == IROpcode.DIV &&
+           (!(instruction.getOperand(1) instanceof Constant) ||
+            ((Constant) instruction.getOperand(1)).getValue() == 0);
+  }
+
+  /**
+   * Determine if a store of a loop may write the word read by a load
+   *
+   * @param load   The LOAD instruction
+   * @param stores The STORE instructions of the loop
+   * @return T/F if any of the stores may write the loaded word
+   */
+  private boolean mayBeStored(final IRInstruction load,
+                              final ArrayList<IRInstruction> stores)
+  {
+    for (final IRInstruction store : stores)
+    {
+      if (aliases.mayAlias((VirtualRegister) load.getOperand(0),
+                           ((Constant) load.getOperand(1)).getValue(),
+                           (VirtualRegister) store.getOperand(1),
+                           ((Constant) store.getOperand(2)).getValue()))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
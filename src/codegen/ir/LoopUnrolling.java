@@ -0,0 +1,421 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Class that unrolls the counted loops of a function (see CountedLoop). The
+ * function must not be in SSA form, so the copies of the loop body can
+ * simply share its variables.
+ *
+ * A loop whose variable starts at a known constant and that runs only a few
+ * times is replaced by one copy of its body per iteration, leaving no test,
+ * branch or loop at all. Any other counted loop with a unit step gets an
+ * unrolled version running the body several times per test, as long as
+ * enough iterations are left. The original loop stays behind it to run the
+ * remaining iterations. Both are limited by the size of the copied code.
+ */
+public final class LoopUnrolling
+{
+  /**
+   * The most iterations of a loop replaced by copies of its body
+   */
+  private static final int FULL_UNROLL_TRIPS = 16;
+
+  /**
+   * The largest code (in IR instructions) replacing a loop run to the end
+   */
+  private static final int FULL_UNROLL_SIZE = 96;
+
+  /**
+   * The largest body (in IR instructions) of an unrolled loop
+   */
+  private static final int UNROLLED_SIZE = 64;
+
+  /**
+   * The function being transformed
+   */
+  private final IRFunction function;
+
+  /**
+   * The most copies of the body in an unrolled loop
+   */
+  private final int factor;
+
+  /**
+   * The number of loops unrolled so far (used to name the copies)
+   */
+  private int count;
+
+  /**
+   * Full constructor for LoopUnrolling
+   *
+   * @param function The function to transform (not in SSA form)
+   * @param factor   The most copies of the body in an unrolled loop (1 to
+   *                 only unroll the loops that run a few times completely)
+   */
+  public LoopUnrolling(final IRFunction function, final int factor)
+  {
+    this.function = function;
+    this.factor = factor;
+    count = 0;
+  }
+
+  /**
+   * Unroll the counted loops of the function
+   *
+   * @return T/F if the function was changed
+   */
+  public boolean run()
+  {
+    // Unrolling changes the loops, so they are found again after each one
+    HashSet<BasicBlock> visited = new HashSet<>();
+    boolean changed = false;
+    boolean unrolled = true;
+    while (unrolled)
+    {
+      unrolled = false;
+      final DominatorTree tree = new DominatorTree(function);
+      final LoopInfo loops = new LoopInfo(tree);
+
+      HashSet<Loop> outer = new HashSet<>();
+      for (final Loop loop : loops.getLoops())
+      {
+        outer.add(loop.getParent());
+      }
+      for (final Loop loop : loops.getLoops())
+      {
+        if (outer.contains(loop) || !visited.add(loop.getHeader()))
+        {
+          continue;
+        }
+        final CountedLoop counted = CountedLoop.find(loop, tree);
+        if (counted != null && unroll(counted))
+        {
+          changed = unrolled = true;
+          break;
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Unroll a counted loop, completely if possible
+   *
+   * @param counted The loop
+   * @return T/F if the loop was unrolled
+   */
+  private boolean unroll(final CountedLoop counted)
+  {
+    final Loop loop = counted.getLoop();
+
+    // The temporaries of the body are renamed in every copy, so none can be
+    // read after the loop
+    int size = 0;
+    HashSet<VirtualRegister> temporaries = new HashSet<>();
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        ++size;
+        if (instruction.getDest() != null && !instruction.getDest().isVariable())
+        {
+          temporaries.add(instruction.getDest());
+        }
+      }
+    }
+    for (final BasicBlock block : function.getBlocks())
+    {
+      if (loop.contains(block))
+      {
+        continue;
+      }
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        for (final VirtualRegister use : instruction.getUses())
+        {
+          if (temporaries.contains(use))
+          {
+            return false;
+          }
+        }
+      }
+    }
+
+    final int trips = countTrips(counted);
+    if (trips > 0 && trips * size <= FULL_UNROLL_SIZE)
+    {
+      unrollCompletely(counted, temporaries, trips);
+      return true;
+    }
+
+    final int copies = Math.min(factor, UNROLLED_SIZE / size);
+    final long bound = (long) counted.getBound() -
+                       (long) (copies - 1) * counted.getStep();
+    if (copies < 2 || !hasUnitStep(counted) ||
+        bound < Integer.MIN_VALUE || bound > Integer.MAX_VALUE)
+    {
+      return false;
+    }
+    unrollPartially(counted, temporaries, copies, (int) bound);
+    return true;
+  }
+
+  /**
+   * Count the iterations of a loop whose variable starts at a constant
+   *
+   * @param counted The loop
+   * @return The number of times the body runs, or 0 if it is not known or
+   *         more than FULL_UNROLL_TRIPS
+   */
+  private static int countTrips(final CountedLoop counted)
+  {
+    final Integer initial = counted.findInitialValue();
+    if (initial == null)
+    {
+      return 0;
+    }
+
+    // The body runs once before the first test
+    long value = initial;
+    for (int trips = 1; trips <= FULL_UNROLL_TRIPS; ++trips)
+    {
+      value += counted.getStep();
+      if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+      {
+        return 0;
+      }
+      if (!counted.getCondition().evaluate((int) value, counted.getBound()))
+      {
+        return trips;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Determine if a loop steps its variable by one towards its bound, so the
+   * number of iterations left follows from the distance to the bound
+   *
+   * @param counted The loop
+   * @return T/F if the variable moves by one towards the bound
+   */
+  private static boolean hasUnitStep(final CountedLoop counted)
+  {
+    switch (counted.getCondition())
+    {
+      case LT:
+      case LE:
+      {
+        return counted.getStep() == 1;
+      }
+      case GT:
+      case GE:
+      {
+        return counted.getStep() == -1;
+      }
+      default:
+      {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Replace a loop by a copy of its body for every iteration
+   *
+   * @param counted     The loop
+   * @param temporaries The temporaries defined in the loop
+   * @param trips       The number of iterations
+   */
+  private void unrollCompletely(final CountedLoop counted,
+                                final HashSet<VirtualRegister> temporaries,
+                                final int trips)
+  {
+    final Loop loop = counted.getLoop();
+    final String prefix =
+        String.format("%s_unroll%d_", function.getName(), ++count);
+
+    ArrayList<BasicBlock> body = new ArrayList<>();
+    BasicBlock next = counted.getExit();
+    for (int trip = trips; trip >= 1; --trip)
+    {
+      final HashMap<BasicBlock, BasicBlock> blocks =
+          copyLoop(loop, temporaries, prefix + trip + "_");
+      final BasicBlock latch = blocks.get(counted.getLatch());
+      removeTerminator(latch);
+      latch.add(IRInstruction.jump(next));
+      next = blocks.get(loop.getHeader());
+      for (int b = loop.getBlocks().size() - 1; b >= 0; --b)
+      {
+        body.add(0, blocks.get(loop.getBlocks().get(b)));
+      }
+    }
+
+    enterInstead(loop, next);
+    final int position = function.getBlocks().indexOf(loop.getHeader());
+    function.getBlocks().addAll(position, body);
+    function.getBlocks().removeAll(loop.getBlocks());
+    function.computeControlFlow();
+  }
+
+  /**
+   * Put an unrolled copy of a loop in front of it. The copy runs while at
+   * least as many iterations are left as it has copies of the body, and the
+   * original loop runs the rest.
+   *
+   * @param counted     The loop
+   * @param temporaries The temporaries defined in the loop
+   * @param copies      The number of copies of the body
+   * @param bound       The bound for the variable at the top of the unrolled
+   *                    loop, when enough iterations are left
+   */
+  private void unrollPartially(final CountedLoop counted,
+                               final HashSet<VirtualRegister> temporaries,
+                               final int copies, final int bound)
+  {
+    final Loop loop = counted.getLoop();
+    final BasicBlock header = loop.getHeader();
+    final Condition condition = counted.getCondition();
+    final VirtualRegister variable = counted.getVariable();
+    final String prefix =
+        String.format("%s_unroll%d_", function.getName(), ++count);
+
+    final BasicBlock check = function.createBlock(prefix + "check");
+    final BasicBlock rest = function.createBlock(prefix + "rest");
+    ArrayList<HashMap<BasicBlock, BasicBlock>> copied = new ArrayList<>();
+    ArrayList<BasicBlock> body = new ArrayList<>();
+    for (int copy = 1; copy <= copies; ++copy)
+    {
+      final HashMap<BasicBlock, BasicBlock> blocks =
+          copyLoop(loop, temporaries, prefix + copy + "_");
+      removeTerminator(blocks.get(counted.getLatch()));
+      copied.add(blocks);
+      for (final BasicBlock block : loop.getBlocks())
+      {
+        body.add(blocks.get(block));
+      }
+    }
+
+    // Every copy but the last goes straight on to the next one. The last
+    // loops back while enough iterations are left, then the original loop
+    // takes over if any are left at all.
+    final BasicBlock first = copied.get(0).get(header);
+    for (int copy = 0; copy < copies - 1; ++copy)
+    {
+      copied.get(copy).get(counted.getLatch()).add(
+          IRInstruction.jump(copied.get(copy + 1).get(header)));
+    }
+    copied.get(copies - 1).get(counted.getLatch()).add(
+        IRInstruction.branch(condition, variable, new Constant(bound),
+                             first, rest));
+    rest.add(IRInstruction.branch(condition, variable,
+                                  new Constant(counted.getBound()),
+                                  header, counted.getExit()));
+
+    enterInstead(loop, check);
+    check.add(IRInstruction.branch(condition, variable, new Constant(bound),
+                                   first, header));
+
+    final int position = function.getBlocks().indexOf(header);
+    body.add(0, check);
+    body.add(rest);
+    function.getBlocks().addAll(position, body);
+    function.computeControlFlow();
+  }
+
+  /**
+   * Copy the blocks of a loop, with fresh temporaries. Branches within the
+   * loop go to the copies, and branches out of it are left alone.
+   *
+   * @param loop        The loop
+   * @param temporaries The temporaries defined in the loop
+   * @param prefix      The prefix of the labels of the copies
+   * @return The copy of every block of the loop
+   */
+  private HashMap<BasicBlock, BasicBlock> copyLoop(
+      final Loop loop, final HashSet<VirtualRegister> temporaries,
+      final String prefix)
+  {
+    HashMap<BasicBlock, BasicBlock> blocks = new HashMap<>();
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      blocks.put(block, function.createBlock(prefix + block.getLabel()));
+    }
+
+    HashMap<VirtualRegister, VirtualRegister> registers = new HashMap<>();
+    for (final VirtualRegister temporary : temporaries)
+    {
+      registers.put(temporary, function.newTemporary());
+    }
+
+    for (final BasicBlock block : loop.getBlocks())
+    {
+      final BasicBlock copy = blocks.get(block);
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        IRInstruction clone = new IRInstruction(instruction);
+        if (registers.containsKey(clone.getDest()))
+        {
+          clone.setDest(registers.get(clone.getDest()));
+        }
+        for (int i = 0; i < clone.getOperandCount(); ++i)
+        {
+          final IROperand operand = clone.getOperand(i);
+          if (registers.containsKey(operand))
+          {
+            clone.setOperand(i, registers.get(operand));
+          }
+        }
+        for (int i = 0; i < clone.getTargets().size(); ++i)
+        {
+          final BasicBlock target = blocks.get(clone.getTargets().get(i));
+          if (target != null)
+          {
+            clone.getTargets().set(i, target);
+          }
+        }
+        copy.add(clone);
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Send every branch into a loop from outside of it to another block
+   *
+   * @param loop  The loop
+   * @param entry The block to enter instead of the header
+   */
+  private void enterInstead(final Loop loop, final BasicBlock entry)
+  {
+    for (final BasicBlock predecessor : loop.getHeader().getPredecessors())
+    {
+      if (loop.contains(predecessor))
+      {
+        continue;
+      }
+      final ArrayList<BasicBlock> targets =
+          predecessor.getTerminator().getTargets();
+      for (int i = 0; i < targets.size(); ++i)
+      {
+        if (targets.get(i) == loop.getHeader())
+        {
+          targets.set(i, entry);
+        }
+      }
+    }
+  }
+
+  /**
+   * Remove the terminator of a block
+   *
+   * @param block The block
+   */
+  private static void removeTerminator(final BasicBlock block)
+  {
+    block.getInstructions().remove(block.getInstructions().size() - 1);
+  }
+}
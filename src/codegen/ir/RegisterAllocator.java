@@ -0,0 +1,725 @@
+package codegen.ir;
+
+import codegen.instruction.Register;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Class that assigns a MIPS register to every virtual register of a function
+ * by graph coloring (Chaitin/Briggs).
+ *
+ * The interference graph is built from the liveness of the function, with
+ * copies not counting as interference between their source and destination.
+ * Copies are then coalesced as long as the Briggs test shows the merged node
+ * stays colorable. Nodes are simplified in order of degree; when none has a
+ * low degree, the node with the lowest spill cost per neighbour is removed
+ * optimistically. Every use and definition costs 10 to the power of its loop
+ * depth. Nodes that find no color when the stack is unwound are spilled to a
+ * stack slot, and the function is allocated again.
+ *
+ * The colors are the temporary registers ($t0-$t9), the argument registers
+ * ($a0-$a3) and the saved registers ($s0-$s7). A temporary or argument
+ * register is saved around every call it is live across, while a saved
+ * register is saved once in the prologue, so values that are live across
+ * more than one call (weighted by loop depth) prefer a saved register.
+ * Parameters and call arguments prefer the argument register they are
+ * passed in, so that they are evaluated straight into it.
+ */
+public final class RegisterAllocator
+{
+  /**
+   * The caller-saved registers available for allocation
+   */
+  private static final Register[] TEMPORARIES = {
+      Register.T0, Register.T1, Register.T2, Register.T3, Register.T4,
+      Register.T5, Register.T6, Register.T7, Register.T8, Register.T9 };
+
+  /**
+   * The argument registers available for allocation (tried last among the
+   * caller-saved registers, so they stay free for arguments)
+   */
+  private static final Register[] ARGUMENTS = {
+      Register.A0, Register.A1, Register.A2, Register.A3 };
+
+  /**
+   * The callee-saved registers available for allocation
+   */
+  private static final Register[] SAVED = {
+      Register.S0, Register.S1, Register.S2, Register.S3,
+      Register.S4, Register.S5, Register.S6, Register.S7 };
+
+  /**
+   * The number of colors available
+   */
+  private static final int COLOR_COUNT =
+      TEMPORARIES.length + ARGUMENTS.length + SAVED.length;
+
+  /**
+   * The factor a use or definition costs more per level of loop nesting
+   */
+  private static final double LOOP_WEIGHT = 10.0;
+
+  /**
+   * The number of allocation rounds after which spilling is abandoned
+   */
+  private static final int MAXIMUM_ROUNDS = 16;
+
+  /**
+   * The function being allocated
+   */
+  private final IRFunction function;
+
+  /**
+   * The registers created to reload or spill a value (never spilled again)
+   */
+  private final BitSet unspillable;
+
+  /**
+   * The virtual registers of the function, by number
+   */
+  private VirtualRegister[] registers;
+
+  /**
+   * The virtual registers that need a register assigned (every register
+   * without a home)
+   */
+  private BitSet allocatable;
+
+  /**
+   * The nodes of the interference graph that have not been coalesced away
+   */
+  private BitSet nodes;
+
+  /**
+   * The neighbours of every node in the interference graph
+   */
+  private BitSet[] adjacency;
+
+  /**
+   * The node every coalesced node was merged into (itself if it was not)
+   */
+  private int[] alias;
+
+  /**
+   * The spill cost of every node
+   */
+  private double[] costs;
+
+  /**
+   * The number of calls every node is live across (weighted like the spill
+   * costs)
+   */
+  private double[] callCrossings;
+
+  /**
+   * The argument register every node is passed in or out of (if any)
+   */
+  private Register[] hints;
+
+  /**
+   * Bitmask of the registers every node must not be given (the argument
+   * registers of parameters that have not been read yet when it is defined)
+   */
+  private int[] forbidden;
+
+  /**
+   * The copies between two allocatable registers
+   */
+  private ArrayList<IRInstruction> moves;
+
+  /**
+   * The register assigned to every node
+   */
+  private Register[] colors;
+
+  /**
+   * Full constructor for the RegisterAllocator
+   *
+   * @param function The function to allocate (not in SSA form)
+   */
+  public RegisterAllocator(final IRFunction function)
+  {
+    this.function = function;
+    unspillable = new BitSet();
+  }
+
+  /**
+   * Assign a register to every virtual register of the function, inserting
+   * spill code where needed
+   *
+   * @throws IllegalStateException Thrown if no allocation could be found
+   */
+  public void run()
+  {
+    function.computeControlFlow();
+    final LoopInfo loops = new LoopInfo(new DominatorTree(function));
+
+    for (int round = 0; ; ++round)
+    {
+      if (round == MAXIMUM_ROUNDS)
+      {
+        throw new IllegalStateException(
+            "Register allocation failed in function " + function.getName());
+      }
+
+      build(loops);
+      coalesce();
+      final BitSet spilled = select(simplify());
+      if (spilled.isEmpty())
+      {
+        break;
+      }
+      rewrite(spilled);
+    }
+
+    for (int id = allocatable.nextSetBit(0); id >= 0; id = allocatable.nextSetBit(id + 1))
+    {
+      function.setHome(registers[id], colors[find(id)]);
+    }
+    removeRedundantMoves();
+  }
+
+  /**
+   * Build the interference graph and the spill costs
+   *
+   * @param loops The loops of the function
+   */
+  private void build(final LoopInfo loops)
+  {
+    final int count = function.getRegisterCount();
+    registers = new VirtualRegister[count];
+    allocatable = new BitSet();
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        if (instruction.getDest() != null)
+        {
+          addRegister(instruction.getDest());
+        }
+        for (final VirtualRegister use : instruction.getUses())
+        {
+          addRegister(use);
+        }
+      }
+    }
+
+    nodes = (BitSet) allocatable.clone();
+    adjacency = new BitSet[count];
+    alias = new int[count];
+    costs = new double[count];
+    callCrossings = new double[count];
+    hints = new Register[count];
+    forbidden = new int[count];
+    for (int id = 0; id < count; ++id)
+    {
+      adjacency[id] = new BitSet();
+      alias[id] = id;
+    }
+    moves = new ArrayList<>();
+
+    final Liveness liveness = new Liveness(function);
+    for (final BasicBlock block : function.getBlocks())
+    {
+      final double weight = Math.pow(LOOP_WEIGHT, loops.getDepth(block));
+      final ArrayList<IRInstruction> instructions = block.getInstructions();
+
+      BitSet live = (BitSet) liveness.getLiveOut(block).clone();
+      live.and(allocatable);
+      for (int i = instructions.size() - 1; i >= 0; --i)
+      {
+        final IRInstruction instruction = instructions.get(i);
+        final VirtualRegister dest = instruction.getDest();
+        final int destId = (dest != null && allocatable.get(dest.getId())) ?
+                           dest.getId() : -1;
+
+        if (instruction.getOpcode() == IROpcode.PARAM && destId >= 0)
+        {
+          final int index = ((Constant) instruction.getOperand(0)).getValue();
+          addHint(destId, index);
+          final int registerCount =
+              Math.min(function.getParameters().size(), ARGUMENTS.length);
+          for (int j = index + 1; j < registerCount; ++j)
+          {
+            forbidden[destId] |= ARGUMENTS[j].getMask();
+          }
+        }
+        if (instruction.getOpcode() == IROpcode.CALL ||
+            instruction.getOpcode() == IROpcode.TAIL_CALL)
+        {
+          for (int j = 0; j < instruction.getOperandCount(); ++j)
+          {
+            final IROperand argument = instruction.getOperand(j);
+            if (argument instanceof VirtualRegister &&
+                allocatable.get(((VirtualRegister) argument).getId()))
+            {
+              addHint(((VirtualRegister) argument).getId(), j);
+            }
+          }
+          for (int id = live.nextSetBit(0); id >= 0; id = live.nextSetBit(id + 1))
+          {
+            if (id != destId)
+            {
+              callCrossings[id] += weight;
+            }
+          }
+        }
+
+        // A copy does not make its source and destination interfere
+        int source = -1;
+        if (instruction.getOpcode() == IROpcode.COPY &&
+            instruction.getOperand(0) instanceof VirtualRegister)
+        {
+          source = ((VirtualRegister) instruction.getOperand(0)).getId();
+          if (destId >= 0 && allocatable.get(source))
+          {
+            moves.add(instruction);
+          }
+        }
+
+        if (destId >= 0)
+        {
+          costs[destId] += weight;
+          for (int id = live.nextSetBit(0); id >= 0; id = live.nextSetBit(id + 1))
+          {
+            if (id != source)
+            {
+              addEdge(destId, id);
+            }
+          }
+          live.clear(destId);
+        }
+
+        for (final VirtualRegister use : instruction.getUses())
+        {
+          if (allocatable.get(use.getId()))
+          {
+            costs[use.getId()] += weight;
+            live.set(use.getId());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Record a virtual register of the function
+   *
+   * @param register The virtual register
+   */
+  private void addRegister(final VirtualRegister register)
+  {
+    registers[register.getId()] = register;
+    if (function.getHome(register) == null)
+    {
+      allocatable.set(register.getId());
+    }
+  }
+
+  /**
+   * Suggest an argument register for a node
+   *
+   * @param id    The node
+   * @param index The position of the argument
+   */
+  private void addHint(final int id, final int index)
+  {
+    if (hints[id] == null && index < ARGUMENTS.length)
+    {
+      hints[id] = ARGUMENTS[index];
+    }
+  }
+
+  /**
+   * Add an interference edge
+   *
+   * @param first  The first node
+   * @param second The second node
+   */
+  private void addEdge(final int first, final int second)
+  {
+    if (first != second)
+    {
+      adjacency[first].set(second);
+      adjacency[second].set(first);
+    }
+  }
+
+  /**
+   * Find the node a (possibly coalesced) node was merged into
+   *
+   * @param id The node
+   * @return The representative node
+   */
+  private int find(final int id)
+  {
+    int node = id;
+    while (alias[node] != node)
+    {
+      node = alias[node];
+    }
+    return node;
+  }
+
+  /**
+   * Coalesce the copies whose source and destination can share a register
+   * without making the graph harder to color
+   */
+  private void coalesce()
+  {
+    boolean changed = true;
+    while (changed)
+    {
+      changed = false;
+      for (final IRInstruction move : moves)
+      {
+        final int first = find(move.getDest().getId());
+        final int second = find(((VirtualRegister) move.getOperand(0)).getId());
+        if (first == second ||
+            adjacency[first].get(second) ||
+            unspillable.get(first) ||
+            unspillable.get(second) ||
+            !isConservative(first, second))
+        {
+          continue;
+        }
+        merge(first, second);
+        changed = true;
+      }
+    }
+  }
+
+  /**
+   * Apply the Briggs test to a pair of nodes: the merged node can always be
+   * colored if it has fewer than COLOR_COUNT neighbours of significant degree
+   *
+   * @param first  The first node
+   * @param second The second node
+   * @return T/F if the nodes can be merged safely
+   */
+  private boolean isConservative(final int first, final int second)
+  {
+    BitSet neighbours = (BitSet) adjacency[first].clone();
+    neighbours.or(adjacency[second]);
+
+    int significant = 0;
+    for (int id = neighbours.nextSetBit(0); id >= 0; id = neighbours.nextSetBit(id + 1))
+    {
+      int degree = adjacency[id].cardinality();
+      // A common neighbour loses one edge in the merge
+      if (adjacency[first].get(id) && adjacency[second].get(id))
+      {
+        --degree;
+      }
+      if (degree >= COLOR_COUNT)
+      {
+        ++significant;
+      }
+    }
+    return significant < COLOR_COUNT;
+  }
+
+  /**
+   * Merge one node into another
+   *
+   * @param into The node that remains
+   * @param from The node merged into it
+   */
+  private void merge(final int into, final int from)
+  {
+    alias[from] = into;
+    nodes.clear(from);
+    for (int id = adjacency[from].nextSetBit(0); id >= 0;
+         id = adjacency[from].nextSetBit(id + 1))
+    {
+      adjacency[id].clear(from);
+      addEdge(into, id);
+    }
+    adjacency[from].clear();
+    costs[into] += costs[from];
+    callCrossings[into] += callCrossings[from];
+    if (hints[into] == null)
+    {
+      hints[into] = hints[from];
+    }
+    forbidden[into] |= forbidden[from];
+  }
+
+  /**
+   * Remove the nodes from the graph one at a time
+   *
+   * @return The nodes in the order they were removed
+   */
+  private ArrayList<Integer> simplify()
+  {
+    BitSet remaining = (BitSet) nodes.clone();
+    int[] degree = new int[adjacency.length];
+    for (int id = remaining.nextSetBit(0); id >= 0; id = remaining.nextSetBit(id + 1))
+    {
+      degree[id] = adjacency[id].cardinality();
+    }
+
+    ArrayList<Integer> stack = new ArrayList<>();
+    while (!remaining.isEmpty())
+    {
+      // Any node of low degree can always be colored
+      int chosen = -1;
+      for (int id = remaining.nextSetBit(0); id >= 0; id = remaining.nextSetBit(id + 1))
+      {
+        if (degree[id] < COLOR_COUNT)
+        {
+          chosen = id;
+          break;
+        }
+      }
+
+      // Otherwise remove the cheapest node to spill, in the hope that its
+      // neighbours will not use every color
+      if (chosen < 0)
+      {
+        double best = Double.POSITIVE_INFINITY;
+        for (int id = remaining.nextSetBit(0); id >= 0; id = remaining.nextSetBit(id + 1))
+        {
+          final double cost = unspillable.get(id) ?
+                              Double.POSITIVE_INFINITY : costs[id] / degree[id];
+          if (chosen < 0 || cost < best)
+          {
+            chosen = id;
+            best = cost;
+          }
+        }
+      }
+
+      remaining.clear(chosen);
+      stack.add(chosen);
+      for (int id = adjacency[chosen].nextSetBit(0); id >= 0;
+           id = adjacency[chosen].nextSetBit(id + 1))
+      {
+        --degree[id];
+      }
+    }
+    return stack;
+  }
+
+  /**
+   * Color the nodes in the reverse of the order they were removed
+   *
+   * @param stack The nodes in the order they were removed
+   * @return The nodes that could not be colored
+   */
+  private BitSet select(final ArrayList<Integer> stack)
+  {
+    colors = new Register[adjacency.length];
+    BitSet spilled = new BitSet();
+
+    for (int i = stack.size() - 1; i >= 0; --i)
+    {
+      final int node = stack.get(i);
+
+      int used = forbidden[node];
+      for (int id = adjacency[node].nextSetBit(0); id >= 0;
+           id = adjacency[node].nextSetBit(id + 1))
+      {
+        if (colors[id] != null)
+        {
+          used |= colors[id].getMask();
+        }
+      }
+
+      // Prefer the register the value is passed in, then the register of a
+      // copy that could not be coalesced, so the copy still disappears
+      Register color = null;
+      if (hints[node] != null && (used & hints[node].getMask()) == 0)
+      {
+        color = hints[node];
+      }
+      for (final IRInstruction move : moves)
+      {
+        final int first = find(move.getDest().getId());
+        final int second = find(((VirtualRegister) move.getOperand(0)).getId());
+        final int partner = (first == node) ? second : (second == node) ? first : -1;
+        if (color == null && partner >= 0 && colors[partner] != null &&
+            (used & colors[partner].getMask()) == 0)
+        {
+          color = colors[partner];
+          break;
+        }
+      }
+
+      if (color == null && callCrossings[node] > 1.0)
+      {
+        color = pickColor(SAVED, TEMPORARIES, ARGUMENTS, used);
+      }
+      else if (color == null)
+      {
+        color = pickColor(TEMPORARIES, ARGUMENTS, SAVED, used);
+      }
+
+      if (color == null)
+      {
+        spilled.set(node);
+      }
+      else
+      {
+        colors[node] = color;
+      }
+    }
+    return spilled;
+  }
+
+  /**
+   * Pick the first register that is not in use
+   *
+   * @param first  The registers to try first
+   * @param second The registers to try next
+   * @param third  The registers to try last
+   * @param used   Bitmask of the registers in use
+   * @return A free register, or null if there is none
+   */
+  private static Register pickColor(final Register[] first,
+                                    final Register[] second,
+                                    final Register[] third,
+                                    final int used)
+  {
+    final Register[][] groups = { first, second, third };
+    for (final Register[] group : groups)
+    {
+      for (final Register register : group)
+      {
+        if ((used & register.getMask()) == 0)
+        {
+          return register;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Give every spilled node a stack slot, and replace each of its uses by a
+   * reload into a new register and each of its definitions by a spill from a
+   * new register. Spilled nodes that do not interfere share a slot.
+   *
+   * @param spilled The nodes that could not be colored
+   */
+  private void rewrite(final BitSet spilled)
+  {
+    HashMap<Integer, Integer> slots = new HashMap<>();
+    ArrayList<Integer> slotNumbers = new ArrayList<>();
+    ArrayList<BitSet> slotMembers = new ArrayList<>();
+    for (int id = spilled.nextSetBit(0); id >= 0; id = spilled.nextSetBit(id + 1))
+    {
+      int shared = -1;
+      for (int i = 0; i < slotMembers.size() && shared < 0; ++i)
+      {
+        if (!adjacency[id].intersects(slotMembers.get(i)))
+        {
+          shared = i;
+        }
+      }
+      if (shared < 0)
+      {
+        shared = slotMembers.size();
+        slotNumbers.add(function.newSpillSlot());
+        slotMembers.add(new BitSet());
+      }
+      slotMembers.get(shared).set(id);
+      slots.put(id, slotNumbers.get(shared));
+    }
+
+    for (final BasicBlock block : function.getBlocks())
+    {
+      ArrayList<IRInstruction> rewritten = new ArrayList<>();
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        // Reload each spilled operand once, before the instruction
+        HashMap<VirtualRegister, VirtualRegister> reloaded = new HashMap<>();
+        for (int i = 0; i < instruction.getOperandCount(); ++i)
+        {
+          final Integer slot = getSlot(instruction.getOperand(i), slots);
+          if (slot == null)
+          {
+            continue;
+          }
+          final VirtualRegister original = (VirtualRegister) instruction.getOperand(i);
+          VirtualRegister value = reloaded.get(original);
+          if (value == null)
+          {
+            value = newUnspillable();
+            reloaded.put(original, value);
+            rewritten.add(IRInstruction.reload(value, slot));
+          }
+          instruction.setOperand(i, value);
+        }
+
+        rewritten.add(instruction);
+
+        // Spill the result right after the instruction
+        final Integer slot = getSlot(instruction.getDest(), slots);
+        if (slot != null)
+        {
+          final VirtualRegister value = newUnspillable();
+          instruction.setDest(value);
+          rewritten.add(IRInstruction.spill(value, slot));
+        }
+      }
+      block.getInstructions().clear();
+      block.getInstructions().addAll(rewritten);
+    }
+  }
+
+  /**
+   * Get the spill slot of an operand
+   *
+   * @param operand The operand (may be null)
+   * @param slots   The spill slot of every spilled node
+   * @return The slot, or null if the operand was not spilled
+   */
+  private Integer getSlot(final IROperand operand,
+                          final HashMap<Integer, Integer> slots)
+  {
+    if (!(operand instanceof VirtualRegister) ||
+        !allocatable.get(((VirtualRegister) operand).getId()))
+    {
+      return null;
+    }
+    return slots.get(find(((VirtualRegister) operand).getId()));
+  }
+
+  /**
+   * Create a register holding a spilled value for a single instruction
+   *
+   * @return The new register
+   */
+  private VirtualRegister newUnspillable()
+  {
+    final VirtualRegister register = function.newTemporary();
+    unspillable.set(register.getId());
+    return register;
+  }
+
+  /**
+   * Remove the copies whose source and destination were given the same
+   * register
+   */
+  private void removeRedundantMoves()
+  {
+    for (final BasicBlock block : function.getBlocks())
+    {
+      ArrayList<IRInstruction> instructions = block.getInstructions();
+      for (int i = instructions.size() - 1; i >= 0; --i)
+      {
+        final IRInstruction instruction = instructions.get(i);
+        if (instruction.getOpcode() == IROpcode.COPY &&
+            instruction.getOperand(0) instanceof VirtualRegister &&
+            function.getHome(instruction.getDest()) ==
+                function.getHome((VirtualRegister) instruction.getOperand(0)))
+        {
+          instructions.remove(i);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/**
+ * Class that converts a function into and out of static single assignment
+ * form.
+ *
+ * Only variables need converting (every temporary already has a single
+ * definition that dominates its uses). PHIs are placed on the iterated
+ * dominance frontiers of the blocks defining each variable, and every
+ * definition is then renamed to a fresh version of the variable while walking
+ * the dominator tree.
+ *
+ * The resulting SSA form is conventional: passes that only substitute
+ * constants, fold branches and delete dead code never make two versions of a
+ * variable live at once, so leaving SSA form is a matter of renaming every
+ * version back to its variable and dropping the PHIs.
+ */
+public final class SSAForm
+{
+  /**
+   * The function being converted
+   */
+  private final IRFunction function;
+
+  /**
+   * The dominator tree of the function
+   */
+  private DominatorTree tree;
+
+  /**
+   * The current version of every variable during renaming
+   */
+  private HashMap<VirtualRegister, ArrayList<VirtualRegister>> versions;
+
+  /**
+   * Full constructor for SSAForm
+   *
+   * @param function The function to convert
+   */
+  public SSAForm(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Convert the function into SSA form
+   */
+  public void construct()
+  {
+    function.computeControlFlow();
+    tree = new DominatorTree(function);
+
+    // Find the blocks defining each variable
+    LinkedHashMap<VirtualRegister, ArrayList<BasicBlock>> definitions =
+        new LinkedHashMap<>();
+    for (final BasicBlock block : tree.getReversePostorder())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        final VirtualRegister dest = instruction.getDest();
+        if (dest == null || !dest.isVariable())
+        {
+          continue;
+        }
+        ArrayList<BasicBlock> blocks = definitions.get(dest);
+        if (blocks == null)
+        {
+          blocks = new ArrayList<>();
+          definitions.put(dest, blocks);
+        }
+        if (!blocks.contains(block))
+        {
+          blocks.add(block);
+        }
+      }
+    }
+
+    // Place the PHIs on the iterated dominance frontiers
+    for (final VirtualRegister variable : definitions.keySet())
+    {
+      HashSet<BasicBlock> placed = new HashSet<>();
+      ArrayList<BasicBlock> worklist = new ArrayList<>(definitions.get(variable));
+      HashSet<BasicBlock> queued = new HashSet<>(worklist);
+      while (!worklist.isEmpty())
+      {
+        final BasicBlock block = worklist.remove(worklist.size() - 1);
+        for (final BasicBlock frontier : tree.getFrontier(block))
+        {
+          if (!placed.add(frontier))
+          {
+            continue;
+          }
+          frontier.getInstructions().add(0, IRInstruction.phi(
+              variable, variable, frontier.getPredecessors()));
+          if (queued.add(frontier))
+          {
+            worklist.add(frontier);
+          }
+        }
+      }
+    }
+
+    // Rename the definitions and uses
+    versions = new HashMap<>();
+    rename(function.getEntry());
+    versions = null;
+  }
+
+  /**
+   * Convert the function out of SSA form
+   */
+  public void destruct()
+  {
+    for (final BasicBlock block : function.getBlocks())
+    {
+      ArrayList<IRInstruction> instructions = block.getInstructions();
+      for (int i = instructions.size() - 1; i >= 0; --i)
+      {
+        final IRInstruction instruction = instructions.get(i);
+        if (instruction.getOpcode() == IROpcode.PHI)
+        {
+          instructions.remove(i);
+          continue;
+        }
+        if (instruction.getDest() != null)
+        {
+          instruction.setDest(instruction.getDest().getOriginal());
+        }
+        for (int j = 0; j < instruction.getOperandCount(); ++j)
+        {
+          final IROperand operand = instruction.getOperand(j);
+          if (operand instanceof VirtualRegister)
+          {
+            instruction.setOperand(j, ((VirtualRegister) operand).getOriginal());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Rename the variables of a block and of the blocks it dominates
+   *
+   * @param block The block to rename
+   */
+  private void rename(final BasicBlock block)
+  {
+    ArrayList<VirtualRegister> defined = new ArrayList<>();
+
+    for (final IRInstruction instruction : block.getInstructions())
+    {
+      if (instruction.getOpcode() != IROpcode.PHI)
+      {
+        for (int i = 0; i < instruction.getOperandCount(); ++i)
+        {
+          final IROperand operand = instruction.getOperand(i);
+          if (operand instanceof VirtualRegister &&
+              ((VirtualRegister) operand).isVariable())
+          {
+            instruction.setOperand(i, current((VirtualRegister) operand));
+          }
+        }
+      }
+
+      final VirtualRegister dest = instruction.getDest();
+      if (dest != null && dest.isVariable())
+      {
+        final VirtualRegister version = function.newVersion(dest);
+        instruction.setDest(version);
+        push(dest, version);
+        defined.add(dest);
+      }
+    }
+
+    // Fill in the PHI operands flowing out of this block
+    for (final BasicBlock successor : block.getSuccessors())
+    {
+      for (final IRInstruction phi : successor.getInstructions())
+      {
+        if (phi.getOpcode() != IROpcode.PHI)
+        {
+          break;
+        }
+        final VirtualRegister variable = phi.getDest().getOriginal();
+        for (int i = 0; i < phi.getOperandCount(); ++i)
+        {
+          if (phi.getTargets().get(i) == block)
+          {
+            phi.setOperand(i, current(variable));
+          }
+        }
+      }
+    }
+
+    for (final BasicBlock child : tree.getChildren(block))
+    {
+      rename(child);
+    }
+
+    for (final VirtualRegister variable : defined)
+    {
+      ArrayList<VirtualRegister> stack = versions.get(variable);
+      stack.remove(stack.size() - 1);
+    }
+  }
+
+  /**
+   * Get the current version of a variable
+   *
+   * @param variable The variable
+   * @return The version reaching the current point, or the variable itself if
+   *         no definition reaches it (such as a parameter)
+   */
+  private VirtualRegister current(final VirtualRegister variable)
+  {
+    final ArrayList<VirtualRegister> stack = versions.get(variable.getOriginal());
+    if (stack == null || stack.isEmpty())
+    {
+      return variable.getOriginal();
+    }
+    return stack.get(stack.size() - 1);
+  }
+
+  /**
+   * Make a version the current version of its variable
+   *
+   * @param variable The variable
+   * @param version  The new version
+   */
+  private void push(final VirtualRegister variable, final VirtualRegister version)
+  {
+    ArrayList<VirtualRegister> stack = versions.get(variable);
+    if (stack == null)
+    {
+      stack = new ArrayList<>();
+      versions.put(variable, stack);
+    }
+    stack.add(version);
+  }
+}
@@ -0,0 +1,372 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+
+/**
+ * Strength reduction of multiplications and divisions by constants, and
+ * folding of constant address arithmetic into memory offsets, over a function
+ * in SSA form (run after constant propagation, so that constant operands
+ * are known).
+ *
+ * Multiplications by 2^k, 2^k + 1, 2^k - 1 and by constants with two bits
+ * set become shifts and additions. Signed division by 2^k becomes an
+ * arithmetic shift, after adding 2^k - 1 to negative dividends so the
+ * quotient is still truncated towards zero. Division by any other constant
+ * multiplies by a "magic" reciprocal and keeps the high word (Granlund and
+ * Montgomery; see Hacker's Delight, chapter 10). A negative divisor divides
+ * by its absolute value and negates the quotient.
+ *
+ * A load or store through an address computed by adding a constant to a
+ * register uses that register with the constant added to its offset, which
+ * turns constant array indices into plain displacements.
+ */
+public final class StrengthReduction
+{
+  /**
+   * The function being optimized
+   */
+  private final IRFunction function;
+
+  /**
+   * The instruction defining every register (by register number)
+   */
+  private IRInstruction[] definitions;
+
+  /**
+   * The number of definitions of every variable (by register number of the
+   * original variable)
+   */
+  private int[] definitionCounts;
+
+  /**
+   * The instructions replacing the instruction being reduced
+   */
+  private ArrayList<IRInstruction> replacement;
+
+  /**
+   * Full constructor for StrengthReduction
+   *
+   * @param function The function to optimize (in SSA form)
+   */
+  public StrengthReduction(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Reduce the multiplications and divisions and fold the address offsets
+   *
+   * @return T/F if the function was changed
+   */
+  public boolean run()
+  {
+    definitions = new IRInstruction[function.getRegisterCount()];
+    definitionCounts = new int[function.getRegisterCount()];
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        final VirtualRegister dest = instruction.getDest();
+        if (dest != null)
+        {
+          definitions[dest.getId()] = instruction;
+          ++definitionCounts[dest.getOriginal().getId()];
+        }
+      }
+    }
+
+    boolean changed = false;
+    for (final BasicBlock block : function.getBlocks())
+    {
+      ArrayList<IRInstruction> rewritten = new ArrayList<>();
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        changed |= foldOffset(instruction);
+
+        replacement = new ArrayList<>();
+        if (reduce(instruction))
+        {
+          rewritten.addAll(replacement);
+          changed = true;
+        }
+        else
+        {
+          rewritten.add(instruction);
+        }
+      }
+      block.getInstructions().clear();
+      block.getInstructions().addAll(rewritten);
+    }
+
+    // The address additions folded into offsets may now be unused
+    if (changed)
+    {
+      new DeadCodeElimination(function).run();
+    }
+    return changed;
+  }
+
+  /**
+   * Fold constant additions to the base register of a load or store into
+   * its offset. Leaving SSA form maps every version of a variable back onto
+   * the variable, so the base is only replaced by a variable that is never
+   * redefined (an array parameter or a local array).
+   *
+   * @param instruction The instruction
+   * @return T/F if the instruction was changed
+   */
+  private boolean foldOffset(final IRInstruction instruction)
+  {
+    final int baseIndex;
+    if (instruction.getOpcode() == IROpcode.LOAD)
+    {
+      baseIndex = 0;
+    }
+    else if (instruction.getOpcode() == IROpcode.STORE)
+    {
+      baseIndex = 1;
+    }
+    else
+    {
+      return false;
+    }
+
+    boolean changed = false;
+    while (true)
+    {
+      final VirtualRegister base = (VirtualRegister) instruction.getOperand(baseIndex);
+      final IRInstruction definition = definitions[base.getId()];
+      if (definition == null || definition.getOpcode() != IROpcode.ADD ||
+          !(definition.getOperand(0) instanceof VirtualRegister) ||
+          !(definition.getOperand(1) instanceof Constant))
+      {
+        return changed;
+      }
+      final VirtualRegister address = (VirtualRegister) definition.getOperand(0);
+      if (address.isVariable() &&
+          definitionCounts[address.getOriginal().getId()] > 1)
+      {
+        return changed;
+      }
+      final int offset = ((Constant) instruction.getOperand(baseIndex + 1)).getValue() +
+                         ((Constant) definition.getOperand(1)).getValue();
+      instruction.setOperand(baseIndex, definition.getOperand(0));
+      instruction.setOperand(baseIndex + 1, new Constant(offset));
+      changed = true;
+    }
+  }
+
+  /**
+   * Replace a multiplication or division by a constant with cheaper
+   * instructions (collected in replacement)
+   *
+   * @param instruction The instruction
+   * @return T/F if the instruction was replaced
+   */
+  private boolean reduce(final IRInstruction instruction)
+  {
+    final IROpcode opcode = instruction.getOpcode();
+    if ((opcode != IROpcode.MUL && opcode != IROpcode.DIV) ||
+        instruction.getDest() == null ||
+        !(instruction.getOperand(0) instanceof VirtualRegister) ||
+        !(instruction.getOperand(1) instanceof Constant))
+    {
+      return false;
+    }
+    final VirtualRegister dest = instruction.getDest();
+    final VirtualRegister value = (VirtualRegister) instruction.getOperand(0);
+    final int constant = ((Constant) instruction.getOperand(1)).getValue();
+
+    if (opcode == IROpcode.MUL)
+    {
+      return reduceMultiply(dest, value, constant);
+    }
+    if (constant == 1)
+    {
+      add(IRInstruction.copy(dest, value));
+      return true;
+    }
+    if (constant >= 2)
+    {
+      reduceDivide(dest, value, constant);
+      return true;
+    }
+    if (constant <= -2 && constant != Integer.MIN_VALUE)
+    {
+      final VirtualRegister quotient = function.newTemporary();
+      reduceDivide(quotient, value, -constant);
+      final VirtualRegister zero = function.newTemporary();
+      add(IRInstruction.copy(zero, new Constant(0)));
+      add(new IRInstruction(IROpcode.SUB, dest, zero, quotient));
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Replace a multiplication by a constant with shifts and additions
+   *
+   * @param dest     The register receiving the product
+   * @param value    The register multiplied
+   * @param constant The constant factor
+   * @return T/F if the multiplication could be replaced
+   */
+  private boolean reduceMultiply(final VirtualRegister dest,
+                                 final VirtualRegister value,
+                                 final int constant)
+  {
+    if (constant == 0 || constant == 1)
+    {
+      add(IRInstruction.copy(dest, (constant == 0) ? new Constant(0) : value));
+      return true;
+    }
+    if (constant < 0)
+    {
+      return false;
+    }
+
+    if (Integer.bitCount(constant) == 1)
+    {
+      // x * 2^k = x << k
+      add(new IRInstruction(IROpcode.SLL, dest, value,
+                            new Constant(Integer.numberOfTrailingZeros(constant))));
+      return true;
+    }
+    if (Integer.bitCount(constant - 1) == 1)
+    {
+      // x * (2^k + 1) = (x << k) + x
+      final VirtualRegister shifted = shift(value, constant - 1);
+      add(new IRInstruction(IROpcode.ADD, dest, shifted, value));
+      return true;
+    }
+    if (Integer.bitCount(constant + 1) == 1 && constant != Integer.MAX_VALUE)
+    {
+      // x * (2^k - 1) = (x << k) - x
+      final VirtualRegister shifted = shift(value, constant + 1);
+      add(new IRInstruction(IROpcode.SUB, dest, shifted, value));
+      return true;
+    }
+    if (Integer.bitCount(constant) == 2)
+    {
+      // x * (2^j + 2^k) = (x << j) + (x << k)
+      final int low = Integer.lowestOneBit(constant);
+      final VirtualRegister high = shift(value, constant - low);
+      final VirtualRegister rest = shift(value, low);
+      add(new IRInstruction(IROpcode.ADD, dest, high, rest));
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Replace a signed division by a positive constant (at least 2)
+   *
+   * @param dest     The register receiving the quotient
+   * @param value    The dividend
+   * @param constant The divisor
+   */
+  private void reduceDivide(final VirtualRegister dest,
+                            final VirtualRegister value,
+                            final int constant)
+  {
+    if (Integer.bitCount(constant) == 1)
+    {
+      // Add 2^k - 1 to a negative dividend, so the shift rounds towards zero
+      final int k = Integer.numberOfTrailingZeros(constant);
+      VirtualRegister sign = value;
+      if (k > 1)
+      {
+        sign = function.newTemporary();
+        add(new IRInstruction(IROpcode.SRA, sign, value, new Constant(31)));
+      }
+      final VirtualRegister bias = function.newTemporary();
+      add(new IRInstruction(IROpcode.SRL, bias, sign, new Constant(32 - k)));
+      final VirtualRegister biased = function.newTemporary();
+      add(new IRInstruction(IROpcode.ADD, biased, value, bias));
+      add(new IRInstruction(IROpcode.SRA, dest, biased, new Constant(k)));
+      return;
+    }
+
+    // Multiply by the magic reciprocal and keep the high word
+    final long twoTo31 = 0x80000000L;
+    final long divisor = constant;
+    final long limit = twoTo31 - 1 - twoTo31 % divisor;
+    int power = 31;
+    long q1 = twoTo31 / limit;
+    long r1 = twoTo31 - q1 * limit;
+    long q2 = twoTo31 / divisor;
+    long r2 = twoTo31 - q2 * divisor;
+    long delta;
+    do
+    {
+      ++power;
+      q1 *= 2;
+      r1 *= 2;
+      if (r1 >= limit)
+      {
+        ++q1;
+        r1 -= limit;
+      }
+      q2 *= 2;
+      r2 *= 2;
+      if (r2 >= divisor)
+      {
+        ++q2;
+        r2 -= divisor;
+      }
+      delta = divisor - r2;
+    } while (q1 < delta || (q1 == delta && r1 == 0));
+    final int magic = (int) (q2 + 1);
+    final int shift = power - 32;
+
+    VirtualRegister quotient = function.newTemporary();
+    add(new IRInstruction(IROpcode.MULHI, quotient, value, new Constant(magic)));
+    if (magic < 0)
+    {
+      // The magic number did not fit: add the dividend back once
+      final VirtualRegister corrected = function.newTemporary();
+      add(new IRInstruction(IROpcode.ADD, corrected, quotient, value));
+      quotient = corrected;
+    }
+    if (shift > 0)
+    {
+      final VirtualRegister shifted = function.newTemporary();
+      add(new IRInstruction(IROpcode.SRA, shifted, quotient, new Constant(shift)));
+      quotient = shifted;
+    }
+
+    // Add one for a negative dividend, to round towards zero
+    final VirtualRegister sign = function.newTemporary();
+    add(new IRInstruction(IROpcode.SRL, sign, value, new Constant(31)));
+    add(new IRInstruction(IROpcode.ADD, dest, quotient, sign));
+  }
+
+  /**
+   * Shift a register left by the exponent of a power of two
+   *
+   * @param value The register
+   * @param power The power of two
+   * @return The register holding the shifted value
+   */
+  private VirtualRegister shift(final VirtualRegister value, final int power)
+  {
+    if (power == 1)
+    {
+      return value;
+    }
+    final VirtualRegister shifted = function.newTemporary();
+    add(new IRInstruction(IROpcode.SLL, shifted, value,
+                          new Constant(Integer.numberOfTrailingZeros(power))));
+    return shifted;
+  }
+
+  /**
+   * Add an instruction to the replacement of the instruction being reduced
+   *
+   * @param instruction The instruction
+   */
+  private void add(final IRInstruction instruction)
+  {
+    replacement.add(instruction);
+  }
+}
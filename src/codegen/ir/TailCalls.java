@@ -0,0 +1,189 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+
+/**
+ * Class that turns calls in tail position (a call whose result, if any, is
+ * returned right away) into jumps. The function must not be in SSA form.
+ *
+ * A function calling itself in tail position reassigns its parameters from
+ * the arguments and jumps back to the code following the PARAM instructions,
+ * so the recursion runs as a loop in a single frame. Any other tail call
+ * becomes a TAIL_CALL: the arguments are passed, the frame is popped and the
+ * callee is entered with a plain jump, so it returns straight to our caller.
+ *
+ * Neither is done if the function has local arrays (an argument could point
+ * into the frame being reused or popped) or terminates the program, and
+ * other calls only become tail calls if every argument fits in a register.
+ */
+public final class TailCalls
+{
+  /**
+   * The function being transformed
+   */
+  private final IRFunction function;
+
+  /**
+   * The block following the PARAM instructions (null unless the function
+   * makes a self-recursive tail call)
+   */
+  private BasicBlock start;
+
+  /**
+   * Full constructor for TailCalls
+   *
+   * @param function The function to transform
+   */
+  public TailCalls(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Turn the tail calls of the function into jumps
+   *
+   * @return T/F if the function was changed
+   */
+  public boolean run()
+  {
+    if (function.terminates() || function.getLocalArrayWords() != 0)
+    {
+      return false;
+    }
+
+    // Split the start off the entry block first, in case the entry block
+    // makes a self-recursive call itself
+    for (final BasicBlock block : function.getBlocks())
+    {
+      final IRInstruction call = findTailCall(block);
+      if (call != null && call.getSymbol().equals(function.getName()))
+      {
+        splitStart();
+        break;
+      }
+    }
+
+    boolean changed = false;
+    for (final BasicBlock block : function.getBlocks())
+    {
+      final IRInstruction call = findTailCall(block);
+      if (call == null)
+      {
+        continue;
+      }
+
+      final ArrayList<IRInstruction> instructions = block.getInstructions();
+      if (call.getSymbol().equals(function.getName()))
+      {
+        instructions.subList(instructions.size() - 2,
+                             instructions.size()).clear();
+        reassignParameters(block, call);
+        block.add(IRInstruction.jump(start));
+        changed = true;
+      }
+      else if (call.getOperandCount() <= 4)
+      {
+        instructions.remove(instructions.size() - 1);
+        call.setOpcode(IROpcode.TAIL_CALL);
+        call.setDest(null);
+        changed = true;
+      }
+    }
+
+    if (changed)
+    {
+      function.computeControlFlow();
+    }
+    return changed;
+  }
+
+  /**
+   * Find the call in tail position at the end of a block
+   *
+   * @param block The block in question
+   * @return The CALL instruction, if the block ends by returning its result
+   *         (or by returning nothing), directly or by jumping to a block
+   *         that only returns, otherwise null
+   */
+  private static IRInstruction findTailCall(final BasicBlock block)
+  {
+    final ArrayList<IRInstruction> instructions = block.getInstructions();
+    final int size = instructions.size();
+    if (size < 2)
+    {
+      return null;
+    }
+    final IRInstruction call = instructions.get(size - 2);
+    IRInstruction ret = instructions.get(size - 1);
+    if (ret.getOpcode() == IROpcode.JUMP &&
+        ret.getTargets().get(0).getInstructions().size() == 1)
+    {
+      ret = ret.getTargets().get(0).getInstructions().get(0);
+    }
+    if (call.getOpcode() != IROpcode.CALL ||
+        ret.getOpcode() != IROpcode.RETURN ||
+        (ret.getOperandCount() != 0 &&
+         (call.getDest() == null || ret.getOperand(0) != call.getDest())))
+    {
+      return null;
+    }
+    return call;
+  }
+
+  /**
+   * Assign the arguments of a self-recursive call to the parameters. The
+   * arguments are copied to temporaries first, as they may read parameters
+   * that are reassigned.
+   *
+   * @param block The block making the call
+   * @param call  The CALL instruction
+   */
+  private void reassignParameters(final BasicBlock block,
+                                  final IRInstruction call)
+  {
+    ArrayList<IROperand> arguments = new ArrayList<>();
+    for (int i = 0; i < call.getOperandCount(); ++i)
+    {
+      IROperand argument = call.getOperand(i);
+      if (argument instanceof VirtualRegister)
+      {
+        final VirtualRegister temporary = function.newTemporary();
+        block.add(IRInstruction.copy(temporary, argument));
+        argument = temporary;
+      }
+      arguments.add(argument);
+    }
+
+    for (final IRInstruction instruction : function.getEntry().getInstructions())
+    {
+      if (instruction.getOpcode() == IROpcode.PARAM)
+      {
+        final int index = ((Constant) instruction.getOperand(0)).getValue();
+        block.add(IRInstruction.copy(instruction.getDest(),
+                                     arguments.get(index)));
+      }
+    }
+  }
+
+  /**
+   * Split the block following the PARAM instructions off the entry block
+   * (the block a self-recursive call jumps to)
+   */
+  private void splitStart()
+  {
+    final BasicBlock entry = function.getEntry();
+    final ArrayList<IRInstruction> instructions = entry.getInstructions();
+    int split = 0;
+    while (instructions.get(split).getOpcode() == IROpcode.PARAM)
+    {
+      ++split;
+    }
+
+    start = function.createBlock(function.getName() + "_start");
+    start.getInstructions().addAll(
+        instructions.subList(split, instructions.size()));
+    instructions.subList(split, instructions.size()).clear();
+    entry.add(IRInstruction.jump(start));
+    function.getBlocks().add(1, start);
+  }
+}
@@ -0,0 +1,404 @@
+package codegen.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Dominator-based value numbering over a function in SSA form.
+ *
+ * The blocks are visited in a preorder walk of the dominator tree. A side
+ * effect free computation with the same operation and operands as one in a
+ * dominating block (or earlier in the same block) is redundant: its uses read
+ * the earlier result instead. Commutative operations are matched with their
+ * operands in either order.
+ *
+ * Loads are only matched within an extended basic block (a block and the
+ * chain of blocks it enters that have no other predecessor), since memory may
+ * change along any other path. A store forgets the loads it may overwrite and
+ * makes its value available to later loads of the same word; a call to
+ * anything but input() or output() forgets every load.
+ *
+ * Leaving SSA form maps every version of a variable back onto the variable,
+ * so a result is only reused if it is a temporary or a variable with a
+ * single definition. A redundant computation defining any other variable
+ * becomes a copy of the earlier result.
+ */
+public final class ValueNumbering
+{
+  /**
+   * The function being optimized
+   */
+  private final IRFunction function;
+
+  /**
+   * The dominator tree of the function
+   */
+  private DominatorTree tree;
+
+  /**
+   * Which loads and stores of the function may overlap
+   */
+  private AliasAnalysis aliases;
+
+  /**
+   * The number of definitions of every register (by register number)
+   */
+  private int[] definitionCounts;
+
+  /**
+   * The number of definitions of every variable, over all of its versions
+   * (by register number of the original variable)
+   */
+  private int[] variableDefinitionCounts;
+
+  /**
+   * The earlier result replacing every redundant register (by register
+   * number)
+   */
+  private VirtualRegister[] replacements;
+
+  /**
+   * The available computations, keyed by operation and operands
+   */
+  private HashMap<String, VirtualRegister> available;
+
+  /**
+   * Was any computation found to be redundant?
+   */
+  private boolean changed;
+
+  /**
+   * Full constructor for ValueNumbering
+   *
+   * @param function The function to optimize (in SSA form)
+   */
+  public ValueNumbering(final IRFunction function)
+  {
+    this.function = function;
+  }
+
+  /**
+   * Replace the redundant computations of the function
+   *
+   * @return T/F if the function was changed
+   */
+  public boolean run()
+  {
+    function.computeControlFlow();
+    tree = new DominatorTree(function);
+    aliases = new AliasAnalysis(function);
+    definitionCounts = new int[function.getRegisterCount()];
+    variableDefinitionCounts = new int[function.getRegisterCount()];
+    for (final BasicBlock block : function.getBlocks())
+    {
+      for (final IRInstruction instruction : block.getInstructions())
+      {
+        final VirtualRegister dest = instruction.getDest();
+        if (dest != null)
+        {
+          ++definitionCounts[dest.getId()];
+          ++variableDefinitionCounts[dest.getOriginal().getId()];
+        }
+      }
+    }
+    replacements = new VirtualRegister[function.getRegisterCount()];
+    available = new HashMap<>();
+    changed = false;
+
+    number(function.getEntry(), new ArrayList<AvailableLoad>());
+
+    // Redirect the remaining uses of the redundant registers (PHI operands
+    // may come from blocks visited after the block defining them)
+    if (changed)
+    {
+      for (final BasicBlock block : function.getBlocks())
+      {
+        for (final IRInstruction instruction : block.getInstructions())
+        {
+          for (int i = 0; i < instruction.getOperandCount(); ++i)
+          {
+            instruction.setOperand(i, replace(instruction.getOperand(i)));
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Number the computations of a block and of the blocks it dominates
+   *
+   * @param block The block
+   * @param loads The loads available on entry to the block
+   */
+  private void number(final BasicBlock block,
+                      final ArrayList<AvailableLoad> loads)
+  {
+    ArrayList<String> added = new ArrayList<>();
+    ArrayList<IRInstruction> instructions = block.getInstructions();
+    for (int i = 0; i < instructions.size(); ++i)
+    {
+      final IRInstruction instruction = instructions.get(i);
+      if (instruction.getOpcode() != IROpcode.PHI)
+      {
+        for (int j = 0; j < instruction.getOperandCount(); ++j)
+        {
+          instruction.setOperand(j, replace(instruction.getOperand(j)));
+        }
+      }
+
+      switch (instruction.getOpcode())
+      {
+        case STORE:
+        {
+          store(instruction, loads);
+          continue;
+        }
+        case CALL:
+        {
+          if (AliasAnalysis.mayStore(instruction))
+          {
+            loads.clear();
+          }
+          continue;
+        }
+        default:
+        {
+          break;
+        }
+      }
+
+      final VirtualRegister dest = instruction.getDest();
+      if (!isNumbered(instruction))
+      {
+        continue;
+      }
+
+      // Find an earlier computation of the same value
+      VirtualRegister value = null;
+      String key = null;
+      if (instruction.getOpcode() == IROpcode.LOAD)
+      {
+        value = findLoad(instruction, loads);
+      }
+      else
+      {
+        key = getKey(instruction);
+        value = available.get(key);
+      }
+
+      if (value == null)
+      {
+        if (isReusable(dest))
+        {
+          if (key == null)
+          {
+            loads.add(new AvailableLoad(instruction, dest));
+          }
+          else
+          {
+            available.put(key, dest);
+            added.add(key);
+          }
+        }
+      }
+      else if (isReusable(dest))
+      {
+        replacements[dest.getId()] = value;
+        instructions.remove(i--);
+        changed = true;
+      }
+      else
+      {
+        instructions.set(i, IRInstruction.copy(dest, value));
+        changed = true;
+      }
+    }
+
+    for (final BasicBlock child : tree.getChildren(block))
+    {
+      // The loads stay available in a block only entered from this one
+      final boolean extended = child.getPredecessors().size() == 1 &&
+                               child.getPredecessors().get(0) == block;
+      number(child, extended ? new ArrayList<>(loads) :
+                               new ArrayList<AvailableLoad>());
+    }
+
+    for (final String key : added)
+    {
+      available.remove(key);
+    }
+  }
+
+  /**
+   * Determine if an instruction computes a value that can be numbered
+   *
+   * @param instruction The instruction
+   * @return T/F if the instruction is a side-effect free computation whose
+   *         result only depends on its operands (or on memory, for a load),
+   *         and every operand has a single definition
+   */
+  private boolean isNumbered(final IRInstruction instruction)
+  {
+    for (final VirtualRegister use : instruction.getUses())
+    {
+      if (definitionCounts[use.getId()] != 1)
+      {
+        return false;
+      }
+    }
+
+    switch (instruction.getOpcode())
+    {
+      case PHI:
+      case PARAM:
+      case RELOAD:
+      {
+        return false;
+      }
+      case COPY:
+      {
+        // A constant is cheaper to load again than to keep in a register
+        return !(instruction.getOperand(0) instanceof Constant);
+      }
+      default:
+      {
+        return instruction.getDest() != null &&
+               instruction.getOpcode().isPure();
+      }
+    }
+  }
+
+  /**
+   * Determine if a register can stand in for a redundant computation
+   *
+   * @param register The register
+   * @return T/F if the register is a temporary or a variable with a single
+   *         definition
+   */
+  private boolean isReusable(final VirtualRegister register)
+  {
+    return variableDefinitionCounts[register.getOriginal().getId()] == 1;
+  }
+
+  /**
+   * Build the key identifying the value an instruction computes
+   *
+   * @param instruction The instruction
+   * @return The key (equal for instructions computing the same value)
+   */
+  private static String getKey(final IRInstruction instruction)
+  {
+    final IROpcode opcode = instruction.getOpcode();
+    ArrayList<String> operands = new ArrayList<>();
+    for (int i = 0; i < instruction.getOperandCount(); ++i)
+    {
+      operands.add(getKey(instruction.getOperand(i)));
+    }
+    if ((opcode == IROpcode.ADD || opcode == IROpcode.MUL ||
+         opcode == IROpcode.MULHI) &&
+        operands.get(0).compareTo(operands.get(1)) > 0)
+    {
+      operands.add(operands.remove(0));
+    }
+
+    StringBuilder key = new StringBuilder(opcode.getText());
+    if (instruction.getCondition() != null)
+    {
+      key.append(' ').append(instruction.getCondition());
+    }
+    if (instruction.getSymbol() != null)
+    {
+      key.append(' ').append(instruction.getSymbol());
+    }
+    for (final String operand : operands)
+    {
+      key.append(' ').append(operand);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Build the key identifying an operand
+   *
+   * @param operand The operand
+   * @return The register number, or the value of a constant
+   */
+  private static String getKey(final IROperand operand)
+  {
+    if (operand instanceof VirtualRegister)
+    {
+      return "r" + ((VirtualRegister) operand).getId();
+    }
+    return "#" + ((Constant) operand).getValue();
+  }
+
+  /**
+   * Find an available load of the word a load reads
+   *
+   * @param load  The LOAD instruction
+   * @param loads The available loads
+   * @return The register holding the word, or null if there is none
+   */
+  private static VirtualRegister findLoad(final IRInstruction load,
+                                          final ArrayList<AvailableLoad> loads)
+  {
+    final IROperand base = load.getOperand(0);
+    final int offset = ((Constant) load.getOperand(1)).getValue();
+    for (final AvailableLoad available : loads)
+    {
+      if (available.getBase() == base && available.getOffset() == offset)
+      {
+        return available.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Forget the loads a store may overwrite, and make the stored value
+   * available
+   *
+   * @param store The STORE instruction
+   * @param loads The available loads
+   */
+  private void store(final IRInstruction store,
+                     final ArrayList<AvailableLoad> loads)
+  {
+    final VirtualRegister base = (VirtualRegister) store.getOperand(1);
+    final int offset = ((Constant) store.getOperand(2)).getValue();
+    for (int i = loads.size() - 1; i >= 0; --i)
+    {
+      final AvailableLoad load = loads.get(i);
+      if (aliases.mayAlias(load.getBase(), load.getOffset(), base, offset))
+      {
+        loads.remove(i);
+      }
+    }
+
+    final IROperand value = store.getOperand(0);
+    if (value instanceof VirtualRegister && isReusable((VirtualRegister) value))
+    {
+      loads.add(new AvailableLoad(store, (VirtualRegister) value));
+    }
+  }
+
+  /**
+   * Get the register that replaces a redundant register
+   *
+   * @param operand The operand
+   * @return The earlier result if the operand is redundant, otherwise the
+   *         operand
+   */
+  private IROperand replace(final IROperand operand)
+  {
+    IROperand replaced = operand;
+    while (replaced instanceof VirtualRegister &&
+           ((VirtualRegister) replaced).getId() < replacements.length &&
+           replacements[((VirtualRegister) replaced).getId()] != null)
+    {
+      replaced = replacements[((VirtualRegister) replaced).getId()];
+    }
+    return replaced;
+  }
+}
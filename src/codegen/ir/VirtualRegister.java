@@ -0,0 +1,115 @@
+package codegen.ir;
+
+/**
+ * A virtual register of the IR. Every function has an unlimited number of
+ * virtual registers; they are mapped onto MIPS registers by instruction
+ * selection. A virtual register either holds a source-level variable (a
+ * parameter or a local) or a compiler generated temporary.
+ *
+ * Virtual registers are compared by identity and are numbered densely within
+ * their function, so the number can be used to index arrays and bit sets.
+ */
+public final class VirtualRegister implements IROperand
+{
+  /**
+   * The number of the register within its function
+   */
+  private final int id;
+
+  /**
+   * The name of the variable held by the register (null for a temporary)
+   */
+  private final String name;
+
+  /**
+   * The variable this register is an SSA version of (this register itself if
+   * it is not a version)
+   */
+  private final VirtualRegister original;
+
+  /**
+   * Full constructor for a VirtualRegister
+   *
+   * @param id   The number of the register within its function
+   * @param name The name of the variable, or null for a temporary
+   */
+  VirtualRegister(final int id, final String name)
+  {
+    this.id = id;
+    this.name = name;
+    this.original = this;
+  }
+
+  /**
+   * Constructor for an SSA version of a variable
+   *
+   * @param id       The number of the register within its function
+   * @param original The variable the register is a version of
+   */
+  VirtualRegister(final int id, final VirtualRegister original)
+  {
+    this.id = id;
+    this.name = original.name;
+    this.original = original;
+  }
+
+  /**
+   * Get the number of the register within its function
+   *
+   * @return The register number
+   */
+  public int getId()
+  {
+    return id;
+  }
+
+  /**
+   * Get the name of the variable held by the register
+   *
+   * @return The variable name, or null for a temporary
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Determine if the register holds a source-level variable
+   *
+   * @return T/F if the register holds a variable
+   */
+  public boolean isVariable()
+  {
+    return name != null;
+  }
+
+  /**
+   * Get the variable this register is an SSA version of
+   *
+   * @return The original variable, or this register if it is not a version
+   */
+  public VirtualRegister getOriginal()
+  {
+    return original;
+  }
+
+  /**
+   * Determine if the register is an SSA version of a variable
+   *
+   * @return T/F if the register is a version
+   */
+  public boolean isVersion()
+  {
+    return original != this;
+  }
+
+  @Override
+  public String toString()
+  {
+    if (name == null)
+    {
+      return "%t" + id;
+    }
+    return isVersion() ? "%" + name + "." + id : "%" + name;
+  }
+}
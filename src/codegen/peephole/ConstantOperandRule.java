@@ -0,0 +1,191 @@
+package codegen.peephole;
+
+import codegen.instruction.Immediate;
+import codegen.instruction.Instruction;
+import codegen.instruction.Opcode;
+import codegen.instruction.Operand;
+import codegen.instruction.Register;
+
+import java.util.ArrayList;
+
+/**
+ * Rule folding a constant into the instruction that consumes it. A constant
+ * loaded into a register that the very next instruction reads and then
+ * overwrites becomes an immediate operand of that instruction, and two
+ * consecutive constant additions to the same register are combined.
+ */
+final class ConstantOperandRule implements PeepholeRule
+{
+  /**
+   * The smallest value an addi immediate can hold
+   */
+  private static final int MINIMUM_IMMEDIATE = -32768;
+
+  /**
+   * The largest value an addi immediate can hold
+   */
+  private static final int MAXIMUM_IMMEDIATE = 32767;
+
+  @Override
+  public String getName()
+  {
+    return "constant operand";
+  }
+
+  @Override
+  public boolean apply(final ArrayList<Instruction> instructions, final int index)
+  {
+    final Instruction first = Patterns.get(instructions, index);
+    final Instruction second = Patterns.get(instructions, index + 1);
+    if (first == null || second == null)
+    {
+      return false;
+    }
+
+    final Opcode opcode = second.getOpcode();
+    if (Patterns.isLoadImmediate(first))
+    {
+      final Register register = (Register) first.getOperand(0);
+      final int value = Patterns.getValue(first.getOperand(1));
+
+      // li r, c1 ; addi r, r, c2  ->  li r, c1 + c2
+      if (opcode == Opcode.ADDI && second.getOperand(0) == register &&
+          second.getOperand(1) == register)
+      {
+        Patterns.replace(instructions, index + 1, Opcode.LI, register,
+                         new Immediate(value + Patterns.getValue(second.getOperand(2))));
+        instructions.remove(index);
+        return true;
+      }
+
+      if (!acceptsImmediate(opcode) || second.getOperand(0) != register)
+      {
+        return false;
+      }
+      final Operand lhs = second.getOperand(1);
+      final Operand rhs = second.getOperand(2);
+
+      // li r, c ; op r, a, r  ->  op r, a, c
+      if (rhs == register && lhs instanceof Register && lhs != register)
+      {
+        return fold(instructions, index, opcode, register, lhs, value);
+      }
+
+      // li r, c ; op r, r, b  ->  op' r, b, c (op' is op with its operands
+      // swapped)
+      final Opcode swapped = getSwapped(opcode);
+      if (lhs == register && rhs instanceof Register && rhs != register &&
+          swapped != null)
+      {
+        return fold(instructions, index, swapped, register, rhs, value);
+      }
+      return false;
+    }
+
+    // addi r, a, c1 ; addi r, r, c2  ->  addi r, a, c1 + c2
+    if (first.getOpcode() == Opcode.ADDI && opcode == Opcode.ADDI &&
+        second.getOperand(0) == first.getOperand(0) &&
+        second.getOperand(1) == first.getOperand(0))
+    {
+      final int sum = Patterns.getValue(first.getOperand(2)) +
+                      Patterns.getValue(second.getOperand(2));
+      if (sum < MINIMUM_IMMEDIATE || sum > MAXIMUM_IMMEDIATE)
+      {
+        return false;
+      }
+      Patterns.replace(instructions, index + 1, Opcode.ADDI,
+                       first.getOperand(0), first.getOperand(1), new Immediate(sum));
+      instructions.remove(index);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Replace a load immediate and the instruction consuming it
+   *
+   * @param instructions The instruction list
+   * @param index        The position of the load immediate
+   * @param opcode       The operation of the consuming instruction
+   * @param dest         The destination of both instructions
+   * @param source       The register operand of the consuming instruction
+   * @param value        The loaded constant
+   * @return T/F if the instructions were rewritten
+   */
+  private static boolean fold(final ArrayList<Instruction> instructions,
+                              final int index,
+                              final Opcode opcode,
+                              final Register dest,
+                              final Operand source,
+                              final int value)
+  {
+    Opcode folded = opcode;
+    int immediate = value;
+    if (opcode == Opcode.ADD || opcode == Opcode.SUB)
+    {
+      // Additions are written as addi, which only takes 16 bits
+      immediate = (opcode == Opcode.SUB) ? -value : value;
+      if (immediate < MINIMUM_IMMEDIATE || immediate > MAXIMUM_IMMEDIATE)
+      {
+        return false;
+      }
+      folded = Opcode.ADDI;
+    }
+    Patterns.replace(instructions, index + 1, folded, dest, source,
+                     new Immediate(immediate));
+    instructions.remove(index);
+    return true;
+  }
+
+  /**
+   * Determine if an operation can take an immediate as its last operand
+   *
+   * @param opcode The operation
+   * @return T/F if the operation accepts an immediate
+   */
+  private static boolean acceptsImmediate(final Opcode opcode)
+  {
+    switch (opcode)
+    {
+      case ADD:
+      case SUB:
+      case MUL:
+      case DIV:
+      case SEQ:
+      case SNE:
+      case SLT:
+      case SLE:
+      case SGT:
+      case SGE:
+      {
+        return true;
+      }
+      default:
+      {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Get the operation computing the same result with its operands swapped
+   *
+   * @param opcode The operation
+   * @return The swapped operation, or null if there is none
+   */
+  private static Opcode getSwapped(final Opcode opcode)
+  {
+    switch (opcode)
+    {
+      case ADD: return Opcode.ADD;
+      case MUL: return Opcode.MUL;
+      case SEQ: return Opcode.SEQ;
+      case SNE: return Opcode.SNE;
+      case SLT: return Opcode.SGT;
+      case SLE: return Opcode.SGE;
+      case SGT: return Opcode.SLT;
+      case SGE: return Opcode.SLE;
+      default:  return null;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package codegen.peephole;
+
+import codegen.instruction.Instruction;
+import codegen.instruction.Opcode;
+import codegen.instruction.Operand;
+
+import java.util.ArrayList;
+
+/**
+ * Rule removing jumps and branches to the label that directly follows them
+ * (along with the no-op in the delay slot of a branch).
+ */
+final class JumpToNextRule implements PeepholeRule
+{
+  @Override
+  public String getName()
+  {
+    return "jump to next";
+  }
+
+  @Override
+  public boolean apply(final ArrayList<Instruction> instructions, final int index)
+  {
+    final Instruction jump = Patterns.get(instructions, index);
+    if (jump == null ||
+        (jump.getOpcode() != Opcode.J && !jump.getOpcode().isBranch()))
+    {
+      return false;
+    }
+    final Operand target = jump.getOperand(jump.getOperandCount() - 1);
+
+    int length = 1;
+    final Instruction next = Patterns.get(instructions, index + 1);
+    if (jump.getOpcode().isBranch() && next != null &&
+        next.getOpcode() == Opcode.NOP)
+    {
+      ++length;
+    }
+
+    // Look for the target among the labels that directly follow
+    for (int i = index + length; i < instructions.size(); ++i)
+    {
+      final Instruction label = instructions.get(i);
+      if (label.getOpcode() != Opcode.LABEL &&
+          label.getOpcode() != Opcode.SEPARATOR)
+      {
+        return false;
+      }
+      if (label.getOpcode() == Opcode.LABEL && label.getOperand(0).equals(target))
+      {
+        for (int j = 0; j < length; ++j)
+        {
+          instructions.remove(index);
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+}
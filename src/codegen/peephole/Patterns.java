@@ -0,0 +1,100 @@
+package codegen.peephole;
+
+import codegen.instruction.Immediate;
+import codegen.instruction.Instruction;
+import codegen.instruction.Opcode;
+import codegen.instruction.Operand;
+import codegen.instruction.Register;
+
+import java.util.ArrayList;
+
+/**
+ * Helpers shared by the peephole rules for recognizing instructions
+ */
+final class Patterns
+{
+  /** Private constructor. Should not be used */
+  private Patterns() {}
+
+  /**
+   * Determine if an instruction copies one register into another (either a
+   * move or an add of $0)
+   *
+   * @param instruction The instruction
+   * @return T/F if the instruction is a register copy
+   */
+  static boolean isMove(final Instruction instruction)
+  {
+    if (instruction.getOpcode() == Opcode.MOVE)
+    {
+      return instruction.getOperand(1) instanceof Register;
+    }
+    return instruction.getOpcode() == Opcode.ADD &&
+           instruction.getOperand(1) instanceof Register &&
+           instruction.getOperand(2) == Register.ZERO;
+  }
+
+  /**
+   * Determine if an instruction loads a constant into a register
+   *
+   * @param instruction The instruction
+   * @return T/F if the instruction is a load immediate
+   */
+  static boolean isLoadImmediate(final Instruction instruction)
+  {
+    return instruction.getOpcode() == Opcode.LI &&
+           instruction.getOperand(1) instanceof Immediate;
+  }
+
+  /**
+   * Get the value of an immediate operand
+   *
+   * @param operand The operand (must be an Immediate)
+   * @return The value
+   */
+  static int getValue(final Operand operand)
+  {
+    return ((Immediate) operand).getValue();
+  }
+
+  /**
+   * Get the instruction at a position, if it is an executable instruction
+   *
+   * @param instructions The instruction list
+   * @param index        The position
+   * @return The instruction, or null if the position is past the end or holds
+   *         a label, directive or separator
+   */
+  static Instruction get(final ArrayList<Instruction> instructions,
+                         final int index)
+  {
+    if (index < 0 || index >= instructions.size())
+    {
+      return null;
+    }
+    final Instruction instruction = instructions.get(index);
+    return instruction.getOpcode().isStructure() ? null : instruction;
+  }
+
+  /**
+   * Replace an instruction, keeping its comment
+   *
+   * @param instructions The instruction list
+   * @param index        The position of the instruction to replace
+   * @param opcode       The new operation
+   * @param operands     The new operands
+   */
+  static void replace(final ArrayList<Instruction> instructions,
+                      final int index,
+                      final Opcode opcode,
+                      final Operand... operands)
+  {
+    final Instruction old = instructions.get(index);
+    Instruction instruction = new Instruction(opcode, operands);
+    if (old.getComment() != null)
+    {
+      instruction.withComment(old.getCommentPadding(), old.getComment());
+    }
+    instructions.set(index, instruction);
+  }
+}
@@ -0,0 +1,105 @@
+package codegen.peephole;
+
+import codegen.instruction.Instruction;
+
+import java.util.ArrayList;
+
+/**
+ * Class that runs a set of peephole rules over an instruction list.
+ *
+ * Every rule is tried at every position of the list, and the whole list is
+ * scanned again until no rule applies anywhere (a rewrite often exposes
+ * another one). The number of instructions each rule removed is recorded.
+ */
+public final class PeepholeOptimizer
+{
+  /**
+   * The rules, in the order they are tried
+   */
+  private final ArrayList<PeepholeRule> rules;
+
+  /**
+   * The number of instructions removed by every rule (parallel to rules)
+   */
+  private final ArrayList<Integer> removed;
+
+  /**
+   * Constructor for a PeepholeOptimizer without any rules
+   */
+  public PeepholeOptimizer()
+  {
+    rules = new ArrayList<>();
+    removed = new ArrayList<>();
+  }
+
+  /**
+   * Create a PeepholeOptimizer with the standard rules
+   *
+   * @return The optimizer
+   */
+  public static PeepholeOptimizer createDefault()
+  {
+    PeepholeOptimizer optimizer = new PeepholeOptimizer();
+    optimizer.addRule(new RedundantMoveRule());
+    optimizer.addRule(new ConstantOperandRule());
+    optimizer.addRule(new StackTrafficRule());
+    optimizer.addRule(new JumpToNextRule());
+    optimizer.addRule(new RedundantNopRule());
+    return optimizer;
+  }
+
+  /**
+   * Add a rule (tried after the rules added before it)
+   *
+   * @param rule The rule
+   */
+  public void addRule(final PeepholeRule rule)
+  {
+    rules.add(rule);
+    removed.add(0);
+  }
+
+  /**
+   * Rewrite an instruction list until no rule applies
+   *
+   * @param instructions The instruction list (rewritten in place)
+   */
+  public void optimize(final ArrayList<Instruction> instructions)
+  {
+    boolean changed = true;
+    while (changed)
+    {
+      changed = false;
+      for (int i = 0; i < instructions.size(); ++i)
+      {
+        for (int r = 0; r < rules.size() && i < instructions.size(); ++r)
+        {
+          final int before = instructions.size();
+          if (rules.get(r).apply(instructions, i))
+          {
+            removed.set(r, removed.get(r) + before - instructions.size());
+            changed = true;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the number of instructions removed by every rule so far
+   *
+   * @return One line per rule ("name: count")
+   */
+  public ArrayList<String> getStatistics()
+  {
+    ArrayList<String> lines = new ArrayList<>();
+    int total = 0;
+    for (int r = 0; r < rules.size(); ++r)
+    {
+      lines.add(String.format("%-20s: %d", rules.get(r).getName(), removed.get(r)));
+      total += removed.get(r);
+    }
+    lines.add(String.format("%-20s: %d", "total", total));
+    return lines;
+  }
+}
@@ -0,0 +1,31 @@
+package codegen.peephole;
+
+import codegen.instruction.Instruction;
+
+import java.util.ArrayList;
+
+/**
+ * A rewrite of a short run of MIPS instructions into a cheaper one.
+ *
+ * A rule only ever looks at the instructions starting at the given position
+ * (its window). Labels, directives and separators are never part of a match,
+ * so a rule never rewrites across a point other code can jump to.
+ */
+public interface PeepholeRule
+{
+  /**
+   * Get the name of the rule (used in the statistics)
+   *
+   * @return The name
+   */
+  String getName();
+
+  /**
+   * Try to apply the rule to the instructions starting at a position
+   *
+   * @param instructions The instruction list (rewritten in place)
+   * @param index        The position of the first instruction of the window
+   * @return T/F if the instructions were rewritten
+   */
+  boolean apply(ArrayList<Instruction> instructions, int index);
+}
@@ -0,0 +1,51 @@
+package codegen.peephole;
+
+import codegen.instruction.Instruction;
+import codegen.instruction.Opcode;
+
+import java.util.ArrayList;
+
+/**
+ * Rule removing copies that do not change anything: a register copied into
+ * itself, an add of 0 to the same register, and a copy straight back into
+ * the register that was just copied ( move a, b ; move b, a ).
+ */
+final class RedundantMoveRule implements PeepholeRule
+{
+  @Override
+  public String getName()
+  {
+    return "redundant move";
+  }
+
+  @Override
+  public boolean apply(final ArrayList<Instruction> instructions, final int index)
+  {
+    final Instruction first = Patterns.get(instructions, index);
+    if (first == null)
+    {
+      return false;
+    }
+
+    // move a, a  /  addi a, a, 0
+    if ((Patterns.isMove(first) && first.getOperand(0) == first.getOperand(1)) ||
+        (first.getOpcode() == Opcode.ADDI &&
+         first.getOperand(0) == first.getOperand(1) &&
+         Patterns.getValue(first.getOperand(2)) == 0))
+    {
+      instructions.remove(index);
+      return true;
+    }
+
+    // move a, b ; move b, a
+    final Instruction second = Patterns.get(instructions, index + 1);
+    if (second != null && Patterns.isMove(first) && Patterns.isMove(second) &&
+        first.getOperand(0) == second.getOperand(1) &&
+        first.getOperand(1) == second.getOperand(0))
+    {
+      instructions.remove(index + 1);
+      return true;
+    }
+    return false;
+  }
+}
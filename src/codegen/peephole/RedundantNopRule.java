@@ -0,0 +1,42 @@
+package codegen.peephole;
+
+import codegen.instruction.Instruction;
+import codegen.instruction.Opcode;
+import globals.CompilerFlags;
+
+import java.util.ArrayList;
+
+/**
+ * Rule removing no-ops. When the target has branch delay slots (see
+ * CompilerFlags.DelaySlots), the no-op filling the delay slot of a branch,
+ * jump or call is kept.
+ */
+final class RedundantNopRule implements PeepholeRule
+{
+  @Override
+  public String getName()
+  {
+    return "redundant nop";
+  }
+
+  @Override
+  public boolean apply(final ArrayList<Instruction> instructions, final int index)
+  {
+    final Instruction nop = Patterns.get(instructions, index);
+    if (nop == null || nop.getOpcode() != Opcode.NOP)
+    {
+      return false;
+    }
+    final Instruction previous = Patterns.get(instructions, index - 1);
+    if (CompilerFlags.DelaySlots && previous != null &&
+        (previous.getOpcode().isBranch() ||
+         previous.getOpcode() == Opcode.J ||
+         previous.getOpcode() == Opcode.JR ||
+         previous.getOpcode() == Opcode.JAL))
+    {
+      return false;
+    }
+    instructions.remove(index);
+    return true;
+  }
+}
@@ -0,0 +1,65 @@
+package codegen.peephole;
+
+import codegen.instruction.Address;
+import codegen.instruction.Instruction;
+import codegen.instruction.Opcode;
+
+import java.util.ArrayList;
+
+/**
+ * Rule removing memory traffic that has no effect: a load of the word just
+ * stored from the same register, a store of the word just loaded, and a
+ * store overwritten by the next instruction.
+ */
+final class StackTrafficRule implements PeepholeRule
+{
+  @Override
+  public String getName()
+  {
+    return "stack traffic";
+  }
+
+  @Override
+  public boolean apply(final ArrayList<Instruction> instructions, final int index)
+  {
+    final Instruction first = Patterns.get(instructions, index);
+    final Instruction second = Patterns.get(instructions, index + 1);
+    if (first == null || second == null ||
+        (first.getOpcode() != Opcode.SW && first.getOpcode() != Opcode.LW) ||
+        (second.getOpcode() != Opcode.SW && second.getOpcode() != Opcode.LW))
+    {
+      return false;
+    }
+    final Address firstAddress = (Address) first.getOperand(1);
+    final Address secondAddress = (Address) second.getOperand(1);
+    if (!firstAddress.equals(secondAddress))
+    {
+      return false;
+    }
+
+    // sw r, x ; lw r, x
+    if (first.getOpcode() == Opcode.SW && second.getOpcode() == Opcode.LW &&
+        first.getOperand(0) == second.getOperand(0))
+    {
+      instructions.remove(index + 1);
+      return true;
+    }
+
+    // lw r, x ; sw r, x (the load must not have changed the base)
+    if (first.getOpcode() == Opcode.LW && second.getOpcode() == Opcode.SW &&
+        first.getOperand(0) == second.getOperand(0) &&
+        firstAddress.getBase() != first.getOperand(0))
+    {
+      instructions.remove(index + 1);
+      return true;
+    }
+
+    // sw r, x ; sw s, x
+    if (first.getOpcode() == Opcode.SW && second.getOpcode() == Opcode.SW)
+    {
+      instructions.remove(index);
+      return true;
+    }
+    return false;
+  }
+}
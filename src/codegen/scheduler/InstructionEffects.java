@@ -0,0 +1,164 @@
+package codegen.scheduler;
+
+import codegen.instruction.Address;
+import codegen.instruction.Instruction;
+import codegen.instruction.Opcode;
+import codegen.instruction.Operand;
+import codegen.instruction.Register;
+
+/**
+ * The registers and memory a single MIPS instruction reads and writes, as
+ * far as the instruction scheduler is concerned
+ */
+final class InstructionEffects
+{
+  /**
+   * Bitmask of the registers written by the instruction
+   */
+  private int defs;
+
+  /**
+   * Bitmask of the registers read by the instruction
+   */
+  private int uses;
+
+  /**
+   * Does the instruction read memory?
+   */
+  private boolean readsMemory;
+
+  /**
+   * Does the instruction write memory?
+   */
+  private boolean writesMemory;
+
+  /**
+   * Does the instruction write the HI/LO registers? (mul and div are
+   * assembled through them as well)
+   */
+  private boolean writesHiLo;
+
+  /**
+   * Does the instruction read the HI/LO registers?
+   */
+  private boolean readsHiLo;
+
+  /**
+   * The memory address accessed by the instruction (null if none)
+   */
+  private Address address;
+
+  /**
+   * Full constructor for the InstructionEffects
+   *
+   * @param instruction The instruction
+   */
+  InstructionEffects(final Instruction instruction)
+  {
+    defs = 0;
+    uses = 0;
+    readsMemory = false;
+    writesMemory = false;
+    writesHiLo = false;
+    readsHiLo = false;
+    address = null;
+
+    final Opcode opcode = instruction.getOpcode();
+    int first = 0;
+    switch (opcode)
+    {
+      case SW:
+      case MULT:
+      case J:
+      case JR:
+      case NOP:
+      {
+        // Every operand is read
+        break;
+      }
+      case JAL:
+      {
+        defs = Register.RA.getMask();
+        break;
+      }
+      default:
+      {
+        if (opcode.isBranch())
+        {
+          break;
+        }
+
+        // The first operand is the destination
+        defs = ((Register) instruction.getOperand(0)).getMask();
+        first = 1;
+        break;
+      }
+    }
+    for (int i = first; i < instruction.getOperandCount(); ++i)
+    {
+      addUse(instruction.getOperand(i));
+    }
+
+    readsMemory = opcode == Opcode.LW;
+    writesMemory = opcode == Opcode.SW;
+    writesHiLo = opcode == Opcode.MULT || opcode == Opcode.MUL ||
+                 opcode == Opcode.DIV;
+    readsHiLo = opcode == Opcode.MFHI;
+    defs &= ~Register.ZERO.getMask();
+    uses &= ~Register.ZERO.getMask();
+  }
+
+  /**
+   * Record the registers an operand reads
+   *
+   * @param operand The operand
+   */
+  private void addUse(final Operand operand)
+  {
+    if (operand instanceof Register)
+    {
+      uses |= ((Register) operand).getMask();
+    }
+    else if (operand instanceof Address)
+    {
+      address = (Address) operand;
+      uses |= address.getBase().getMask();
+    }
+  }
+
+  int     getDefs()         { return defs;         }
+  int     getUses()         { return uses;         }
+  boolean readsMemory()     { return readsMemory;  }
+  boolean writesMemory()    { return writesMemory; }
+
+  /**
+   * Determine if this instruction has to stay on the same side of a later
+   * one. Two accesses through the same base register at different offsets
+   * never overlap: if the base changed between them, the instruction
+   * changing it already keeps them in order.
+   *
+   * @param later The effects of the later instruction
+   * @return T/F if the two instructions must not be reordered
+   */
+  boolean conflictsWith(final InstructionEffects later)
+  {
+    if ((defs & later.uses) != 0 || (uses & later.defs) != 0 ||
+        (defs & later.defs) != 0)
+    {
+      return true;
+    }
+    if ((writesHiLo && (later.readsHiLo || later.writesHiLo)) ||
+        (readsHiLo && later.writesHiLo))
+    {
+      return true;
+    }
+    if (!(writesMemory && (later.readsMemory || later.writesMemory)) &&
+        !(readsMemory && later.writesMemory))
+    {
+      return false;
+    }
+    return address == null || later.address == null ||
+           address.getBase() != later.address.getBase() ||
+           address.getOffset() == later.address.getOffset();
+  }
+}
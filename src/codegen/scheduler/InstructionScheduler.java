@@ -0,0 +1,410 @@
+package codegen.scheduler;
+
+import codegen.instruction.Address;
+import codegen.instruction.Immediate;
+import codegen.instruction.Instruction;
+import codegen.instruction.Opcode;
+import codegen.instruction.Operand;
+import codegen.instruction.Register;
+
+import java.util.ArrayList;
+
+/**
+ * Class that schedules the emitted MIPS instructions for a pipelined target
+ * with branch delay slots.
+ *
+ * The instruction list is cut into regions at labels, system calls and
+ * control transfers. Within a region the instructions are reordered by list
+ * scheduling: an instruction becomes ready once every instruction it depends
+ * on has been placed, a load's result is only available one cycle later, and
+ * among the ready instructions the one heading the longest chain of
+ * dependences goes first. The instruction after every branch, jump and call
+ * (its delay slot) is always executed, so each control transfer is followed
+ * by the last instruction of its region that it does not depend on, or by a
+ * nop if there is none. Only native instructions fill a delay slot: an
+ * assembler macro expands to several machine words, and only the first
+ * would run in the slot.
+ *
+ * The scheduled code is only correct on a machine with delay slots, so the
+ * pass is opt-in (see CompilerFlags.DelaySlots).
+ */
+public final class InstructionScheduler
+{
+  /**
+   * The number of cycles until the result of a load can be used
+   */
+  private static final int LOAD_LATENCY = 2;
+
+  /**
+   * The number of delay slots filled with a useful instruction so far
+   */
+  private int filledSlots;
+
+  /**
+   * The number of delay slots that had to be filled with a nop so far
+   */
+  private int emptySlots;
+
+  /**
+   * Constructor for the InstructionScheduler
+   */
+  public InstructionScheduler()
+  {
+    filledSlots = 0;
+    emptySlots = 0;
+  }
+
+  public int getFilledSlots() { return filledSlots; }
+  public int getEmptySlots()  { return emptySlots;  }
+
+  /**
+   * Schedule an instruction list
+   *
+   * @param instructions The instruction list (rewritten in place)
+   */
+  public void schedule(final ArrayList<Instruction> instructions)
+  {
+    ArrayList<Instruction> result = new ArrayList<>();
+    ArrayList<Instruction> region = new ArrayList<>();
+    for (final Instruction instruction : instructions)
+    {
+      final Opcode opcode = instruction.getOpcode();
+      if (opcode == Opcode.NOP)
+      {
+        // The delay slots are filled again below
+        continue;
+      }
+      if (opcode.isStructure() || opcode == Opcode.SYSCALL)
+      {
+        scheduleRegion(region, null, result);
+        result.add(instruction);
+      }
+      else if (isControlTransfer(opcode))
+      {
+        scheduleRegion(region, instruction, result);
+      }
+      else
+      {
+        region.add(instruction);
+      }
+    }
+    scheduleRegion(region, null, result);
+
+    instructions.clear();
+    instructions.addAll(result);
+  }
+
+  /**
+   * Schedule the instructions of a region, followed by its control transfer
+   * and delay slot
+   *
+   * @param region     The instructions of the region (emptied)
+   * @param transfer   The control transfer ending the region (null if the
+   *                   region falls through)
+   * @param result     The list receiving the scheduled instructions
+   */
+  private void scheduleRegion(final ArrayList<Instruction> region,
+                              final Instruction transfer,
+                              final ArrayList<Instruction> result)
+  {
+    final int count = region.size();
+    InstructionEffects[] effects = new InstructionEffects[count];
+    for (int i = 0; i < count; ++i)
+    {
+      effects[i] = new InstructionEffects(region.get(i));
+    }
+    final InstructionEffects transferEffects =
+        (transfer == null) ? null : new InstructionEffects(transfer);
+
+    // Build the dependences: an instruction may not move above an earlier
+    // instruction it conflicts with
+    boolean[][] depends = new boolean[count][count];
+    int[] predecessors = new int[count];
+    for (int j = 0; j < count; ++j)
+    {
+      for (int i = 0; i < j; ++i)
+      {
+        if (effects[i].conflictsWith(effects[j]))
+        {
+          depends[j][i] = true;
+          ++predecessors[j];
+        }
+      }
+    }
+
+    // The priority of an instruction is the length of the longest chain of
+    // dependences it starts (a use of its result by the control transfer
+    // counts too)
+    int[] priority = new int[count];
+    for (int i = count - 1; i >= 0; --i)
+    {
+      priority[i] = 1;
+      if (transferEffects != null &&
+          (effects[i].getDefs() & transferEffects.getUses()) != 0)
+      {
+        priority[i] = getLatency(region.get(i)) + 1;
+      }
+      for (int j = i + 1; j < count; ++j)
+      {
+        if (depends[j][i])
+        {
+          priority[i] = Math.max(priority[i],
+                                 getLatency(region.get(i)) + priority[j]);
+        }
+      }
+    }
+
+    // List scheduling
+    ArrayList<Integer> order = new ArrayList<>();
+    int[] ready = new int[count];
+    boolean[] placed = new boolean[count];
+    int cycle = 0;
+    for (int step = 0; step < count; ++step)
+    {
+      int best = -1;
+      for (int i = 0; i < count; ++i)
+      {
+        if (placed[i] || predecessors[i] != 0)
+        {
+          continue;
+        }
+        if (best < 0 || isBetter(i, best, ready, priority, cycle))
+        {
+          best = i;
+        }
+      }
+
+      placed[best] = true;
+      order.add(best);
+      cycle = Math.max(cycle, ready[best]) + 1;
+      for (int j = best + 1; j < count; ++j)
+      {
+        if (depends[j][best])
+        {
+          --predecessors[j];
+          if ((effects[best].getDefs() & effects[j].getUses()) != 0)
+          {
+            ready[j] = Math.max(ready[j], cycle - 1 + getLatency(region.get(best)));
+          }
+        }
+      }
+    }
+
+    // Find the latest instruction that can move into the delay slot
+    int slot = -1;
+    if (transfer != null)
+    {
+      for (int k = order.size() - 1; k >= 0 && slot < 0; --k)
+      {
+        if (isSingleWord(region.get(order.get(k))) &&
+            canFillSlot(order, k, depends, effects, transferEffects, transfer))
+        {
+          slot = k;
+        }
+      }
+    }
+
+    for (int k = 0; k < order.size(); ++k)
+    {
+      if (k != slot)
+      {
+        result.add(region.get(order.get(k)));
+      }
+    }
+    if (transfer != null)
+    {
+      result.add(transfer);
+      if (slot >= 0)
+      {
+        result.add(region.get(order.get(slot)));
+        ++filledSlots;
+      }
+      else
+      {
+        result.add(new Instruction(Opcode.NOP));
+        ++emptySlots;
+      }
+    }
+    region.clear();
+  }
+
+  /**
+   * Determine if a ready instruction should be placed before another one
+   *
+   * @param candidate The candidate instruction
+   * @param best      The best instruction found so far
+   * @param ready     The cycle every instruction's operands are available
+   * @param priority  The priority of every instruction
+   * @param cycle     The current cycle
+   * @return T/F if the candidate is better
+   */
+  private static boolean isBetter(final int candidate,
+                                  final int best,
+                                  final int[] ready,
+                                  final int[] priority,
+                                  final int cycle)
+  {
+    // Prefer instructions that do not stall
+    final boolean candidateStalls = ready[candidate] > cycle;
+    final boolean bestStalls = ready[best] > cycle;
+    if (candidateStalls != bestStalls)
+    {
+      return !candidateStalls;
+    }
+    if (candidateStalls && ready[candidate] != ready[best])
+    {
+      return ready[candidate] < ready[best];
+    }
+    // Then longer chains, then the original order
+    return priority[candidate] > priority[best];
+  }
+
+  /**
+   * Determine if a scheduled instruction can move into the delay slot
+   *
+   * @param order           The scheduled instructions
+   * @param k               The position of the instruction in the schedule
+   * @param depends         The dependences between the instructions
+   * @param effects         The effects of the instructions
+   * @param transferEffects The effects of the control transfer
+   * @param transfer        The control transfer
+   * @return T/F if the instruction can be executed after the transfer
+   */
+  private static boolean canFillSlot(final ArrayList<Integer> order,
+                                     final int k,
+                                     final boolean[][] depends,
+                                     final InstructionEffects[] effects,
+                                     final InstructionEffects transferEffects,
+                                     final Instruction transfer)
+  {
+    final int index = order.get(k);
+    final InstructionEffects candidate = effects[index];
+    if ((candidate.getDefs() & transferEffects.getUses()) != 0)
+    {
+      return false;
+    }
+
+    // A call writes $ra before its delay slot runs
+    if (transfer.getOpcode() == Opcode.JAL &&
+        ((candidate.getDefs() | candidate.getUses()) & Register.RA.getMask()) != 0)
+    {
+      return false;
+    }
+
+    for (int later = k + 1; later < order.size(); ++later)
+    {
+      if (depends[order.get(later)][index])
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Determine if an instruction assembles to a single machine word, rather
+   * than being a macro the assembler expands
+   *
+   * @param instruction The instruction
+   * @return T/F if the instruction is a single native instruction
+   */
+  private static boolean isSingleWord(final Instruction instruction)
+  {
+    switch (instruction.getOpcode())
+    {
+      case ADD:
+      case ADDI:
+      case SLL:
+      case SRA:
+      case SRL:
+      case SLT:
+      case LI:
+      {
+        // The immediate forms need the value to fit in 16 bits
+        for (int i = 1; i < instruction.getOperandCount(); ++i)
+        {
+          if (!isRegisterOrShortImmediate(instruction.getOperand(i)))
+          {
+            return false;
+          }
+        }
+        return true;
+      }
+      case SUB:
+      case MOVE:
+      case MULT:
+      case MFHI:
+      {
+        for (int i = 0; i < instruction.getOperandCount(); ++i)
+        {
+          if (!(instruction.getOperand(i) instanceof Register))
+          {
+            return false;
+          }
+        }
+        return true;
+      }
+      case LW:
+      case SW:
+      {
+        // A label address needs the assembler's $at
+        final Operand address = instruction.getOperand(1);
+        return address instanceof Address &&
+               isShortImmediate(((Address) address).getOffset());
+      }
+      default:
+      {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Determine if an operand is a register or an immediate that fits in the
+   * 16-bit field of an instruction
+   *
+   * @param operand The operand
+   * @return T/F if the operand fits in a single instruction
+   */
+  private static boolean isRegisterOrShortImmediate(final Operand operand)
+  {
+    return operand instanceof Register ||
+           (operand instanceof Immediate &&
+            isShortImmediate(((Immediate) operand).getValue()));
+  }
+
+  /**
+   * Determine if a value fits in the 16-bit signed immediate field of an
+   * instruction
+   *
+   * @param value The value
+   * @return T/F if the value fits
+   */
+  private static boolean isShortImmediate(final int value)
+  {
+    return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+  }
+
+  /**
+   * Get the number of cycles until the result of an instruction can be used
+   *
+   * @param instruction The instruction
+   * @return The latency
+   */
+  private static int getLatency(final Instruction instruction)
+  {
+    return (instruction.getOpcode() == Opcode.LW) ? LOAD_LATENCY : 1;
+  }
+
+  /**
+   * Determine if an operation transfers control (and so has a delay slot)
+   *
+   * @param opcode The operation
+   * @return T/F if the operation is a branch, jump or call
+   */
+  private static boolean isControlTransfer(final Opcode opcode)
+  {
+    return opcode.isBranch() || opcode == Opcode.J ||
+           opcode == Opcode.JR || opcode == Opcode.JAL;
+  }
+}
@@ -1,15 +1,26 @@
 package codegen.table;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 
 /**
- * Class for storing a ID/Register mapping
+ * Class for storing a ID/Register mapping.
+ *
+ * Each LocalTable is a single scope frame that is chained to the frame of its
+ * enclosing scope. Entering a scope creates a new (empty) frame pointing to the
+ * current one, and leaving the scope simply drops the frame, so the records of
+ * the enclosing scopes are shared rather than copied.
  */
 public final class LocalTable
 {
   /**
-   * Register map
+   * The table of the enclosing scope (null for the outermost scope)
+   */
+  private final LocalTable parent;
+
+  /**
+   * Register map for the identifiers declared in this scope
    */
   private HashMap<String, RegisterRecord> table;
 
@@ -18,6 +29,17 @@ public final class LocalTable
    */
   public LocalTable()
   {
+    this(null);
+  }
+
+  /**
+   * Constructor for a LocalTable nested within another scope
+   *
+   * @param parent The LocalTable of the enclosing scope
+   */
+  private LocalTable(final LocalTable parent)
+  {
+    this.parent = parent;
     table = new LinkedHashMap<>();
   }
 
@@ -32,55 +54,40 @@ public final class LocalTable
   }
 
   /**
-   * Obtain a RegisterRecord
+   * Obtain a RegisterRecord, searching from the innermost scope outward
    */
   public RegisterRecord getRecord(final String id)
   {
-    return table.get(id);
-  }
-
-  /**
-   * Obtain a copy of the this table
-   * @return A copy of the table
-   */
-  public LocalTable copy()
-  {
-    LocalTable localTable = new LocalTable();
-
-    Object clonedTable = table.clone();
-    if (clonedTable instanceof LinkedHashMap)
+    for (LocalTable frame = this; frame != null; frame = frame.parent)
     {
-      localTable.table = (LinkedHashMap) clonedTable;
+      final RegisterRecord record = frame.table.get(id);
+      if (record != null)
+      {
+        return record;
+      }
     }
-    return localTable;
+    return null;
   }
 
   /**
-   * Check if the ID exists
-   * @param id The id in question
-   * @return T/F if the id exists in the table
+   * Enter a new scope nested within this table. Records added to the returned
+   * table are only visible until the scope is exited.
+   *
+   * @return The LocalTable for the new scope
    */
-  public boolean idExists(final String id)
+  public LocalTable enterScope()
   {
-    return table.containsKey(id);
+    return new LocalTable(this);
   }
 
   /**
-   * Check if the register exists in the table
+   * Leave the scope represented by this table, discarding its records
    *
-   * @param register The register to check
-   * @return T/F if the register exists in the table
+   * @return The LocalTable of the enclosing scope
    */
-  public boolean registerExists(final String register)
+  public LocalTable exitScope()
   {
-    for (final String id : table.keySet())
-    {
-      if (table.get(id).getLabel().equals(register))
-      {
-        return true;
-      }
-    }
-    return false;
+    return parent;
   }
 
   /**
@@ -91,22 +98,39 @@ public final class LocalTable
     System.out.println(" ID     | Label  | Offset | Size");
     System.out.println("--------|--------|--------|-----");
 
-    if (table.isEmpty())
+    // Collect the frames so that the outermost scope is printed first
+    ArrayList<LocalTable> frames = new ArrayList<>();
+    for (LocalTable frame = this; frame != null; frame = frame.parent)
     {
-      System.out.println(" <NONE> | <NONE> | <NONE> | <NONE>");
-      return;
+      frames.add(0, frame);
     }
-    for (final String id : table.keySet())
+
+    boolean empty = true;
+    for (final LocalTable frame : frames)
     {
-      final RegisterRecord record = table.get(id);
+      for (final String id : frame.table.keySet())
+      {
+        // Skip identifiers that are shadowed by an inner scope
+        final RegisterRecord record = frame.table.get(id);
+        if (getRecord(id) != record)
+        {
+          continue;
+        }
+        empty = false;
 
-      System.out.println(
-          String.format(
-              " %-5s  | %-5s  | %-6d | %-4d",
-              id,
-              record.getLabel(),
-              record.getOffset(),
-              record.getSize()));
+        System.out.println(
+            String.format(
+                " %-5s  | %-5s  | %-6d | %-4d",
+                id,
+                record.getLabel(),
+                record.getOffset(),
+                record.getSize()));
+      }
+    }
+
+    if (empty)
+    {
+      System.out.println(" <NONE> | <NONE> | <NONE> | <NONE>");
     }
   }
 
@@ -1,14 +1,17 @@
 package codegen.table;
 
+import codegen.instruction.Operand;
+import codegen.ir.VirtualRegister;
+
 /**
  * Structure to contain information about a register/variable pairing
  */
 public final class RegisterRecord
 {
   /**
-   * The label (or register)
+   * The location of the variable (a register or a data label)
    */
-  private String       label;
+  private Operand      location;
   /**
    * The offset
    */
@@ -17,29 +20,46 @@ public final class RegisterRecord
    * The size of the variable
    */
   private int          size;
+  /**
+   * The IR virtual register holding the variable (null for globals)
+   */
+  private VirtualRegister variable;
+  /**
+   * Is the variable an array?
+   */
+  private boolean      array;
 
   /**
    * The full constructor of the Register Record
-   * @param label  The label of the register
-   * @param offset The offset of the register
-   * @param size   The size of the register
+   * @param location The register or data label holding the variable
+   * @param offset   The offset of the register
+   * @param size     The size of the register
    */
-  public RegisterRecord(final String label ,
-                        final int    offset,
-                        final int    size  )
+  public RegisterRecord(final Operand location,
+                        final int     offset  ,
+                        final int     size    )
   {
     this.offset   = offset * 4;
     this.size     = size;
 
-    this.label = label;
+    this.location = location;
+    this.variable = null;
+    this.array    = false;
+  }
+
+  public void setVariable(final VirtualRegister variable)
+  {
+    this.variable = variable;
   }
 
-  public void setLabel(final String label)
+  public void setArray(final boolean array)
   {
-    this.label = label;
+    this.array = array;
   }
 
-  public String       getLabel()    { return label;    }
-  public int          getOffset()   { return offset;   }
-  public int          getSize()     { return size;     }
+  public String       getLabel()    { return location.toString(); }
+  public int          getOffset()   { return offset;              }
+  public int          getSize()     { return size;                }
+  public VirtualRegister getVariable() { return variable;         }
+  public boolean      isArray()     { return array;               }
 }
@@ -1,5 +1,7 @@
 package globals;
 
+import java.util.HashSet;
+
 /**
  * Class that contains global compiler flags
  */
@@ -24,4 +26,21 @@ public final class CompilerFlags
   public static boolean NoAnalyzer     = false;
   /** Flag indicating if code generator should not be run */
   public static boolean NoGenerator    = false;
+  /** Flag indicating if the target executes branch delay slots (the code is
+   *  then scheduled and the delay slots filled) */
+  public static boolean DelaySlots     = false;
+  /** Most copies of a loop body in an unrolled loop (1 to only unroll the
+   *  loops that run a few times completely) */
+  public static int     UnrollFactor   = 4;
+  /** Optimization level choosing the passes to run (see optimizer.Pass) */
+  public static OptimizationLevel Optimization = OptimizationLevel.O3;
+  /** Names of the passes run whatever the optimization level */
+  public static final HashSet<String> EnabledPasses  = new HashSet<>();
+  /** Names of the passes never run, whatever the optimization level */
+  public static final HashSet<String> DisabledPasses = new HashSet<>();
+  /** Flag indicating if the time spent in every pass should be reported */
+  public static boolean TimePasses     = false;
+  /** Number of threads used to generate function code concurrently */
+  public static int     GeneratorThreads =
+      Runtime.getRuntime().availableProcessors();
 }
@@ -0,0 +1,58 @@
+package globals;
+
+/**
+ * Enumeration of the optimization levels of the compiler (see
+ * optimizer.Pass for the passes each level runs)
+ */
+public enum OptimizationLevel
+{
+  O0("-O0"),  // No optimization passes
+  O1("-O1"),  // Cheap cleanups: folding, constant propagation, value
+              // numbering, strength reduction, dead code and peephole
+  O2("-O2"),  // O1 plus the loop optimizations, tail calls and inlining
+  O3("-O3"),  // O2 plus loop unrolling
+  Os("-Os");  // O2 without the passes that trade code size for speed
+
+  /**
+   * The command-line flag selecting the level
+   */
+  private final String flag;
+
+  /**
+   * Constructor for an OptimizationLevel
+   *
+   * @param flag The command-line flag selecting the level
+   */
+  OptimizationLevel(final String flag)
+  {
+    this.flag = flag;
+  }
+
+  /**
+   * Get the command-line flag selecting the level
+   *
+   * @return The flag
+   */
+  public String getFlag()
+  {
+    return flag;
+  }
+
+  /**
+   * Find the level selected by a command-line flag
+   *
+   * @param flag The flag
+   * @return The level, or null if the flag does not select one
+   */
+  public static OptimizationLevel fromFlag(final String flag)
+  {
+    for (final OptimizationLevel level : values())
+    {
+      if (level.flag.equals(flag))
+      {
+        return level;
+      }
+    }
+    return null;
+  }
+}
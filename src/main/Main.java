@@ -5,6 +5,9 @@ import analyzer.symbol.table.SymbolTable;
 import codegen.CodeGenerator;
 import globals.CompilerFlags;
 import globals.ConsoleColor;
+import globals.OptimizationLevel;
+import optimizer.Pass;
+import optimizer.PassManager;
 import parser.Parser;
 import scanner.Scanner;
 import syntaxtree.AbstractSyntaxTreeNode;
@@ -29,6 +32,12 @@ public final class Main
   private static final String  TRACE_PARSER_FLAG   = "-TraceParse";
   private static final String  TRACE_ANALYZER_FLAG = "-TraceAnalysis";
   private static final String  TRACE_CODE_GEN_FLAG = "-TraceCode";
+  private static final String  SERIAL_CODE_FLAG    = "-SerialCode";
+  private static final String  DELAY_SLOTS_FLAG    = "-DelaySlots";
+  private static final String  UNROLL_FLAG         = "-Unroll";
+  private static final String  ENABLE_PASS_FLAG    = "-EnablePass";
+  private static final String  DISABLE_PASS_FLAG   = "-DisablePass";
+  private static final String  TIME_PASSES_FLAG    = "-TimePasses";
 
   /**
    * The main method for the compiler's execution
@@ -107,12 +116,87 @@ public final class Main
           CompilerFlags.TraceGenerator = true;
           break;
         }
-        // If an unknown flag was detected, let the user
+        // If function code should be generated one function
+        // at a time, use a single generator thread
+        case SERIAL_CODE_FLAG:
+        {
+          CompilerFlags.GeneratorThreads = 1;
+          break;
+        }
+        // If the target executes branch delay slots, schedule
+        // the code and fill them
+        case DELAY_SLOTS_FLAG:
+        {
+          CompilerFlags.DelaySlots = true;
+          break;
+        }
+        // If a loop unrolling factor is given, use it (it is
+        // the next argument, ahead of the file name)
+        case UNROLL_FLAG:
+        {
+          Integer factor = null;
+          if (i + 1 < args.length - 1)
+          {
+            try
+            {
+              factor = Integer.parseInt(args[++i]);
+            }
+            catch (NumberFormatException nfe)
+            {
+              factor = null;
+            }
+          }
+          if (factor == null || factor < 1)
+          {
+            ConsoleColor.PrintRed(
+                "The -Unroll flag needs a factor of at least 1. " +
+                    "Valid usage is as follows:");
+            showProgramUsage();
+            System.exit(-1);
+          }
+          CompilerFlags.UnrollFactor = factor;
+          break;
+        }
+        // If a pass should run whatever the optimization level,
+        // add it to the enabled passes (its name is the next
+        // argument, ahead of the file name)
+        case ENABLE_PASS_FLAG:
+        {
+          final String pass = getPassName(args, ++i);
+          CompilerFlags.DisabledPasses.remove(pass);
+          CompilerFlags.EnabledPasses.add(pass);
+          break;
+        }
+        // If a pass should never run, add it to the disabled
+        // passes (its name is the next argument, ahead of the
+        // file name)
+        case DISABLE_PASS_FLAG:
+        {
+          final String pass = getPassName(args, ++i);
+          CompilerFlags.EnabledPasses.remove(pass);
+          CompilerFlags.DisabledPasses.add(pass);
+          break;
+        }
+        // If the time spent in every pass is desired, set the
+        // flag
+        case TIME_PASSES_FLAG:
+        {
+          CompilerFlags.TimePasses = true;
+          break;
+        }
+        // If an optimization level is given, use it. Otherwise,
+        // an unknown flag was detected, let the user
         // know that there was was a problem with the flag,
         // show the user what the program accepts, and
         // terminate the program
         default:
         {
+          final OptimizationLevel level = OptimizationLevel.fromFlag(args[i]);
+          if (level != null)
+          {
+            CompilerFlags.Optimization = level;
+            break;
+          }
           ConsoleColor.PrintRed(
               String.format(
                   "Unknown flag %s detected. Valid usage is as follows:",
@@ -157,6 +241,7 @@ public final class Main
     ArrayDeque<Token>      tokens;
     AbstractSyntaxTreeNode tree        = null;
     SymbolTable            symbolTable = null;
+    PassManager            passes      = new PassManager();
     try
     {
       Scanner scanner = new Scanner();
@@ -195,14 +280,34 @@ public final class Main
           System.out.println("\nProduced Symbol Tables:\n");
           symbolTable.printTable("");
         }
+
+        // Run the syntax tree passes (folding constant expressions) before
+        // any code is generated for the tree
+        int folded = passes.runSyntaxTreePasses(tree);
+
+        if (CompilerFlags.TraceAnalyzer)
+        {
+          System.out.println(String.format("Folded %d constant expressions\n",
+                                           folded));
+        }
       }
 
       if (!CompilerFlags.NoGenerator)
       {
-        CodeGenerator codeGenerator = new CodeGenerator();
+        CodeGenerator codeGenerator = new CodeGenerator(passes);
 
         codeGenerator.generate(symbolTable, filename);
       }
+      if (CompilerFlags.TimePasses)
+      {
+        System.out.println("Optimization passes (wall time, change in " +
+            "code size):");
+        for (final String line : passes.getStatistics())
+        {
+          System.out.println(line);
+        }
+        System.out.println("");
+      }
       System.out.println("Compilation Completed.");
     }
     catch (IOException ioe)
@@ -237,6 +342,32 @@ public final class Main
     ConsoleColor.PrintRed("-TraceAnalyze : Turn on semantic analyzer trace output");
     ConsoleColor.PrintRed("-TraceCode    : Turn on code generator trace output");
     ConsoleColor.PrintRed("");
+    ConsoleColor.PrintRed("Code Generation Flags (optional):");
+    ConsoleColor.PrintRed("-SerialCode   : Generate one function at a time " +
+        "(no worker threads)");
+    ConsoleColor.PrintRed("-DelaySlots   : Schedule the code for a target " +
+        "with branch delay slots");
+    ConsoleColor.PrintRed("-Unroll <n>   : Copy loop bodies at most n times " +
+        "when unrolling loops (default 4)");
+    ConsoleColor.PrintRed("");
+    ConsoleColor.PrintRed("Optimization Flags (optional):");
+    ConsoleColor.PrintRed("-O0           : Run no optimization passes");
+    ConsoleColor.PrintRed("-O1           : Run the cheap cleanup passes");
+    ConsoleColor.PrintRed("-O2           : Also run the loop passes, tail " +
+        "calls and inlining");
+    ConsoleColor.PrintRed("-O3           : Also unroll loops (default)");
+    ConsoleColor.PrintRed("-Os           : Run the -O2 passes that do not " +
+        "grow the code");
+    ConsoleColor.PrintRed("-EnablePass <name>  : Run a pass whatever the level");
+    ConsoleColor.PrintRed("-DisablePass <name> : Never run a pass");
+    ConsoleColor.PrintRed("-TimePasses   : Report the time spent in every pass");
+    ConsoleColor.PrintRed("Passes (in the order they run):");
+    for (final Pass pass : Pass.values())
+    {
+      ConsoleColor.PrintRed(String.format("  %-11s : %s", pass,
+                                          pass.getDescription()));
+    }
+    ConsoleColor.PrintRed("");
     ConsoleColor.PrintRed("              : The name of the file to compile. " +
         "This file name should not have the");
     ConsoleColor.PrintRed("<filename>    : .cm extension when provided, as " +
@@ -268,6 +399,41 @@ public final class Main
         (CompilerFlags.TraceAnalyzer ? "true" : "false")));
     System.out.println(String.format("TraceCode       : %s",
         (CompilerFlags.TraceGenerator ? "true" : "false")));
+    System.out.println(String.format("DelaySlots      : %s",
+        (CompilerFlags.DelaySlots ? "true" : "false")));
+    System.out.println(String.format("UnrollFactor    : %d",
+        CompilerFlags.UnrollFactor));
+    System.out.println(String.format("Optimization    : %s",
+        CompilerFlags.Optimization.getFlag()));
+    System.out.println(String.format("EnabledPasses   : %s",
+        CompilerFlags.EnabledPasses));
+    System.out.println(String.format("DisabledPasses  : %s",
+        CompilerFlags.DisabledPasses));
+    System.out.println(String.format("TimePasses      : %s",
+        (CompilerFlags.TimePasses ? "true" : "false")));
+    System.out.println(String.format("CodeThreads     : %d",
+        CompilerFlags.GeneratorThreads));
     System.out.println("");
   }
+
+  /**
+   * Get the name of a pass given on the command line, terminating the
+   * program if there is no such pass
+   *
+   * @param args  The program arguments
+   * @param index The index of the name in the arguments
+   * @return The name of the pass
+   */
+  private static String getPassName(final String[] args, final int index)
+  {
+    if (index >= args.length - 1 || Pass.fromName(args[index]) == null)
+    {
+      ConsoleColor.PrintRed(
+          "The -EnablePass and -DisablePass flags need the name of a " +
+              "pass. Valid usage is as follows:");
+      showProgramUsage();
+      System.exit(-1);
+    }
+    return args[index];
+  }
 }
\ No newline at end of file
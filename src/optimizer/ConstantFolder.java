@@ -0,0 +1,429 @@
+package optimizer;
+
+import syntaxtree.ASTNodeType;
+import syntaxtree.AbstractSyntaxTreeNode;
+import syntaxtree.expression.ConstantExpressionNode;
+import tokens.TokenType;
+
+/**
+ * Class that folds constant expressions in the abstract syntax tree.
+ *
+ * The folder runs after semantic analysis and rewrites operations whose
+ * operands are both constants into a single ConstantExpressionNode
+ * (comparisons evaluate to 1 or 0). Operations with one constant operand are
+ * simplified with the algebraic identities x+0, x-0, x*1, x/1 and x*0, and
+ * x-x folds to zero.
+ *
+ * Statement nodes are never replaced, as the symbol tables refer to them
+ * directly. Only the expressions hanging off of them are rewritten.
+ */
+public final class ConstantFolder
+{
+  /**
+   * The number of expressions folded or simplified
+   */
+  private int foldCount;
+
+  /**
+   * Full constructor for the ConstantFolder
+   */
+  public ConstantFolder()
+  {
+    foldCount = 0;
+  }
+
+  /**
+   * Fold the constant expressions of an abstract syntax tree
+   *
+   * @param tree The abstract syntax tree produced by the Parser
+   * @return The number of expressions folded or simplified
+   */
+  public int fold(final AbstractSyntaxTreeNode tree)
+  {
+    foldCount = 0;
+    foldStatements(tree);
+    return foldCount;
+  }
+
+  /**
+   * Fold the expressions of a list of statements (linked through
+   * their siblings)
+   *
+   * @param node The first statement
+   */
+  private void foldStatements(final AbstractSyntaxTreeNode node)
+  {
+    AbstractSyntaxTreeNode statement = node;
+    while (statement != null)
+    {
+      foldStatement(statement);
+      statement = statement.getSibling();
+    }
+  }
+
+  /**
+   * Fold the expressions of a single statement
+   *
+   * @param node The statement node
+   */
+  private void foldStatement(final AbstractSyntaxTreeNode node)
+  {
+    switch (node.getNodeType())
+    {
+      case META_FUNCTION:
+      {
+        foldStatements(node.getChild(1));
+        break;
+      }
+      case META_ANONYMOUS_BLOCK:
+      {
+        foldStatements(node.getChild(0));
+        break;
+      }
+      case STATEMENT_IF:
+      {
+        node.setChild(0, foldExpression(node.getChild(0)));
+        foldStatements(node.getChild(1));
+        foldStatements(node.getChild(2));
+        break;
+      }
+      case STATEMENT_WHILE:
+      {
+        node.setChild(0, foldExpression(node.getChild(0)));
+        foldStatements(node.getChild(1));
+        break;
+      }
+      case STATEMENT_RETURN:
+      {
+        if (node.getChild(0) != null)
+        {
+          node.setChild(0, foldExpression(node.getChild(0)));
+        }
+        break;
+      }
+      case EXPRESSION_OPERATION:
+      case EXPRESSION_ARRAY_IDENTIFIER:
+      case EXPRESSION_CALL:
+      case STATEMENT_ASSIGN:
+      {
+        // An expression statement keeps its node, but its operands
+        // can still be folded
+        foldOperands(node);
+        break;
+      }
+      default:
+      {
+        // Declarations, parameters and null nodes hold no expressions
+        break;
+      }
+    }
+  }
+
+  /**
+   * Fold an expression
+   *
+   * @param node The expression node
+   * @return The node that should replace the expression
+   */
+  private AbstractSyntaxTreeNode foldExpression(final AbstractSyntaxTreeNode node)
+  {
+    foldOperands(node);
+
+    if (node.getNodeType() != ASTNodeType.EXPRESSION_OPERATION)
+    {
+      return node;
+    }
+
+    final AbstractSyntaxTreeNode replacement = simplify(node);
+    if (replacement != node)
+    {
+      // Call arguments are linked through their siblings
+      replacement.setSibling(node.getSibling());
+      ++foldCount;
+    }
+    return replacement;
+  }
+
+  /**
+   * Fold the operands of an expression, leaving the expression itself in place
+   *
+   * @param node The expression node
+   */
+  private void foldOperands(final AbstractSyntaxTreeNode node)
+  {
+    switch (node.getNodeType())
+    {
+      case EXPRESSION_OPERATION:
+      {
+        node.setChild(0, foldExpression(node.getChild(0)));
+        node.setChild(1, foldExpression(node.getChild(1)));
+        break;
+      }
+      case EXPRESSION_ARRAY_IDENTIFIER:
+      {
+        node.setChild(0, foldExpression(node.getChild(0)));
+        break;
+      }
+      case STATEMENT_ASSIGN:
+      {
+        // The target is only folded for its index expression
+        foldOperands(node.getChild(0));
+        node.setChild(1, foldExpression(node.getChild(1)));
+        break;
+      }
+      case EXPRESSION_CALL:
+      {
+        // Arguments are linked through their siblings, so each folded
+        // argument has to be relinked into the list
+        AbstractSyntaxTreeNode previous = null;
+        AbstractSyntaxTreeNode argument = node.getChild(0);
+        while (argument != null)
+        {
+          final AbstractSyntaxTreeNode folded = foldExpression(argument);
+          if (previous == null)
+          {
+            node.setChild(0, folded);
+          }
+          else
+          {
+            previous.setSibling(folded);
+          }
+          previous = folded;
+          argument = folded.getSibling();
+        }
+        break;
+      }
+      default:
+      {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Simplify an operation whose operands have already been folded
+   *
+   * @param node The operation node
+   * @return The simplified node, or the operation itself if it cannot be
+   *         simplified
+   */
+  private static AbstractSyntaxTreeNode simplify(final AbstractSyntaxTreeNode node)
+  {
+    final AbstractSyntaxTreeNode left  = node.getChild(0);
+    final AbstractSyntaxTreeNode right = node.getChild(1);
+    final TokenType type = node.getTokenType();
+
+    final boolean leftConstant  = isConstant(left);
+    final boolean rightConstant = isConstant(right);
+
+    if (leftConstant && rightConstant)
+    {
+      // Division by zero is left for the program to discover at runtime
+      if (type == TokenType.SPECIAL_DIVIDE && right.getValue() == 0)
+      {
+        return node;
+      }
+      return createConstant(evaluate(type, left.getValue(), right.getValue()),
+                            node.getLineNumber());
+    }
+
+    switch (type)
+    {
+      case SPECIAL_PLUS:
+      {
+        // x + 0 = 0 + x = x
+        if (rightConstant && right.getValue() == 0)
+        {
+          return left;
+        }
+        if (leftConstant && left.getValue() == 0)
+        {
+          return right;
+        }
+        break;
+      }
+      case SPECIAL_MINUS:
+      {
+        // x - 0 = x
+        if (rightConstant && right.getValue() == 0)
+        {
+          return left;
+        }
+        // x - x = 0
+        if (isPure(left) && isSameValue(left, right))
+        {
+          return createConstant(0, node.getLineNumber());
+        }
+        break;
+      }
+      case SPECIAL_TIMES:
+      {
+        // x * 1 = 1 * x = x
+        if (rightConstant && right.getValue() == 1)
+        {
+          return left;
+        }
+        if (leftConstant && left.getValue() == 1)
+        {
+          return right;
+        }
+        // x * 0 = 0 * x = 0 (as long as x has no side effects)
+        if ((rightConstant && right.getValue() == 0 && isPure(left)) ||
+            (leftConstant && left.getValue() == 0 && isPure(right)))
+        {
+          return createConstant(0, node.getLineNumber());
+        }
+        break;
+      }
+      case SPECIAL_DIVIDE:
+      {
+        // x / 1 = x
+        if (rightConstant && right.getValue() == 1)
+        {
+          return left;
+        }
+        break;
+      }
+      default:
+      {
+        break;
+      }
+    }
+
+    return node;
+  }
+
+  /**
+   * Evaluate an operation on two constants
+   *
+   * @param type  The operator
+   * @param left  The left hand side
+   * @param right The right hand side
+   * @return The value of the operation (comparisons produce 1 or 0)
+   */
+  private static int evaluate(final TokenType type, final int left, final int right)
+  {
+    switch (type)
+    {
+      case SPECIAL_PLUS:         return left + right;
+      case SPECIAL_MINUS:        return left - right;
+      case SPECIAL_TIMES:        return left * right;
+      case SPECIAL_DIVIDE:       return left / right;
+      case SPECIAL_EQUAL:        return (left == right) ? 1 : 0;
+      case SPECIAL_NOT_EQUAL:    return (left != right) ? 1 : 0;
+      case SPECIAL_LESS_THAN:    return (left <  right) ? 1 : 0;
+      case SPECIAL_LTE:          return (left <= right) ? 1 : 0;
+      case SPECIAL_GREATER_THAN: return (left >  right) ? 1 : 0;
+      case SPECIAL_GTE:          return (left >= right) ? 1 : 0;
+      default:
+      {
+        throw new IllegalStateException("Unknown operator " + type);
+      }
+    }
+  }
+
+  /**
+   * Is the node a constant number?
+   *
+   * @param node The expression node
+   * @return True if the node is a ConstantExpressionNode
+   */
+  private static boolean isConstant(final AbstractSyntaxTreeNode node)
+  {
+    return node.getNodeType() == ASTNodeType.EXPRESSION_NUMBER;
+  }
+
+  /**
+   * Can the expression be removed without changing the program?
+   *
+   * @param node The expression node
+   * @return True if evaluating the expression has no side effects
+   */
+  private static boolean isPure(final AbstractSyntaxTreeNode node)
+  {
+    switch (node.getNodeType())
+    {
+      case EXPRESSION_NUMBER:
+      case EXPRESSION_IDENTIFIER:
+      {
+        return true;
+      }
+      case EXPRESSION_ARRAY_IDENTIFIER:
+      {
+        return isPure(node.getChild(0));
+      }
+      case EXPRESSION_OPERATION:
+      {
+        // Division could trap on a zero divisor
+        return node.getTokenType() != TokenType.SPECIAL_DIVIDE &&
+               isPure(node.getChild(0)) &&
+               isPure(node.getChild(1));
+      }
+      default:
+      {
+        // Calls and assignments
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Do two pure expressions always produce the same value?
+   *
+   * @param left  The first expression
+   * @param right The second expression
+   * @return True if the expressions are structurally identical
+   */
+  private static boolean isSameValue(final AbstractSyntaxTreeNode left,
+                                     final AbstractSyntaxTreeNode right)
+  {
+    if (left.getNodeType() != right.getNodeType())
+    {
+      return false;
+    }
+
+    switch (left.getNodeType())
+    {
+      case EXPRESSION_NUMBER:
+      {
+        return left.getValue() == right.getValue();
+      }
+      case EXPRESSION_IDENTIFIER:
+      {
+        return left.getName().equals(right.getName());
+      }
+      case EXPRESSION_ARRAY_IDENTIFIER:
+      {
+        return left.getName().equals(right.getName()) &&
+               isSameValue(left.getChild(0), right.getChild(0));
+      }
+      case EXPRESSION_OPERATION:
+      {
+        return left.getTokenType() == right.getTokenType() &&
+               isSameValue(left.getChild(0), right.getChild(0)) &&
+               isSameValue(left.getChild(1), right.getChild(1));
+      }
+      default:
+      {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Create a constant number node
+   *
+   * @param value      The value of the constant
+   * @param lineNumber The line number of the expression being replaced
+   * @return The new ConstantExpressionNode
+   */
+  private static AbstractSyntaxTreeNode createConstant(final int value,
+                                                       final int lineNumber)
+  {
+    ConstantExpressionNode constant = new ConstantExpressionNode();
+    constant.setValue(value);
+    constant.setLineNumber(lineNumber);
+    constant.setType(Integer.class);
+    return constant;
+  }
+}
@@ -0,0 +1,144 @@
+package optimizer;
+
+import globals.CompilerFlags;
+import globals.OptimizationLevel;
+
+/**
+ * Enumeration of the optimization passes, in the order they run.
+ *
+ * Every pass is enabled from an optimization level on; -Os runs the passes
+ * of -O2 except those that grow the code. A pass can also be switched on or
+ * off by name, whatever the level.
+ */
+public enum Pass
+{
+  FOLD           ("fold",      Kind.SYNTAX_TREE, OptimizationLevel.O1, false,
+                  "Fold constant expressions in the syntax tree"),
+  INLINE         ("inline",    Kind.IR,  OptimizationLevel.O2, true,
+                  "Inline small leaf functions"),
+  TAIL_CALLS     ("tailcalls", Kind.IR,  OptimizationLevel.O2, false,
+                  "Turn tail calls into jumps"),
+  UNROLL         ("unroll",    Kind.IR,  OptimizationLevel.O3, true,
+                  "Unroll counted loops"),
+  CONSTANTS      ("sccp",      Kind.SSA, OptimizationLevel.O1, false,
+                  "Propagate constants and remove dead code"),
+  VALUE_NUMBERING("gvn",       Kind.SSA, OptimizationLevel.O1, false,
+                  "Reuse redundant computations"),
+  LICM           ("licm",      Kind.SSA, OptimizationLevel.O2, false,
+                  "Hoist loop-invariant code"),
+  INDUCTION      ("ivsr",      Kind.SSA, OptimizationLevel.O2, false,
+                  "Step element addresses with induction variables"),
+  STRENGTH       ("strength",  Kind.SSA, OptimizationLevel.O1, false,
+                  "Reduce arithmetic on constants"),
+  DEAD_STORES    ("dse",       Kind.SSA, OptimizationLevel.O1, false,
+                  "Remove dead stores and unused local arrays"),
+  CLEANUP        ("cfg",       Kind.IR,  OptimizationLevel.O1, false,
+                  "Thread jumps and remove unreachable blocks"),
+  PEEPHOLE       ("peephole",  Kind.INSTRUCTIONS, OptimizationLevel.O1, false,
+                  "Clean up the emitted instructions");
+
+  /**
+   * Enumeration of what a pass works on
+   */
+  public enum Kind
+  {
+    SYNTAX_TREE, // The abstract syntax tree, after semantic analysis
+    IR,          // The IR of a function, outside of SSA form
+    SSA,         // The IR of a function, in SSA form
+    INSTRUCTIONS // The emitted MIPS instructions of the whole program
+  }
+
+  /**
+   * The name of the pass on the command line and in the statistics
+   */
+  private final String text;
+
+  /**
+   * What the pass works on
+   */
+  private final Kind kind;
+
+  /**
+   * The lowest level running the pass
+   */
+  private final OptimizationLevel level;
+
+  /**
+   * Does the pass trade code size for speed (left out by -Os)?
+   */
+  private final boolean growsCode;
+
+  /**
+   * What the pass does
+   */
+  private final String description;
+
+  /**
+   * Constructor for a Pass
+   *
+   * @param text        The name of the pass
+   * @param kind        What the pass works on
+   * @param level       The lowest level running the pass
+   * @param growsCode   Does the pass trade code size for speed?
+   * @param description What the pass does
+   */
+  Pass(final String text, final Kind kind, final OptimizationLevel level,
+       final boolean growsCode, final String description)
+  {
+    this.text = text;
+    this.kind = kind;
+    this.level = level;
+    this.growsCode = growsCode;
+    this.description = description;
+  }
+
+  public Kind   getKind()        { return kind;        }
+  public String getDescription() { return description; }
+
+  /**
+   * Determine if the pass runs, from the optimization level and the passes
+   * switched on or off by name
+   *
+   * @return T/F if the pass is enabled
+   */
+  public boolean isEnabled()
+  {
+    if (CompilerFlags.DisabledPasses.contains(text))
+    {
+      return false;
+    }
+    if (CompilerFlags.EnabledPasses.contains(text))
+    {
+      return true;
+    }
+    if (CompilerFlags.Optimization == OptimizationLevel.Os)
+    {
+      return level.compareTo(OptimizationLevel.O2) <= 0 && !growsCode;
+    }
+    return level.compareTo(CompilerFlags.Optimization) <= 0;
+  }
+
+  /**
+   * Find a pass by name
+   *
+   * @param text The name of the pass
+   * @return The pass, or null if there is no such pass
+   */
+  public static Pass fromName(final String text)
+  {
+    for (final Pass pass : values())
+    {
+      if (pass.text.equals(text))
+      {
+        return pass;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString()
+  {
+    return text;
+  }
+}
@@ -0,0 +1,288 @@
+package optimizer;
+
+import codegen.instruction.Instruction;
+import codegen.ir.BasicBlock;
+import codegen.ir.ConstantPropagation;
+import codegen.ir.ControlFlowCleanup;
+import codegen.ir.DeadStoreElimination;
+import codegen.ir.IRFunction;
+import codegen.ir.InductionVariableReduction;
+import codegen.ir.Inliner;
+import codegen.ir.LoopInvariantCodeMotion;
+import codegen.ir.LoopUnrolling;
+import codegen.ir.SSAForm;
+import codegen.ir.StrengthReduction;
+import codegen.ir.TailCalls;
+import codegen.ir.ValueNumbering;
+import codegen.peephole.PeepholeOptimizer;
+import globals.CompilerFlags;
+import syntaxtree.AbstractSyntaxTreeNode;
+
+import java.util.ArrayList;
+
+/**
+ * Class that runs the enabled optimization passes (see Pass) in order, and
+ * records the wall time each one took and how much it changed the code: the
+ * number of syntax tree nodes for a syntax tree pass, the number of IR
+ * instructions for a function pass, and the number of emitted instructions
+ * for the peephole optimizer.
+ *
+ * A single PassManager is shared by the function generators, which may run
+ * on several threads; the statistics add up the time spent in every
+ * function, on every thread.
+ */
+public final class PassManager
+{
+  /**
+   * The number of times every pass ran (by ordinal)
+   */
+  private final int[] runs;
+
+  /**
+   * The wall time spent in every pass (nanoseconds, by ordinal)
+   */
+  private final long[] times;
+
+  /**
+   * The change in code size made by every pass (by ordinal)
+   */
+  private final int[] changes;
+
+  /**
+   * Constructor for a PassManager with no statistics recorded
+   */
+  public PassManager()
+  {
+    runs = new int[Pass.values().length];
+    times = new long[Pass.values().length];
+    changes = new int[Pass.values().length];
+  }
+
+  /**
+   * Run the enabled syntax tree passes
+   *
+   * @param tree The abstract syntax tree, after semantic analysis
+   * @return The number of expressions folded
+   */
+  public int runSyntaxTreePasses(final AbstractSyntaxTreeNode tree)
+  {
+    if (!Pass.FOLD.isEnabled())
+    {
+      return 0;
+    }
+    final int size = countNodes(tree);
+    final long start = System.nanoTime();
+    final int folded = new ConstantFolder().fold(tree);
+    record(Pass.FOLD, System.nanoTime() - start, countNodes(tree) - size);
+    return folded;
+  }
+
+  /**
+   * Run the enabled IR passes over a function, putting it in SSA form for
+   * the passes that need it
+   *
+   * @param function The function (not in SSA form)
+   * @param inliner  The Inliner deciding which calls to inline (null if
+   *                 inlining is disabled)
+   */
+  public void runFunctionPasses(final IRFunction function,
+                                final Inliner inliner)
+  {
+    SSAForm ssa = null;
+    for (final Pass pass : Pass.values())
+    {
+      if ((pass.getKind() != Pass.Kind.IR && pass.getKind() != Pass.Kind.SSA) ||
+          !pass.isEnabled())
+      {
+        continue;
+      }
+      if (pass.getKind() == Pass.Kind.SSA && ssa == null)
+      {
+        ssa = new SSAForm(function);
+        ssa.construct();
+      }
+      else if (pass.getKind() == Pass.Kind.IR && ssa != null)
+      {
+        ssa.destruct();
+        ssa = null;
+      }
+
+      final int size = countInstructions(function);
+      final long start = System.nanoTime();
+      runFunctionPass(pass, function, inliner);
+      record(pass, System.nanoTime() - start,
+             countInstructions(function) - size);
+    }
+    if (ssa != null)
+    {
+      ssa.destruct();
+    }
+  }
+
+  /**
+   * Run the peephole optimizer over the emitted instructions (the caller
+   * only installs it if Pass.PEEPHOLE is enabled)
+   *
+   * @param peephole     The peephole optimizer
+   * @param instructions The instructions of the whole program (rewritten in
+   *                     place)
+   */
+  public void runPeephole(final PeepholeOptimizer peephole,
+                          final ArrayList<Instruction> instructions)
+  {
+    final int size = instructions.size();
+    final long start = System.nanoTime();
+    peephole.optimize(instructions);
+    record(Pass.PEEPHOLE, System.nanoTime() - start,
+           instructions.size() - size);
+  }
+
+  /**
+   * Run a single IR pass over a function
+   *
+   * @param pass     The pass
+   * @param function The function (in SSA form for an SSA pass)
+   * @param inliner  The Inliner deciding which calls to inline
+   */
+  private static void runFunctionPass(final Pass pass,
+                                      final IRFunction function,
+                                      final Inliner inliner)
+  {
+    switch (pass)
+    {
+      case INLINE:
+      {
+        if (inliner != null)
+        {
+          inliner.inline(function);
+        }
+        break;
+      }
+      case TAIL_CALLS:
+      {
+        new TailCalls(function).run();
+        break;
+      }
+      case UNROLL:
+      {
+        new LoopUnrolling(function, CompilerFlags.UnrollFactor).run();
+        break;
+      }
+      case CONSTANTS:
+      {
+        new ConstantPropagation(function).run();
+        break;
+      }
+      case VALUE_NUMBERING:
+      {
+        new ValueNumbering(function).run();
+        break;
+      }
+      case LICM:
+      {
+        new LoopInvariantCodeMotion(function).run();
+        break;
+      }
+      case INDUCTION:
+      {
+        new InductionVariableReduction(function).run();
+        break;
+      }
+      case STRENGTH:
+      {
+        new StrengthReduction(function).run();
+        break;
+      }
+      case DEAD_STORES:
+      {
+        new DeadStoreElimination(function).run();
+        break;
+      }
+      case CLEANUP:
+      {
+        new ControlFlowCleanup(function).run();
+        break;
+      }
+      default:
+      {
+        throw new IllegalStateException("Not an IR pass: " + pass);
+      }
+    }
+  }
+
+  /**
+   * Record a run of a pass
+   *
+   * @param pass   The pass
+   * @param time   The wall time it took (nanoseconds)
+   * @param change The change in code size it made
+   */
+  private synchronized void record(final Pass pass, final long time,
+                                   final int change)
+  {
+    ++runs[pass.ordinal()];
+    times[pass.ordinal()] += time;
+    changes[pass.ordinal()] += change;
+  }
+
+  /**
+   * Get the time spent in every pass that ran, and how it changed the code
+   *
+   * @return One line per pass
+   */
+  public synchronized ArrayList<String> getStatistics()
+  {
+    ArrayList<String> lines = new ArrayList<>();
+    for (final Pass pass : Pass.values())
+    {
+      final int index = pass.ordinal();
+      if (runs[index] == 0)
+      {
+        continue;
+      }
+      lines.add(String.format("%-10s: %9.3f ms %+7d %s (%d runs)",
+                              pass, times[index] / 1e6, changes[index],
+                              (pass.getKind() == Pass.Kind.SYNTAX_TREE) ?
+                              "nodes" : "instructions",
+                              runs[index]));
+    }
+    return lines;
+  }
+
+  /**
+   * Count the nodes of a syntax tree
+   *
+   * @param node The first node of a list of siblings
+   * @return The number of nodes of the list and of their children
+   */
+  private static int countNodes(final AbstractSyntaxTreeNode node)
+  {
+    int count = 0;
+    for (AbstractSyntaxTreeNode sibling = node; sibling != null;
+         sibling = sibling.getSibling())
+    {
+      ++count;
+      for (int i = 0; i < sibling.getChildCount(); ++i)
+      {
+        count += countNodes(sibling.getChild(i));
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Count the instructions of a function
+   *
+   * @param function The function
+   * @return The number of IR instructions
+   */
+  private static int countInstructions(final IRFunction function)
+  {
+    int count = 0;
+    for (final BasicBlock block : function.getBlocks())
+    {
+      count += block.getInstructions().size();
+    }
+    return count;
+  }
+}
@@ -1075,48 +1075,6 @@ public final class Parser
 
       // Change the reference to point to the operator node
       reference = opNode;
-
-      // PERFORM CONSTANT-FOLDING OPTIMIZATION ON RELATIONAL OPERATIONS
-      if ((reference.getChild(0).getNodeType() == ASTNodeType.EXPRESSION_NUMBER) &&
-          (reference.getChild(1).getNodeType() == ASTNodeType.EXPRESSION_NUMBER))
-      {
-        int line = reference.getLineNumber();
-        int left = reference.getChild(0).getValue();
-        int right = reference.getChild(0).getValue();
-
-        boolean result;
-        TokenType type = reference.getTokenType();
-        if (type == TokenType.SPECIAL_EQUAL)
-        {
-          result = left == right;
-        }
-        else if (type == TokenType.SPECIAL_NOT_EQUAL)
-        {
-          result = left != right;
-        }
-        else if (type == TokenType.SPECIAL_GREATER_THAN)
-        {
-          result = left > right;
-        }
-        else if (type == TokenType.SPECIAL_LESS_THAN)
-        {
-          result = left < right;
-        }
-        else if (type == TokenType.SPECIAL_GTE)
-        {
-          result = left >= right;
-        }
-        else // type == TokenType.SPECIAL_LTE
-        {
-          result = left <= right;
-        }
-
-        reference = new ConstantExpressionNode();
-        reference.setValue(result ? 1 : 0);
-        reference.setLineNumber(line);
-        reference.setTokenType(TokenType.VARIABLE_NUMBER);
-        reference.setType(Integer.class);
-      }
     }
 
     return reference;
@@ -1227,32 +1185,6 @@ public final class Parser
         // Change the reference to point to the operator node
         reference = opNode;
       }
-
-      // PERFORM CONSTANT-FOLDING OPTIMIZATION ON +/- OPERATIONS
-      if ((reference.getChild(0).getNodeType() == ASTNodeType.EXPRESSION_NUMBER) &&
-          (reference.getChild(1).getNodeType() == ASTNodeType.EXPRESSION_NUMBER))
-      {
-        int line = reference.getLineNumber();
-        int left = reference.getChild(0).getValue();
-        int right = reference.getChild(0).getValue();
-
-        int result;
-        TokenType type = reference.getTokenType();
-        if (type == TokenType.SPECIAL_PLUS)
-        {
-          result = left + right;
-        }
-        else // type == TokenType.SPECIAL_MINUS
-        {
-          result = left - right;
-        }
-
-        reference = new ConstantExpressionNode();
-        reference.setValue(result);
-        reference.setLineNumber(line);
-        reference.setTokenType(TokenType.VARIABLE_NUMBER);
-        reference.setType(Integer.class);
-      }
     }
 
     return reference;
@@ -1364,32 +1296,6 @@ public final class Parser
         // Change the reference to point to the operator node
         reference = opNode;
       }
-
-      // PERFORM CONSTANT-FOLDING OPTIMIZATION ON *// OPERATIONS
-      if ((reference.getChild(0).getNodeType() == ASTNodeType.EXPRESSION_NUMBER) &&
-          (reference.getChild(1).getNodeType() == ASTNodeType.EXPRESSION_NUMBER))
-      {
-        int line = reference.getLineNumber();
-        int left = reference.getChild(0).getValue();
-        int right = reference.getChild(0).getValue();
-
-        int result;
-        TokenType type = reference.getTokenType();
-        if (type == TokenType.SPECIAL_TIMES)
-        {
-          result = left * right;
-        }
-        else // type == TokenType.SPECIAL_DIVIDE
-        {
-          result = left / right;
-        }
-
-        reference = new ConstantExpressionNode();
-        reference.setValue(result);
-        reference.setLineNumber(line);
-        reference.setTokenType(TokenType.VARIABLE_NUMBER);
-        reference.setType(Integer.class);
-      }
     }
 
     return reference;
@@ -98,6 +98,22 @@ public abstract class AbstractSyntaxTreeNode
     return null;
   }
 
+  /**
+   * Replace the child at the supplied index of the current
+   * AbstractSyntaxTreeNode. Indices that do not hold a child
+   * are ignored.
+   *
+   * @param index The index of the child to replace
+   * @param child The new child (must not be null)
+   */
+  public void setChild(int index, AbstractSyntaxTreeNode child)
+  {
+    if (index >= 0 && index < children.size() && child != null)
+    {
+      children.set(index, child);
+    }
+  }
+
   /**
    * Associate the current Abstract Syntax Tree node's sibling
    * with the provided sibling value. Note that providing a null